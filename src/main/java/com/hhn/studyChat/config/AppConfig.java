@@ -3,6 +3,7 @@ package com.hhn.studyChat.config;
 import com.hhn.studyChat.service.ChatService;
 import com.hhn.studyChat.service.CrawlerService;
 import com.hhn.studyChat.service.RAGService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -20,8 +21,11 @@ public class AppConfig implements WebMvcConfigurer {
     }
 
     @Bean
-    public ChatService chatService(RAGService ragService) {
-        return new ChatService(ragService);
+    public ChatService chatService(RAGService ragService,
+                                   @Value("${rag.chat.workers:64}") int chatWorkers,
+                                   @Value("${rag.chat.queue.capacity:256}") int chatQueueCapacity,
+                                   @Value("${rag.chat.stream.threads:8}") int streamThreads) {
+        return new ChatService(ragService, chatWorkers, chatQueueCapacity, streamThreads);
     }
 
     /**
@@ -1,30 +1,47 @@
 package com.hhn.studyChat.controller;
 
 import com.hhn.studyChat.model.ChatMessage;
-import com.hhn.studyChat.model.CrawlJob;
 import com.hhn.studyChat.service.ChatService;
 import com.hhn.studyChat.service.CrawlerService;
+import com.hhn.studyChat.service.RAGService;
+import com.hhn.studyChat.util.llm.LlmGateway;
+import com.hhn.studyChat.util.rag.MetadataFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Controller
 public class ChatController {
 
+    private static final long STREAM_TIMEOUT_MS = 120_000L;
+    private static final String WARMING_MESSAGE = "Das Datenset wird gerade indexiert. Bitte versuche es in wenigen Sekunden erneut.";
+    private static final String OVERLOADED_MESSAGE = "Der Chat ist gerade stark ausgelastet. Bitte versuche es gleich noch einmal.";
+
     private final ChatService chatService;
     private final CrawlerService crawlerService;
+    private final RAGService ragService;
 
     @Autowired
-    public ChatController(ChatService chatService, CrawlerService crawlerService) {
+    public ChatController(ChatService chatService, CrawlerService crawlerService, RAGService ragService) {
         this.chatService = chatService;
         this.crawlerService = crawlerService;
+        this.ragService = ragService;
     }
 
     // Chat-Seite anzeigen
@@ -35,49 +52,255 @@ public class ChatController {
         return "chat";
     }
 
-    // API-Endpunkt zum Senden von Nachrichten und Erhalten von Antworten
+    // API-Endpunkt zum Senden von Nachrichten und Erhalten von Antworten. Die Verarbeitung läuft auf den
+    // Chat-Workern; der Servlet-Thread ist sofort wieder frei und die Antwort wird asynchron geschrieben.
     @PostMapping("/api/chat")
     @ResponseBody
-    public ResponseEntity<Map<String, Object>> chat(@RequestBody Map<String, String> request) {
-        String jobId = request.get("jobId");
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> chat(@RequestBody Map<String, String> request) {
+        List<String> searchJobIds = searchJobIdsFrom(request);
+        String jobId = historyJobId(request, searchJobIds);
         String message = request.get("message");
 
         // Validierung
         if (jobId == null || message == null || message.trim().isEmpty()) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Jobid und Nachricht sind erforderlich");
-            return ResponseEntity.badRequest().body(errorResponse);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
         }
 
-        // Prüfen, ob der Job existiert
-        CrawlJob job = crawlerService.getJob(jobId);
-        if (job == null) {
+        // Prüfen, ob der Job existiert (jobübergreifende Suchen prüfen die angegebenen Jobs)
+        String unknownJobId = findUnknownJob(jobId, searchJobIds);
+        if (unknownJobId != null) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Job nicht gefunden");
-            return ResponseEntity.badRequest().body(errorResponse);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(errorResponse));
+        }
+
+        // Index wird noch aufgebaut
+        if (isWarming(jobId, searchJobIds)) {
+            Map<String, Object> warmingResponse = new HashMap<>();
+            warmingResponse.put("status", "warming");
+            warmingResponse.put("indexStatus", "LOADING");
+            warmingResponse.put("response", WARMING_MESSAGE);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "5")
+                    .body(warmingResponse));
         }
 
         // Nachricht erstellen
         ChatMessage chatMessage = ChatMessage.builder()
                 .id(UUID.randomUUID().toString())
                 .jobId(jobId)
+                .searchJobIds(searchJobIds)
                 .userMessage(message)
                 .timestamp(LocalDateTime.now())
                 .processed(false)
                 .build();
 
-        // Antwort vom LLM erhalten
-        ChatMessage processedMessage = chatService.processMessage(chatMessage);
+        // Antwort vom LLM erhalten; ist das LLM ausgelastet, sofort mit 503 ablehnen
+        return chatService.processMessageAsync(chatMessage, filterFrom(request))
+                .thenApply(processedMessage -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("messageId", processedMessage.getId());
+                    response.put("response", processedMessage.getAiResponse());
+                    response.put("extractive", processedMessage.isExtractive());
+                    response.put("timestamp", processedMessage.getTimestamp().toString());
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    if (cause instanceof LlmGateway.OverloadedException overloaded) {
+                        errorResponse.put("error", OVERLOADED_MESSAGE);
+                        errorResponse.put("retryAfter", overloaded.getRetryAfterSeconds());
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header("Retry-After", String.valueOf(overloaded.getRetryAfterSeconds()))
+                                .body(errorResponse);
+                    }
+                    errorResponse.put("error", "Fehler beim Verarbeiten der Anfrage");
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+                });
+    }
 
-        // Antwort zurückgeben
-        Map<String, Object> response = new HashMap<>();
-        response.put("messageId", processedMessage.getId());
-        response.put("response", processedMessage.getAiResponse());
-        response.put("timestamp", processedMessage.getTimestamp().toString());
+    // Streaming-Endpunkt: liefert die Antwort tokenweise als Server-Sent Events
+    // (Events: token, done, error, warming)
+    @PostMapping(value = "/api/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter chatStream(@RequestBody Map<String, String> request) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        List<String> searchJobIds = searchJobIdsFrom(request);
+        String jobId = historyJobId(request, searchJobIds);
+        String message = request.get("message");
+
+        // Validierung
+        if (jobId == null || message == null || message.trim().isEmpty()) {
+            sendAndComplete(emitter, "error", Map.of("error", "Jobid und Nachricht sind erforderlich"));
+            return emitter;
+        }
+
+        // Prüfen, ob der Job existiert
+        if (findUnknownJob(jobId, searchJobIds) != null) {
+            sendAndComplete(emitter, "error", Map.of("error", "Job nicht gefunden"));
+            return emitter;
+        }
+
+        // Index wird noch aufgebaut
+        if (isWarming(jobId, searchJobIds)) {
+            sendAndComplete(emitter, "warming", Map.of(
+                    "status", "warming",
+                    "indexStatus", "LOADING",
+                    "response", WARMING_MESSAGE));
+            return emitter;
+        }
+
+        // Nachricht erstellen
+        ChatMessage chatMessage = ChatMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .jobId(jobId)
+                .searchJobIds(searchJobIds)
+                .userMessage(message)
+                .timestamp(LocalDateTime.now())
+                .processed(false)
+                .build();
+
+        chatService.processMessageStreaming(chatMessage, filterFrom(request),
+                        token -> send(emitter, "token", Map.of("token", token)))
+                .whenComplete((processedMessage, error) -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof LlmGateway.OverloadedException overloaded) {
+                        sendAndComplete(emitter, "error", Map.of(
+                                "error", OVERLOADED_MESSAGE,
+                                "retryAfter", overloaded.getRetryAfterSeconds()));
+                        return;
+                    }
+                    if (error != null) {
+                        sendAndComplete(emitter, "error", Map.of("error", "Fehler beim Verarbeiten der Anfrage"));
+                        return;
+                    }
+
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("messageId", processedMessage.getId());
+                    response.put("response", processedMessage.getAiResponse());
+                    response.put("extractive", processedMessage.isExtractive());
+                    response.put("timestamp", processedMessage.getTimestamp().toString());
+                    sendAndComplete(emitter, "done", response);
+                });
+
+        return emitter;
+    }
 
+    /**
+     * Optionale jobübergreifende Suche: "jobIds" als kommagetrennte Liste oder "*" für alle Jobs
+     */
+    private List<String> searchJobIdsFrom(Map<String, String> request) {
+        String jobIds = request.get("jobIds");
+        if (jobIds == null || jobIds.trim().isEmpty()) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        for (String jobId : jobIds.split(",")) {
+            if (!jobId.trim().isEmpty()) {
+                result.add(jobId.trim());
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Job, unter dem die Nachricht im Verlauf gespeichert wird; jobübergreifende Fragen ohne jobId unter "*"
+     */
+    private String historyJobId(Map<String, String> request, List<String> searchJobIds) {
+        String jobId = request.get("jobId");
+        return jobId == null && searchJobIds != null ? ChatMessage.ALL_JOBS : jobId;
+    }
+
+    /**
+     * Index wird noch aufgebaut; jobübergreifend erst, wenn keiner der Jobs durchsuchbar ist
+     */
+    private boolean isWarming(String jobId, List<String> searchJobIds) {
+        if (searchJobIds == null) {
+            return "LOADING".equals(ragService.getIndexStatus(jobId));
+        }
+        return ragService.isWarming(searchJobIds.contains(ChatMessage.ALL_JOBS) ? null : searchJobIds);
+    }
+
+    private String findUnknownJob(String jobId, List<String> searchJobIds) {
+        if (!ChatMessage.ALL_JOBS.equals(jobId) && crawlerService.getJob(jobId) == null) {
+            return jobId;
+        }
+        if (searchJobIds != null) {
+            for (String searchJobId : searchJobIds) {
+                if (!ChatMessage.ALL_JOBS.equals(searchJobId) && crawlerService.getJob(searchJobId) == null) {
+                    return searchJobId;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Optionale Einschränkung der Suche (z.B. "category": "studium"); fehlende Felder filtern nicht
+     */
+    private MetadataFilter filterFrom(Map<String, String> request) {
+        return MetadataFilter.of(request.get("category"), request.get("domain"), request.get("pageType"));
+    }
+
+    /**
+     * Sendet ein SSE-Event; false, wenn der Client die Verbindung bereits geschlossen hat
+     */
+    private boolean send(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void sendAndComplete(SseEmitter emitter, String eventName, Object data) {
+        send(emitter, eventName, data);
+        emitter.complete();
+    }
+
+    // Health-Status des LLM (asynchroner Verbindungstest)
+    @GetMapping("/api/health")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> health() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("llm", ragService.getLlmHealth());
         return ResponseEntity.ok(response);
     }
 
+    // Kennzahlen der RAG-Caches (Treffer/Fehlschläge) und der Bündelung identischer Anfragen
+    @GetMapping("/api/stats")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(ragService.getStats());
+        stats.put("requestCoalescing", chatService.getStats());
+        stats.put("chatWorkers", chatService.getExecutorStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    // Migration der Collections pro Job in die gemeinsame Qdrant-Collection (qdrant.collection.mode=shared)
+    @PostMapping("/api/qdrant/migrate")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> migrateToSharedCollection(
+            @RequestParam(defaultValue = "false") boolean deleteSource) {
+        Map<String, Object> report;
+        try {
+            report = ragService.migrateToSharedCollection(deleteSource);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        return report.containsKey("error")
+                ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(report)
+                : ResponseEntity.ok(report);
+    }
+
     // Optional: Endpunkt zum Abrufen des Chat-Verlaufs
     @GetMapping("/api/chat/history/{jobId}")
     @ResponseBody
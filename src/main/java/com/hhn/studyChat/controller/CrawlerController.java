@@ -2,6 +2,7 @@ package com.hhn.studyChat.controller;
 
 import com.hhn.studyChat.model.CrawlJob;
 import com.hhn.studyChat.service.CrawlerService;
+import com.hhn.studyChat.util.store.Quantization;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -43,7 +44,8 @@ public class CrawlerController {
     public ResponseEntity<?> createJob(@RequestParam("url") List<String> urls,
                                        @RequestParam(value = "depth", defaultValue = "1") int depth,
                                        @RequestParam(value = "outputDir", defaultValue = "./collected-content") String outputDir,
-                                       @RequestParam(value = "sitemapCrawl", defaultValue = "false") boolean sitemapCrawl) { // NEU: Sitemap-Parameter
+                                       @RequestParam(value = "sitemapCrawl", defaultValue = "false") boolean sitemapCrawl, // NEU: Sitemap-Parameter
+                                       @RequestParam(value = "quantization", required = false) String quantization) {
 
         // validate output directory
         if (!isValidDirectory(outputDir)) {
@@ -51,8 +53,21 @@ public class CrawlerController {
                     .body(Map.of("error", "Invalid output directory may contain illegal characters."));
         }
 
+        // Optional: Quantisierung des lokalen Vektor-Stores für diesen Job (NONE, INT8, PQ)
+        Quantization jobQuantization = null;
+        if (quantization != null && !quantization.isBlank()) {
+            try {
+                jobQuantization = Quantization.from(quantization);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        }
+
         // NEU: Sitemap-Parameter an createJob weiterleiten
         CrawlJob job = crawlerService.createJob(urls, depth, outputDir, sitemapCrawl);
+        if (jobQuantization != null) {
+            job.setQuantization(jobQuantization.name());
+        }
         return ResponseEntity.ok(job);
     }
 
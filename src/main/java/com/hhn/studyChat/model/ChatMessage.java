@@ -3,14 +3,19 @@ package com.hhn.studyChat.model;
 import lombok.Data;
 import lombok.Builder;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 @Builder
 public class ChatMessage {
+    public static final String ALL_JOBS = "*";
+
     private String id;
     private String jobId;        // Referenz zum CrawlJob
+    private List<String> searchJobIds; // Jobübergreifende Suche: Job-IDs oder ALL_JOBS, null = nur jobId
     private String userMessage;  // Nachricht vom Benutzer
     private String aiResponse;   // Antwort des AI-Systems
+    private boolean extractive;  // Antwort nur aus Suchtreffern, ohne LLM (LLM ausgelastet oder nicht erreichbar)
     private LocalDateTime timestamp;
     private boolean processed;
 }
\ No newline at end of file
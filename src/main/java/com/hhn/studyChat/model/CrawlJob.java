@@ -19,6 +19,8 @@ public class CrawlJob {
     private LocalDateTime completedAt;
     private String outputDirectory;
     private int crawledUrlsCount;
+    private String indexStatus; // LOADING, READY, FAILED (RAG-Index)
+    private String quantization; // NONE, INT8, PQ (lokaler Vektor-Store, null = Standard)
 
     public static CrawlJob create(List<String> seedUrls, int maxDepth, String outputDir, boolean sitemapCrawl) {
         return CrawlJob.builder()
@@ -14,9 +14,13 @@ public class RAGDocument {
     private String title;           // Titel des Dokuments
     private String content;         // Textinhalt
     private String category;        // Kategorie (z.B. "studium", "forschung")
+    private String domain;          // Domain der Quelle ohne "www." (laut crawl_index.json)
+    private String pageType;        // Seitentyp laut crawl_index.json (z.B. "studium", "news")
     private String[] embeddings;    // Vector-Embeddings für das Dokument
     private LocalDateTime createdAt;
     private String filePath;        // Pfad zur Originaldatei
+    private String crawlTimestamp;  // Crawl-Zeitpunkt laut crawl_index.json
+    private String contentHash;     // SHA-256 des Textinhalts (für inkrementelle Indexierung)
 
     public static RAGDocument create(String jobId, String url, String title, String content, String category, String filePath) {
         return RAGDocument.builder()
@@ -2,46 +2,97 @@ package com.hhn.studyChat.service;
 
 import com.hhn.studyChat.model.ChatMessage;
 import com.hhn.studyChat.model.RAGDocument;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.hhn.studyChat.util.llm.LlmGateway;
+import com.hhn.studyChat.util.llm.LlmUnavailableException;
+import com.hhn.studyChat.util.rag.ContextPacker;
+import com.hhn.studyChat.util.rag.MetadataFilter;
+import com.hhn.studyChat.util.rag.QueryCache;
+import com.hhn.studyChat.util.rag.Retrieval;
+import com.hhn.studyChat.util.rag.SingleFlight;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class ChatService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
+    private static final int CHAT_RETRY_AFTER_SECONDS = 5;
+
     private final Map<String, List<ChatMessage>> chatHistory = new ConcurrentHashMap<>();
     private final RAGService ragService;
 
-    @Autowired
-    public ChatService(RAGService ragService) {
+    // Gleichzeitige identische Fragen teilen sich Retrieval und LLM-Aufruf
+    private final SingleFlight<RequestKey, Answer> inFlightAnswers = new SingleFlight<>();
+
+    // Threads für Retrieval beim Streaming, damit der Servlet-Thread sofort frei wird
+    private final AtomicInteger streamingThreadCounter = new AtomicInteger();
+    private final ExecutorService streamingExecutor;
+
+    // Threads für /api/chat: Der Servlet-Thread gibt die Anfrage ab und ist sofort wieder frei
+    private final AtomicInteger chatThreadCounter = new AtomicInteger();
+    private final ThreadPoolExecutor chatExecutor;
+
+    /**
+     * Die Werte bindet {@link com.hhn.studyChat.config.AppConfig} aus rag.chat.*
+     *
+     * @param chatWorkers       Threads, die Chat-Anfragen abarbeiten (warten u.a. auf das LLM-Gateway)
+     * @param chatQueueCapacity weitere Anfragen, die auf einen freien Thread warten dürfen
+     * @param streamThreads     Threads für Cache-Abfrage und Retrieval gestreamter Anfragen
+     */
+    public ChatService(RAGService ragService, int chatWorkers, int chatQueueCapacity, int streamThreads) {
         this.ragService = ragService;
+        this.streamingExecutor = Executors.newFixedThreadPool(Math.max(1, streamThreads), runnable -> {
+            Thread thread = new Thread(runnable, "chat-stream-" + streamingThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.chatExecutor = new ThreadPoolExecutor(chatWorkers, chatWorkers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, chatQueueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "chat-worker-" + chatThreadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.chatExecutor.allowCoreThreadTimeOut(true);
     }
 
     /**
      * Verarbeitet eine Nachricht und erhält eine Antwort vom LLM
      */
     public ChatMessage processMessage(ChatMessage message) {
-        // Relevante Dokumente für die Anfrage finden
-        List<RAGDocument> relevantDocuments = ragService.findRelevantDocuments(
-                message.getJobId(),
-                message.getUserMessage(),
-                5  // Top 5 relevante Dokumente
-        );
-
-        // Kontext für das LLM vorbereiten
-        String context = prepareContextFromDocuments(relevantDocuments);
+        return processMessage(message, MetadataFilter.none());
+    }
 
-        // LLM-Antwort generieren
-        String aiResponse = ragService.generateResponse(message.getUserMessage(), context);
+    /**
+     * Verarbeitet eine Nachricht; die Suche beschränkt sich auf Seiten, die dem Filter entsprechen
+     */
+    public ChatMessage processMessage(ChatMessage message, MetadataFilter filter) {
+        // Läuft dieselbe Frage bereits, wird auf deren Antwort gewartet statt erneut zu suchen und zu generieren
+        Answer answer = inFlightAnswers.execute(RequestKey.of(message, filter), () -> answer(message, filter));
 
         // Nachricht aktualisieren
-        message.setAiResponse(aiResponse);
+        message.setAiResponse(answer.text());
+        message.setExtractive(answer.extractive());
         message.setProcessed(true);
 
         // Zum Chat-Verlauf hinzufügen
@@ -51,27 +102,219 @@ public class ChatService {
     }
 
     /**
-     * Bereitet den Kontext für das LLM aus den relevanten Dokumenten vor
+     * Wie {@link #processMessage(ChatMessage, MetadataFilter)}, aber auf eigenen Worker-Threads.
+     * Sind alle Worker belegt und die Warteschlange voll, schlägt das Future sofort mit
+     * {@link LlmGateway.OverloadedException} fehl.
+     */
+    public CompletableFuture<ChatMessage> processMessageAsync(ChatMessage message, MetadataFilter filter) {
+        try {
+            return CompletableFuture.supplyAsync(() -> processMessage(message, filter), chatExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new LlmGateway.OverloadedException(
+                    "Chat ausgelastet: " + chatExecutor.getQueue().size() + " Anfragen warten", CHAT_RETRY_AFTER_SECONDS));
+        }
+    }
+
+    private Answer answer(ChatMessage message, MetadataFilter filter) {
+        // Stand des Antwort-Caches vor dem Retrieval: Antworten auf einen inzwischen neu indexierten Job werden nicht gecacht
+        long cacheGeneration = ragService.answerCacheGeneration(answerCacheJobId(message));
+
+        // Bereits beantwortete, ähnliche Fragen direkt aus dem Antwort-Cache beantworten
+        String aiResponse = ragService.findCachedAnswer(answerCacheJobId(message), message.getUserMessage(), filter);
+        if (aiResponse != null) {
+            return new Answer(aiResponse, false);
+        }
+
+        // Relevante Dokumente für die Anfrage finden und die passenden Auszüge auswählen
+        Retrieval retrieval = retrieve(message, filter);
+        ContextPacker.Result packed = packContext(message.getUserMessage(), retrieval);
+
+        // LLM ausgelastet oder nicht erreichbar: sofort mit den Auszügen antworten
+        if (ragService.shouldAnswerExtractively()) {
+            return new Answer(ragService.answerExtractively(packed), true);
+        }
+
+        // Kontext für das LLM vorbereiten
+        String context = prepareContextFromDocuments(packed, retrieval.documents().size());
+
+        // LLM-Antwort generieren; ist es ausgelastet, zu langsam oder fehlerhaft, mit den Auszügen antworten
+        try {
+            return new Answer(ragService.generateResponse(answerCacheJobId(message), message.getUserMessage(),
+                    context, filter, cacheGeneration), false);
+        } catch (LlmGateway.OverloadedException e) {
+            if (!ragService.isDegradationEnabled()) {
+                throw e;
+            }
+            return new Answer(ragService.answerExtractively(packed), true);
+        } catch (LlmUnavailableException e) {
+            return ragService.isDegradationEnabled()
+                    ? new Answer(ragService.answerExtractively(packed), true)
+                    : new Answer(RAGService.LLM_ERROR_RESPONSE, false);
+        }
+    }
+
+    /**
+     * Verarbeitet eine Nachricht mit gestreamter LLM-Antwort. Tokens werden an onToken übergeben,
+     * die fertige Nachricht wird wie bei processMessage im Chat-Verlauf gespeichert.
      */
-    private String prepareContextFromDocuments(List<RAGDocument> documents) {
-        if (documents == null || documents.isEmpty()) {
+    public CompletableFuture<ChatMessage> processMessageStreaming(ChatMessage message, Consumer<String> onToken) {
+        return processMessageStreaming(message, MetadataFilter.none(), onToken);
+    }
+
+    public CompletableFuture<ChatMessage> processMessageStreaming(ChatMessage message, MetadataFilter filter,
+                                                                  Consumer<String> onToken) {
+        long cacheGeneration = ragService.answerCacheGeneration(answerCacheJobId(message));
+        return CompletableFuture
+                .supplyAsync(() -> ragService.findCachedAnswer(answerCacheJobId(message), message.getUserMessage(), filter),
+                        streamingExecutor)
+                .thenCompose(cachedAnswer -> {
+                    if (cachedAnswer != null) {
+                        onToken.accept(cachedAnswer);
+                        return CompletableFuture.completedFuture(new Answer(cachedAnswer, false));
+                    }
+
+                    Retrieval retrieval = retrieve(message, filter);
+                    ContextPacker.Result packed = packContext(message.getUserMessage(), retrieval);
+                    if (ragService.shouldAnswerExtractively()) {
+                        return CompletableFuture.completedFuture(streamExtractively(packed, onToken));
+                    }
+
+                    String context = prepareContextFromDocuments(packed, retrieval.documents().size());
+                    AtomicBoolean streamed = new AtomicBoolean();
+                    return ragService.generateResponseStreaming(answerCacheJobId(message), message.getUserMessage(),
+                                    context, filter, cacheGeneration, token -> {
+                                        streamed.set(true);
+                                        onToken.accept(token);
+                                    })
+                            .thenApply(aiResponse -> new Answer(aiResponse, false))
+                            .exceptionally(error -> {
+                                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                        ? error.getCause() : error;
+                                if (cause instanceof LlmGateway.OverloadedException && ragService.isDegradationEnabled()) {
+                                    return streamExtractively(packed, onToken);
+                                }
+                                if (cause instanceof LlmUnavailableException) {
+                                    // Nach bereits gestreamten Tokens würden angehängte Auszüge die Antwort verfälschen
+                                    return ragService.isDegradationEnabled() && !streamed.get()
+                                            ? streamExtractively(packed, onToken)
+                                            : new Answer(RAGService.LLM_ERROR_RESPONSE, false);
+                                }
+                                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                            });
+                })
+                .thenApply(answer -> {
+                    message.setAiResponse(answer.text());
+                    message.setExtractive(answer.extractive());
+                    message.setProcessed(true);
+                    chatHistory.computeIfAbsent(message.getJobId(), k -> new ArrayList<>()).add(message);
+                    return message;
+                });
+    }
+
+    private Answer streamExtractively(ContextPacker.Result packed, Consumer<String> onToken) {
+        String text = ragService.answerExtractively(packed);
+        onToken.accept(text);
+        return new Answer(text, true);
+    }
+
+    /**
+     * Top 5 relevante Dokumente mit ihren Segment-Treffern, bei gesetzten searchJobIds jobübergreifend
+     */
+    private Retrieval retrieve(ChatMessage message, MetadataFilter filter) {
+        List<String> searchJobIds = message.getSearchJobIds();
+        if (searchJobIds == null) {
+            return ragService.retrieve(message.getJobId(), message.getUserMessage(), 5, filter);
+        }
+        return ragService.retrieve(searchJobIds.contains(ChatMessage.ALL_JOBS) ? null : searchJobIds,
+                message.getUserMessage(), 5, filter);
+    }
+
+    /**
+     * Jobübergreifende Antworten werden nicht im Antwort-Cache eines einzelnen Jobs abgelegt
+     */
+    private String answerCacheJobId(ChatMessage message) {
+        return message.getSearchJobIds() == null ? message.getJobId() : null;
+    }
+
+    /**
+     * Zähler der Anfragebündelung: ausgeführte und angeschlossene Anfragen
+     */
+    public Map<String, Object> getStats() {
+        return inFlightAnswers.getStats();
+    }
+
+    /**
+     * Auslastung der Chat-Worker
+     */
+    public Map<String, Object> getExecutorStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", chatExecutor.getMaximumPoolSize());
+        stats.put("active", chatExecutor.getActiveCount());
+        stats.put("queued", chatExecutor.getQueue().size());
+        stats.put("completed", chatExecutor.getCompletedTaskCount());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        chatExecutor.shutdownNow();
+        streamingExecutor.shutdownNow();
+    }
+
+    /**
+     * Wählt die zur Frage passenden Segmente der relevanten Dokumente innerhalb des Token-Budgets aus
+     */
+    private ContextPacker.Result packContext(String query, Retrieval retrieval) {
+        if (retrieval == null || retrieval.isEmpty()) {
+            return new ContextPacker.Result(List.of(), 0, 0);
+        }
+        return ragService.packContext(query, retrieval);
+    }
+
+    /**
+     * Bereitet den Kontext für das LLM vor: statt des Dokumentanfangs werden die ausgewählten Segmente übernommen
+     */
+    private String prepareContextFromDocuments(ContextPacker.Result packed, int documentCount) {
+        if (packed.passages().isEmpty()) {
             return "Keine relevanten Informationen gefunden.";
         }
 
         StringBuilder context = new StringBuilder();
         context.append("Relevante Informationen aus den gecrawlten Daten:\n\n");
 
-        for (int i = 0; i < documents.size(); i++) {
-            RAGDocument doc = documents.get(i);
+        List<ContextPacker.Passage> passages = packed.passages();
+        for (int i = 0; i < passages.size(); i++) {
+            RAGDocument doc = passages.get(i).document();
             context.append("Dokument ").append(i + 1).append(": ");
             context.append(doc.getTitle()).append("\n");
             context.append("URL: ").append(doc.getUrl()).append("\n");
-            context.append("Inhalt: ").append(doc.getContent().substring(0, Math.min(doc.getContent().length(), 500))).append("...\n\n");
+            context.append("Auszug: ").append(passages.get(i).text()).append("\n\n");
         }
 
+        logger.info("Kontext: {} Segmente aus {} von {} Dokumenten, ~{} Tokens",
+                packed.segmentCount(), passages.size(), documentCount, ContextPacker.estimateTokens(context.toString()));
         return context.toString();
     }
 
+    /**
+     * Antworttext; extractive = nur Auszüge der Suchtreffer, ohne LLM
+     */
+    private record Answer(String text, boolean extractive) {
+    }
+
+    /**
+     * Identität einer Anfrage für die Bündelung: Job bzw. durchsuchte Jobs, Filter und normalisierte Frage
+     */
+    private record RequestKey(String jobId, List<String> searchJobIds, String filter, String question) {
+
+        static RequestKey of(ChatMessage message, MetadataFilter filter) {
+            List<String> searchJobIds = message.getSearchJobIds() == null ? null
+                    : message.getSearchJobIds().stream().sorted().collect(Collectors.toList());
+            return new RequestKey(message.getJobId(), searchJobIds, filter.toString(),
+                    QueryCache.normalize(message.getUserMessage()));
+        }
+    }
+
     /**
      * Gibt den Chat-Verlauf für einen bestimmten Job zurück
      */
@@ -2,24 +2,60 @@ package com.hhn.studyChat.service;
 
 import com.hhn.studyChat.model.CrawlJob;
 import com.hhn.studyChat.model.RAGDocument;
+import com.hhn.studyChat.util.embedding.EmbeddingCache;
+import com.hhn.studyChat.util.embedding.EmbeddingPipeline;
+import com.hhn.studyChat.util.embedding.EmbeddingSessionPool;
+import com.hhn.studyChat.util.embedding.EmbeddingSink;
+import com.hhn.studyChat.util.embedding.QueryEmbeddingBatcher;
+import com.hhn.studyChat.util.llm.CircuitBreaker;
+import com.hhn.studyChat.util.llm.LlmGateway;
+import com.hhn.studyChat.util.llm.LlmUnavailableException;
+import com.hhn.studyChat.util.llm.ModelRouter;
+import com.hhn.studyChat.util.rag.ContextPacker;
+import com.hhn.studyChat.util.rag.DocumentIndex;
+import com.hhn.studyChat.util.rag.ExtractiveAnswer;
+import com.hhn.studyChat.util.rag.LexicalIndex;
+import com.hhn.studyChat.util.rag.MetadataFilter;
+import com.hhn.studyChat.util.rag.QueryCache;
+import com.hhn.studyChat.util.rag.Retrieval;
+import com.hhn.studyChat.util.rag.SemanticAnswerCache;
+import com.hhn.studyChat.util.store.HnswIndex;
+import com.hhn.studyChat.util.store.MappedEmbeddingStore;
+import com.hhn.studyChat.util.store.QdrantBulkWriter;
+import com.hhn.studyChat.util.store.Quantization;
+import com.hhn.studyChat.util.vector.SimilarityKernels;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.embedding.OnnxEmbeddingModel;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
 import dev.langchain4j.data.document.Metadata;
 
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.qdrant.client.ConditionFactory;
 import io.qdrant.client.QdrantClient;
 import io.qdrant.client.QdrantGrpcClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
 import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,16 +66,39 @@ import org.springframework.stereotype.Service;
 import okhttp3.OkHttpClient;
 import okhttp3.MediaType;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -67,6 +126,14 @@ public class RAGService {
     @Value("${openwebui.model:mistral:latest}")
     private String openWebUIModel;
 
+    // Kleinere Modelle, auf die der Router bei Last oder verfehltem Latenz-SLO ausweicht (kommagetrennt)
+    @Value("${openwebui.fallback.models:}")
+    private String openWebUIFallbackModels;
+
+    // Kontextfenster je Modell: "modell=tokens,..."; nicht aufgeführte Modelle gelten als unbegrenzt
+    @Value("${openwebui.model.context.tokens:}")
+    private String openWebUIContextTokens;
+
     // === QDRANT KONFIGURATION ===
     @Value("${qdrant.host:localhost}")
     private String qdrantHost;
@@ -74,16 +141,196 @@ public class RAGService {
     @Value("${qdrant.port:6334}")
     private int qdrantPort;
 
+    @Value("${qdrant.use.tls:false}")
+    private boolean qdrantUseTls;
+
+    @Value("${qdrant.api.key:}")
+    private String qdrantApiKey;
+
+    // Deadline je gRPC-Aufruf (Verwaltung, Upserts, Suchen)
+    @Value("${qdrant.grpc.timeout.ms:10000}")
+    private long qdrantTimeoutMs;
+
+    @Value("${qdrant.grpc.keepalive.time.seconds:30}")
+    private long qdrantKeepAliveSeconds;
+
+    @Value("${qdrant.grpc.keepalive.timeout.seconds:10}")
+    private long qdrantKeepAliveTimeoutSeconds;
+
+    @Value("${qdrant.grpc.max.inbound.message.mb:64}")
+    private int qdrantMaxInboundMessageMb;
+
     @Value("${use.inmemory.store:false}")
     private boolean useInMemoryStore;
 
-    // In-Memory-Cache für RAG-Dokumente nach jobId
-    private final Map<String, List<RAGDocument>> documentCache = new ConcurrentHashMap<>();
+    // per-job: eine Collection pro Job; shared: alle Jobs in einer Collection, partitioniert über job_id
+    @Value("${qdrant.collection.mode:per-job}")
+    private String qdrantCollectionMode;
+
+    @Value("${qdrant.shared.collection:studychat}")
+    private String sharedCollectionName;
+
+    @Value("${qdrant.upsert.batch.size:512}")
+    private int upsertBatchSize;
+
+    @Value("${qdrant.upsert.max.in.flight:4}")
+    private int upsertMaxInFlight;
+
+    @Value("${qdrant.upsert.max.retries:3}")
+    private int upsertMaxRetries;
+
+    // === LOKALER STORE (FALLBACK OHNE QDRANT) ===
+    @Value("${embedding.fallback.inmemory:true}")
+    private boolean fallbackToLocalStore;
+
+    @Value("${rag.local.store:mmap}")
+    private String localStoreType;
+
+    @Value("${rag.local.store.dir:./collected-content/vector-store}")
+    private String localStoreDir;
+
+    @Value("${rag.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${rag.hnsw.ef.construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${rag.hnsw.ef.search:64}")
+    private int hnswEfSearch;
+
+    @Value("${rag.quantization.mode:none}")
+    private String defaultQuantization;
+
+    // === INDEXIERUNG ===
+    @Value("${rag.llm.healthcheck.interval:300}")
+    private long llmHealthCheckInterval;
+
+    // Deadline je LLM-Anfrage in Sekunden (Warten auf einen freien Platz und Generierung)
+    @Value("${rag.llm.timeout:30}")
+    private long llmTimeoutSeconds;
+
+    @Value("${rag.llm.max.concurrent:4}")
+    private int llmMaxConcurrent;
+
+    @Value("${rag.llm.queue.capacity:32}")
+    private int llmQueueCapacity;
+
+    // Modell-Routing: Ziel-Latenz, Messfenster, maximale Fehlerquote und Mindestanzahl Messwerte je Modell
+    @Value("${rag.llm.slo.ms:8000}")
+    private long llmSloMillis;
+
+    @Value("${rag.llm.router.window.seconds:300}")
+    private long llmRouterWindowSeconds;
+
+    @Value("${rag.llm.router.max.error.rate:0.5}")
+    private double llmRouterMaxErrorRate;
+
+    @Value("${rag.llm.router.min.samples:3}")
+    private int llmRouterMinSamples;
+
+    // Nach so vielen aufeinanderfolgenden Fehlern eines Modells wird sein Kreis für rag.llm.circuit.open.seconds geöffnet
+    @Value("${rag.llm.circuit.failure.threshold:3}")
+    private int llmCircuitFailureThreshold;
+
+    @Value("${rag.llm.circuit.open.seconds:30}")
+    private long llmCircuitOpenSeconds;
+
+    // Extraktive Antworten ohne LLM, wenn der Kreis offen ist oder die geschätzte Wartezeit zu hoch ist
+    @Value("${rag.degrade.enabled:true}")
+    private boolean degradeEnabled;
+
+    @Value("${rag.degrade.max.wait.ms:5000}")
+    private long degradeMaxWaitMillis;
+
+    @Value("${rag.degrade.max.sources:3}")
+    private int degradeMaxSources;
+
+    @Value("${rag.processing.batch.size:32}")
+    private int processingBatchSize;
+
+    // Embedding-Sessions (eigene ONNX-Session je Eintrag); 0 = je eine für Chat-Anfragen und Indexierung
+    @Value("${rag.embedding.sessions:0}")
+    private int embeddingSessions;
+
+    @Value("${rag.embedding.query.sessions:1}")
+    private int embeddingQuerySessions;
+
+    // Micro-Batching gleichzeitiger Query-Embeddings: max. Wartezeit in ms und max. Anfragen pro Batch
+    @Value("${rag.embedding.batch.window.ms:3}")
+    private double queryBatchWindowMs;
+
+    @Value("${rag.embedding.batch.max.size:16}")
+    private int queryBatchMaxSize;
+
+    @Value("${rag.embedding.cache.enabled:true}")
+    private boolean embeddingCacheEnabled;
+
+    @Value("${rag.embedding.cache.file:./collected-content/embedding_cache.bin}")
+    private String embeddingCacheFile;
+
+    // === QUERY-CACHE ===
+    @Value("${rag.query.cache.size:1000}")
+    private int queryCacheSize;
+
+    @Value("${rag.query.cache.ttl:600}")
+    private long queryCacheTtlSeconds;
+
+    // === HYBRIDE SUCHE (BM25 + VEKTOR) ===
+    @Value("${rag.hybrid.enabled:true}")
+    private boolean hybridSearchEnabled;
+
+    @Value("${rag.hybrid.rrf.k:60}")
+    private int rrfK;
+
+    @Value("${rag.hybrid.lexical.decisive.ratio:2.0}")
+    private double lexicalDecisiveRatio;
+
+    // Kontext-Packing: Token-Budget aller Auszüge im Prompt und max. Segmente je Dokument
+    @Value("${rag.context.token.budget:600}")
+    private int contextTokenBudget;
+
+    @Value("${rag.context.max.segments.per.document:2}")
+    private int contextMaxSegmentsPerDocument;
+
+    // === SEMANTISCHER ANTWORT-CACHE ===
+    @Value("${rag.answer.cache.enabled:true}")
+    private boolean answerCacheEnabled;
+
+    @Value("${rag.answer.cache.threshold:0.92}")
+    private double answerCacheThreshold;
+
+    @Value("${rag.answer.cache.size:200}")
+    private int answerCacheSize;
+
+    @Value("${rag.answer.cache.ttl:3600}")
+    private long answerCacheTtlSeconds;
+
+    // Dokumente und BM25-Index pro jobId; beide werden nur gemeinsam ersetzt, da die
+    // BM25-Dokumentnummern den Positionen im DocumentIndex entsprechen
+    private final Map<String, JobDocuments> documentCache = new ConcurrentHashMap<>();
 
     // Modelle und Stores für Langchain4j
     private EmbeddingModel embeddingModel;
+    private EmbeddingSessionPool embeddingSessionPool;
+    private QueryEmbeddingBatcher queryEmbeddingBatcher;
+    private EmbeddingPipeline embeddingPipeline;
+    private EmbeddingCache embeddingCache;
+    private QueryCache queryCache;
+    private SemanticAnswerCache answerCache;
+    // Hauptmodell (Health-Check) sowie alle Modelle, zwischen denen der Router wählt
     private ChatLanguageModel chatModel;
+    private final Map<String, ChatLanguageModel> chatModels = new LinkedHashMap<>();
+    private final Map<String, StreamingChatLanguageModel> streamingChatModels = new LinkedHashMap<>();
+    private ModelRouter modelRouter;
+    private LlmGateway llmGateway;
+    // Circuit Breaker je Modell; das LLM gilt erst als nicht verfügbar, wenn alle Kreise offen sind
+    private final Map<String, CircuitBreaker> modelCircuits = new LinkedHashMap<>();
+    private final AtomicLong extractiveAnswers = new AtomicLong();
     private final Map<String, EmbeddingStore<TextSegment>> embeddingStores = new ConcurrentHashMap<>();
+    // Sperrobjekte, damit ein Job nicht parallel initialisiert und aktualisiert wird
+    private final Map<String, Object> jobLocks = new ConcurrentHashMap<>();
+    // URLs je Job, deren Punkte nicht geschrieben werden konnten und die neu eingebettet werden müssen
+    private final Map<String, Set<String>> dirtyUrls = new ConcurrentHashMap<>();
     private final OkHttpClient httpClient = new OkHttpClient();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -91,10 +338,33 @@ public class RAGService {
     private static final int CHUNK_SIZE = 500;
     private static final int CHUNK_OVERLAP = 50;
     private static final int EMBEDDING_SIZE = 384; // Für AllMiniLmL6V2EmbeddingModel
+    private static final int DELETE_BATCH_SIZE = 100;
+    // Payload-Feld, unter dem QdrantEmbeddingStore den Segmenttext speichert
+    private static final String QDRANT_TEXT_KEY = "text_segment";
+    // Payload-Felder mit Keyword-Index für Löschungen und gefilterte Suchen
+    private static final List<String> INDEXED_PAYLOAD_FIELDS = List.of("url", DocumentIndex.JOB_ID_KEY,
+            MetadataFilter.CATEGORY_KEY, MetadataFilter.DOMAIN_KEY, MetadataFilter.PAGE_TYPE_KEY);
+    // Seitengröße beim Lesen und Kopieren von Punkten (Abgleich, Migration)
+    private static final int SCROLL_BATCH_SIZE = 256;
+    // Der In-Memory-Store kann nicht vorfiltern; gefilterte Suchen holen entsprechend mehr Kandidaten
+    private static final int IN_MEMORY_FILTER_OVERFETCH = 10;
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    static final String LLM_ERROR_RESPONSE = "Entschuldigung, es gab einen Fehler beim Verarbeiten deiner Anfrage. " +
+            "Bitte überprüfe, ob die Open WebUI erreichbar ist und versuche es später erneut.";
 
+    // Ein gemeinsamer Kanal und Client für alle Qdrant-Zugriffe (Collections, Upserts, Suchen aller Jobs)
+    private ManagedChannel qdrantChannel;
     private QdrantClient qdrantClient;
 
+    // Hintergrund-Threads für Index-Warm-up und LLM-Health-Check
+    private final ExecutorService warmupExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("rag-warmup"));
+    // Jobs, deren Indexierung im Warm-up-Thread bereits eingestellt ist
+    private final Set<String> pendingInitializations = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService healthCheckExecutor =
+            Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("llm-health"));
+    private volatile String llmStatus = "UNKNOWN";
+    private volatile Instant llmLastChecked;
+
     @Autowired
     public RAGService(CrawlerService crawlerService) {
         this.crawlerService = crawlerService;
@@ -110,18 +380,13 @@ public class RAGService {
         logger.info("Open WebUI Base URL: {}", openWebUIBaseUrl);
         logger.info("Verwendetes Modell: {}", openWebUIModel);
         logger.info("SSL aktiviert: {}", openWebUISSL);
+        // Ungültiger Modus in rag.quantization.mode bricht den Start ab statt still unkomprimiert zu indexieren
+        logger.info("Quantisierung neuer lokaler Stores: {}", Quantization.from(defaultQuantization));
 
         try {
-            // OpenAI-kompatible API über Open WebUI
-            var chatModelBuilder = OpenAiChatModel.builder()
-                    .baseUrl(openWebUIBaseUrl)
-                    .modelName(openWebUIModel)
-                    .temperature(0.7);
-
-            // API Key konfigurieren und validieren
+            // API Key validieren
             if (openWebUIApiKey != null && !openWebUIApiKey.trim().isEmpty() &&
                     !openWebUIApiKey.equals("sk-YOUR-GENERATED-API-KEY-HERE")) {
-                chatModelBuilder.apiKey(openWebUIApiKey);
                 logger.info("✓ API Key für Open WebUI konfiguriert");
             } else {
                 logger.error("❌ FEHLER: Gültiger API Key erforderlich!");
@@ -132,96 +397,563 @@ public class RAGService {
                 throw new RuntimeException("API Key erforderlich für Open WebUI");
             }
 
-            chatModel = chatModelBuilder.build();
-            logger.info("✓ Open WebUI Chat Model erfolgreich konfiguriert");
-
-            // Test der Verbindung
-            testOpenWebUIConnection();
+            // OpenAI-kompatible API über Open WebUI, je Modell eine normale und eine Streaming-Variante
+            for (String modelName : routedModelNames()) {
+                chatModels.put(modelName, OpenAiChatModel.builder()
+                        .baseUrl(openWebUIBaseUrl)
+                        .apiKey(openWebUIApiKey)
+                        .modelName(modelName)
+                        .timeout(Duration.ofSeconds(llmTimeoutSeconds))
+                        .temperature(0.7)
+                        .build());
+                streamingChatModels.put(modelName, OpenAiStreamingChatModel.builder()
+                        .baseUrl(openWebUIBaseUrl)
+                        .apiKey(openWebUIApiKey)
+                        .modelName(modelName)
+                        .timeout(Duration.ofSeconds(llmTimeoutSeconds))
+                        .temperature(0.7)
+                        .build());
+            }
+            chatModel = chatModels.get(openWebUIModel);
+            logger.info("✓ Open WebUI Chat Models erfolgreich konfiguriert: {}", chatModels.keySet());
 
         } catch (Exception e) {
             logger.error("❌ Fehler bei der Open WebUI Konfiguration: {}", e.getMessage());
-            throw new RuntimeException("Kann Open WebUI nicht erreichen", e);
+            throw new RuntimeException("Kann Open WebUI nicht konfigurieren", e);
+        }
+
+        llmGateway = new LlmGateway(llmMaxConcurrent, llmQueueCapacity, TimeUnit.SECONDS.toMillis(llmTimeoutSeconds));
+        logger.info("LLM-Gateway: max. {} gleichzeitige Anfragen, {} Warteplätze, Deadline {} s",
+                llmMaxConcurrent, llmQueueCapacity, llmTimeoutSeconds);
+        for (String modelName : chatModels.keySet()) {
+            modelCircuits.put(modelName,
+                    new CircuitBreaker(llmCircuitFailureThreshold, TimeUnit.SECONDS.toMillis(llmCircuitOpenSeconds)));
         }
+        modelRouter = new ModelRouter(modelContextTokens(), llmSloMillis,
+                TimeUnit.SECONDS.toMillis(llmRouterWindowSeconds), llmRouterMaxErrorRate, llmRouterMinSamples);
+        logger.info("Modell-Routing: {} mit SLO {} ms", chatModels.keySet(), llmSloMillis);
+
+        // Verbindungstest läuft als asynchroner Health-Check und blockiert den Start nicht
+        scheduleLlmHealthCheck();
 
         // === EMBEDDING MODEL INITIALISIEREN ===
         logger.info("Initialisiere lokales Embedding-Modell...");
-        embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-        logger.info("✓ Embedding-Modell erfolgreich geladen");
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Jede ONNX-Session hat einen eigenen Intra-Op-Pool mit etwa so vielen Threads wie Kerne und eine eigene
+        // Kopie des Modells (~90 MB); langchain4j lässt die Thread-Anzahl nicht einstellen. Standard sind daher
+        // nur zwei Sessions, damit die Spuren getrennt bleiben; weitere Sessions überbuchen die CPU zusätzlich.
+        int sessions = embeddingSessions > 0 ? embeddingSessions : 2;
+        Path modelFile = sessions > 1 ? extractEmbeddingModel() : null;
+        if (modelFile != null) {
+            try {
+                embeddingSessionPool = new EmbeddingSessionPool(sessions, embeddingQuerySessions,
+                        () -> new OnnxEmbeddingModel(modelFile.toString()));
+            } catch (RuntimeException e) {
+                logger.error("❌ Embedding-Sessions konnten nicht erstellt werden, verwende eine gemeinsame Session: {}",
+                        e.getMessage());
+            }
+        }
+        if (embeddingSessionPool == null) {
+            // Eine gemeinsame Session: beide Spuren bleiben getrennt, teilen sich aber das Modell
+            EmbeddingModel shared = new AllMiniLmL6V2EmbeddingModel();
+            embeddingSessionPool = new EmbeddingSessionPool(1, 1, () -> shared);
+        }
+        // Chat-Batches dürfen freie Indexierungs-Sessions mitnutzen, daher so viele parallele Batches wie Sessions
+        queryEmbeddingBatcher = new QueryEmbeddingBatcher(embeddingSessionPool.queryModel(), queryBatchWindowMs,
+                queryBatchMaxSize, embeddingSessionPool.sessionCount());
+        embeddingModel = queryEmbeddingBatcher;
+        logger.info("✓ Embedding-Modell erfolgreich geladen ({} Sessions für Anfragen, {} für die Indexierung, {} CPU-Kerne, "
+                        + "bis zu {} ONNX-Threads)", embeddingSessionPool.querySessionCount(),
+                embeddingSessionPool.indexingSessionCount(), cores, embeddingSessionPool.sessionCount() * cores);
+
+        // === PERSISTENTEN EMBEDDING-CACHE ÖFFNEN ===
+        if (embeddingCacheEnabled) {
+            try {
+                embeddingCache = EmbeddingCache.open(Paths.get(embeddingCacheFile), EMBEDDING_SIZE);
+                logger.info("✓ Embedding-Cache geöffnet: {} ({} Einträge)", embeddingCacheFile, embeddingCache.size());
+            } catch (IOException e) {
+                logger.error("❌ Embedding-Cache nicht verfügbar, alle Segmente werden neu eingebettet: {}", e.getMessage());
+            }
+        }
+
+        // Worker-Anzahl folgt der Batch-Größe, begrenzt auf die verfügbaren CPU-Kerne
+        int indexingWorkers = Math.max(1, Math.min(processingBatchSize, Runtime.getRuntime().availableProcessors()));
+        embeddingPipeline = new EmbeddingPipeline(embeddingSessionPool.indexingModel(), processingBatchSize,
+                indexingWorkers, embeddingCache);
+        logger.info("Embedding-Pipeline: Batch-Größe {}, {} Worker", processingBatchSize, indexingWorkers);
+
+        queryCache = new QueryCache(queryCacheSize, TimeUnit.SECONDS.toMillis(queryCacheTtlSeconds));
+        if (answerCacheEnabled) {
+            answerCache = new SemanticAnswerCache(answerCacheThreshold, answerCacheSize,
+                    TimeUnit.SECONDS.toMillis(answerCacheTtlSeconds));
+        }
 
         // === QDRANT CLIENT INITIALISIEREN ===
         if (!useInMemoryStore) {
             try {
                 logger.info("Initialisiere Qdrant Client...");
-                qdrantClient = new QdrantClient(
-                        QdrantGrpcClient.newBuilder(qdrantHost, qdrantPort, false).build()
-                );
-                logger.info("✓ Qdrant Client erfolgreich initialisiert");
+                qdrantClient = createQdrantClient();
+                logger.info("✓ Qdrant Client erfolgreich initialisiert ({}:{}, Deadline {} ms, Keep-Alive {} s)",
+                        qdrantHost, qdrantPort, qdrantTimeoutMs, qdrantKeepAliveSeconds);
             } catch (Exception e) {
-                logger.error("❌ Qdrant nicht verfügbar, verwende In-Memory Store: {}", e.getMessage());
-                useInMemoryStore = true;
+                if (fallbackToLocalStore) {
+                    logger.error("❌ Qdrant nicht verfügbar, verwende lokalen Store ({}): {}", localStoreType, e.getMessage());
+                    useInMemoryStore = true;
+                } else {
+                    logger.error("❌ Qdrant nicht verfügbar und Fallback deaktiviert: {}", e.getMessage());
+                }
             }
         }
 
-        // === RAG-SYSTEM FÜR EXISTIERENDE JOBS INITIALISIEREN ===
-        logger.info("Initialisiere RAG-System für alle abgeschlossenen Jobs...");
+        // === RAG-SYSTEM FÜR EXISTIERENDE JOBS IM HINTERGRUND INITIALISIEREN ===
         List<CrawlJob> completedJobs = crawlerService.getCompletedJobs();
+        logger.info("Starte Index-Warm-up für {} abgeschlossene Jobs im Hintergrund...", completedJobs.size());
         for (CrawlJob job : completedJobs) {
+            job.setIndexStatus("LOADING");
+        }
+        warmupExecutor.submit(() -> {
+            for (CrawlJob job : completedJobs) {
+                try {
+                    initializeEmbeddingStoreForJob(job.getId());
+                } catch (Exception e) {
+                    logger.error("Fehler beim Initialisieren des RAG-Systems für Job {}: {}", job.getId(), e.getMessage());
+                }
+            }
+            logger.info("=== INDEX-WARM-UP ABGESCHLOSSEN ===");
+        });
+
+        logger.info("=== RAG-SERVICE ERFOLGREICH INITIALISIERT ===");
+    }
+
+    /**
+     * Richtet nur die lokale Indexierung ein, ohne LLM, Qdrant, ONNX-Sessions und Embedding-Cache (für Tests)
+     *
+     * @param storeType wie rag.local.store: mmap, hnsw oder ein anderer Wert für den In-Memory-Store
+     */
+    void initLocalIndexing(EmbeddingModel indexingModel, String storeType, Path storeDirectory) {
+        useInMemoryStore = true;
+        localStoreType = storeType;
+        localStoreDir = storeDirectory.toString();
+        embeddingModel = indexingModel;
+        embeddingPipeline = new EmbeddingPipeline(indexingModel, processingBatchSize, 1);
+        queryCache = new QueryCache(100, TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * Aktueller Store eines Jobs oder null (für Tests)
+     */
+    EmbeddingStore<TextSegment> embeddingStoreFor(String jobId) {
+        return embeddingStores.get(jobId);
+    }
+
+    /**
+     * Hauptmodell gefolgt von den Fallback-Modellen, ohne Duplikate
+     */
+    private List<String> routedModelNames() {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(openWebUIModel);
+        for (String name : openWebUIFallbackModels.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Kontextfenster der gerouteten Modelle aus openwebui.model.context.tokens (0 = unbegrenzt)
+     */
+    private Map<String, Integer> modelContextTokens() {
+        Map<String, Integer> configured = new HashMap<>();
+        for (String entry : openWebUIContextTokens.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
             try {
-                initializeEmbeddingStoreForJob(job.getId());
-            } catch (Exception e) {
-                logger.error("Fehler beim Initialisieren des RAG-Systems für Job {}: {}", job.getId(), e.getMessage());
+                configured.put(entry.substring(0, separator).trim(), Integer.parseInt(entry.substring(separator + 1).trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ungültiges Kontextfenster in openwebui.model.context.tokens: {}", entry);
             }
         }
+        Map<String, Integer> contextTokens = new LinkedHashMap<>();
+        for (String modelName : chatModels.keySet()) {
+            contextTokens.put(modelName, configured.getOrDefault(modelName, 0));
+        }
+        return contextTokens;
+    }
 
-        logger.info("=== RAG-SERVICE ERFOLGREICH INITIALISIERT ===");
+    /**
+     * Plant den Verbindungstest zur Open WebUI als wiederkehrenden Health-Check
+     */
+    private void scheduleLlmHealthCheck() {
+        if (llmHealthCheckInterval > 0) {
+            healthCheckExecutor.scheduleWithFixedDelay(this::testOpenWebUIConnection,
+                    0, llmHealthCheckInterval, TimeUnit.SECONDS);
+        } else {
+            healthCheckExecutor.submit(this::testOpenWebUIConnection);
+        }
     }
 
     /**
-     * Testet die Verbindung zur Open WebUI
+     * Testet die Verbindung zur Open WebUI und aktualisiert den Health-Status
      */
     private void testOpenWebUIConnection() {
         try {
             logger.info("Teste Verbindung zur Open WebUI...");
-            String testResponse = chatModel.generate("Antworte nur mit 'OK' wenn du erreichbar bist.");
+            String testResponse = llmGateway.execute(LlmGateway.Priority.BACKGROUND,
+                    () -> chatModel.generate("Antworte nur mit 'OK' wenn du erreichbar bist."));
+            llmStatus = "UP";
+            modelCircuits.get(openWebUIModel).recordSuccess();
             logger.info("✓ Open WebUI Test erfolgreich. Antwort: {}", testResponse);
+        } catch (LlmGateway.OverloadedException e) {
+            // Ausgelastet heißt erreichbar; der Status bleibt bis zum nächsten Test unverändert
+            logger.info("Open WebUI Test übersprungen: {}", e.getMessage());
         } catch (Exception e) {
+            llmStatus = "DOWN";
+            // Open WebUI selbst ist nicht erreichbar: alle Modelle sind betroffen
+            modelCircuits.values().forEach(CircuitBreaker::trip);
             logger.error("❌ Open WebUI Test fehlgeschlagen: {}", e.getMessage());
-            throw new RuntimeException("Open WebUI nicht erreichbar", e);
+        } finally {
+            llmLastChecked = Instant.now();
+        }
+    }
+
+    /**
+     * Gibt den Status des letzten LLM-Health-Checks zurück (UNKNOWN, UP, DOWN)
+     */
+    public Map<String, Object> getLlmHealth() {
+        Map<String, Object> health = new LinkedHashMap<>();
+        health.put("status", llmStatus);
+        health.put("model", openWebUIModel);
+        health.put("routedModels", new ArrayList<>(chatModels.keySet()));
+        health.put("lastChecked", llmLastChecked != null ? llmLastChecked.toString() : null);
+        return health;
+    }
+
+    /**
+     * Gibt den Index-Status eines Jobs zurück (LOADING, READY, FAILED) oder null, wenn noch nicht indexiert
+     */
+    public String getIndexStatus(String jobId) {
+        CrawlJob job = crawlerService.getJob(jobId);
+        return job != null ? job.getIndexStatus() : null;
+    }
+
+    /**
+     * Sucht im semantischen Antwort-Cache eines Jobs nach einer bereits beantworteten,
+     * ausreichend ähnlichen Frage
+     *
+     * @return die gespeicherte Antwort oder null
+     */
+    public String findCachedAnswer(String jobId, String query) {
+        return findCachedAnswer(jobId, query, MetadataFilter.none());
+    }
+
+    /**
+     * Gefilterte und jobübergreifende Anfragen (jobId null) umgehen den Antwort-Cache,
+     * da dessen Antworten auf dem gesamten Job beruhen
+     */
+    public String findCachedAnswer(String jobId, String query, MetadataFilter filter) {
+        if (answerCache == null || jobId == null || !filter.isEmpty()) {
+            return null;
+        }
+        try {
+            String answer = answerCache.findAnswer(jobId, embedQuery(QueryCache.normalize(query)));
+            if (answer != null) {
+                logger.info("✓ Antwort für '{}' aus dem semantischen Cache", query);
+            }
+            return answer;
+        } catch (Exception e) {
+            logger.error("Fehler bei der Suche im Antwort-Cache: {}", e.getMessage());
+            return null;
         }
     }
 
     /**
-     * Generiert eine Antwort vom lokalen LLM basierend auf der Anfrage und dem Kontext
+     * Generiert eine Antwort vom lokalen LLM basierend auf der Anfrage und dem Kontext.
+     * Erfolgreiche Antworten werden im semantischen Antwort-Cache des Jobs abgelegt.
+     */
+    public String generateResponse(String jobId, String query, String context) {
+        return generateResponse(jobId, query, context, MetadataFilter.none());
+    }
+
+    /**
+     * Wie {@link #generateResponse(String, String, String)}; Antworten auf gefilterte Anfragen
+     * werden nicht im Antwort-Cache abgelegt
+     *
+     * @throws LlmGateway.OverloadedException wenn das Gateway die Anfrage ablehnt
+     * @throws LlmUnavailableException        wenn das LLM nicht innerhalb der Deadline oder fehlerhaft antwortet
+     */
+    public String generateResponse(String jobId, String query, String context, MetadataFilter filter) {
+        return generateResponse(jobId, query, context, filter, answerCacheGeneration(jobId));
+    }
+
+    /**
+     * @param cacheGeneration Stand des Antwort-Caches vor dem Retrieval ({@link #answerCacheGeneration});
+     *                        wurde der Job seitdem neu indexiert, wird die Antwort nicht gecacht
      */
-    public String generateResponse(String query, String context) {
+    public String generateResponse(String jobId, String query, String context, MetadataFilter filter,
+                                   long cacheGeneration) {
+        ModelRouter.Decision decision = null;
+        int promptTokens = 0;
+        AtomicLong callStart = new AtomicLong();
         try {
-            // Optimierter Prompt für deutsche Hochschul-Inhalte
-            String prompt = String.format(
-                    "Du bist ein hilfsreicher Assistent für Studierende der Hochschule Heilbronn. " +
-                            "Beantworte die folgende Frage basierend auf den bereitgestellten Informationen aus den Webseiten der Hochschule.\n\n" +
-                            "WICHTIGE REGELN:\n" +
-                            "- Antworte auf Deutsch\n" +
-                            "- Sei präzise und hilfreich\n" +
-                            "- Beziehe dich nur auf die gegebenen Informationen\n" +
-                            "- Wenn die Antwort nicht in den Informationen steht, sage das ehrlich\n" +
-                            "- Gib konkrete Hinweise und Links wenn möglich\n\n" +
-                            "KONTEXT (Informationen von der HHN-Website):\n%s\n\n" +
-                            "FRAGE:\n%s\n\n" +
-                            "ANTWORT:",
-                    context, query
-            );
-
-            logger.info("Generiere Antwort für Anfrage: '{}'", query);
+            String prompt = buildPrompt(query, context);
+            promptTokens = ContextPacker.estimateTokens(prompt);
+            decision = modelRouter.route(promptTokens, llmGateway.estimatedWaitMillis(),
+                model -> !modelCircuits.get(model).isOpen());
+            ChatLanguageModel model = chatModels.get(decision.model());
+            String modelName = decision.model();
+            CircuitBreaker circuit = modelCircuits.get(modelName);
+            if (circuit.isOpen()) {
+                throw new LlmUnavailableException("Kreis für Modell " + modelName + " offen");
+            }
+
+            logger.info("Generiere Antwort für Anfrage: '{}' mit {} ({}, Prompt ~{} Tokens, davon Kontext ~{})", query,
+                    decision.model(), decision.reason(), promptTokens, ContextPacker.estimateTokens(context));
             logger.debug("Verwendeter Prompt: {}", prompt);
 
-            String response = chatModel.generate(prompt);
-            logger.info("✓ Antwort vom lokalen LLM erhalten");
+            String response = llmGateway.execute(LlmGateway.Priority.INTERACTIVE, () -> {
+                // Die Probe im Zustand HALF_OPEN erst mit einem Platz im Gateway nehmen; lehnt das Gateway
+                // die Anfrage ab, bliebe sie sonst ohne Ergebnis belegt
+                if (!circuit.tryAcquire()) {
+                    throw new LlmUnavailableException("Kreis für Modell " + modelName + " offen");
+                }
+                callStart.set(System.nanoTime());
+                return model.generate(prompt);
+            });
+            long millis = recordModelCall(decision, promptTokens, callStart.get(), true);
+            logger.info("✓ Antwort von {} nach {} ms erhalten (vorhergesagt {} ms)", decision.model(), millis,
+                    decision.predictedMillis());
+
+            if (filter.isEmpty()) {
+                cacheAnswer(jobId, query, response, cacheGeneration);
+            }
             return response;
 
+        } catch (LlmGateway.OverloadedException e) {
+            logger.warn("LLM ausgelastet, Anfrage abgelehnt (Retry-After {} s): {}", e.getRetryAfterSeconds(), e.getMessage());
+            throw e;
+        } catch (LlmUnavailableException e) {
+            logger.warn("LLM nicht verfügbar: {}", e.getMessage());
+            throw e;
+        } catch (TimeoutException e) {
+            recordModelCall(decision, promptTokens, callStart.get(), false);
+            logger.error("❌ LLM-Antwort nicht innerhalb der Deadline von {} s", llmTimeoutSeconds);
+            throw new LlmUnavailableException("LLM-Antwort nicht innerhalb von " + llmTimeoutSeconds + " s", e);
+        } catch (ExecutionException e) {
+            // Kreis erst im Gateway geschlossen vorgefunden: kein Aufruf, also auch kein Ergebnis für den Kreis
+            if (callStart.get() == 0 && e.getCause() instanceof LlmUnavailableException unavailable) {
+                logger.warn("LLM nicht verfügbar: {}", unavailable.getMessage());
+                throw unavailable;
+            }
+            recordModelCall(decision, promptTokens, callStart.get(), false);
+            logger.error("❌ Fehler bei der Generierung der Antwort: {}", e.getMessage());
+            throw new LlmUnavailableException("Fehler bei der Generierung der Antwort: " + e.getMessage(), e);
+        } catch (Exception e) {
+            recordModelCall(decision, promptTokens, callStart.get(), false);
+            logger.error("❌ Fehler bei der Generierung der Antwort: {}", e.getMessage());
+            throw new LlmUnavailableException("Fehler bei der Generierung der Antwort: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Generiert eine Antwort als Token-Stream. Jedes Token wird an onToken übergeben,
+     * das zurückgegebene Future enthält die vollständige Antwort. Lehnt das Gateway ab, schlägt das Future
+     * mit {@link LlmGateway.OverloadedException} fehl, bei Fehlern des LLM mit {@link LlmUnavailableException}.
+     */
+    public CompletableFuture<String> generateResponseStreaming(String jobId, String query, String context,
+                                                               Consumer<String> onToken) {
+        return generateResponseStreaming(jobId, query, context, MetadataFilter.none(), onToken);
+    }
+
+    public CompletableFuture<String> generateResponseStreaming(String jobId, String query, String context,
+                                                               MetadataFilter filter, Consumer<String> onToken) {
+        return generateResponseStreaming(jobId, query, context, filter, answerCacheGeneration(jobId), onToken);
+    }
+
+    public CompletableFuture<String> generateResponseStreaming(String jobId, String query, String context,
+                                                               MetadataFilter filter, long cacheGeneration,
+                                                               Consumer<String> onToken) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        String prompt = buildPrompt(query, context);
+        int promptTokens = ContextPacker.estimateTokens(prompt);
+        ModelRouter.Decision decision = modelRouter.route(promptTokens, llmGateway.estimatedWaitMillis(),
+                model -> !modelCircuits.get(model).isOpen());
+        StreamingChatLanguageModel model = streamingChatModels.get(decision.model());
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        CircuitBreaker circuit = modelCircuits.get(decision.model());
+        if (circuit.isOpen()) {
+            logger.warn("Kreis für Modell {} offen, gestreamte Anfrage nicht gesendet", decision.model());
+            result.completeExceptionally(new LlmUnavailableException("Kreis für Modell " + decision.model() + " offen"));
+            return result;
+        }
+
+        logger.info("Generiere gestreamte Antwort für Anfrage: '{}' mit {} ({}, Prompt ~{} Tokens, davon Kontext ~{})",
+                query, decision.model(), decision.reason(), promptTokens, ContextPacker.estimateTokens(context));
+        logger.debug("Verwendeter Prompt: {}", prompt);
+
+        // Der Platz im Gateway bleibt belegt, bis der Stream endet
+        LlmGateway.Permit permit;
+        try {
+            permit = llmGateway.acquire(LlmGateway.Priority.INTERACTIVE);
+        } catch (LlmGateway.OverloadedException e) {
+            logger.warn("LLM ausgelastet, gestreamte Anfrage abgelehnt (Retry-After {} s)", e.getRetryAfterSeconds());
+            result.completeExceptionally(e);
+            return result;
+        }
+        // Die Probe im Zustand HALF_OPEN erst mit einem Platz im Gateway nehmen (siehe generateResponse)
+        if (!circuit.tryAcquire()) {
+            permit.release();
+            logger.warn("Kreis für Modell {} offen, gestreamte Anfrage nicht gesendet", decision.model());
+            result.completeExceptionally(new LlmUnavailableException("Kreis für Modell " + decision.model() + " offen"));
+            return result;
+        }
+
+        long start = System.nanoTime();
+        try {
+            model.generate(prompt, new StreamingResponseHandler<AiMessage>() {
+                @Override
+                public void onNext(String token) {
+                    if (firstToken.compareAndSet(true, false)) {
+                        logger.info("Erstes Token nach {} ms", (System.nanoTime() - start) / 1_000_000);
+                    }
+                    onToken.accept(token);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    permit.release();
+                    long millis = recordModelCall(decision, promptTokens, start, true);
+                    String answer = response.content().text();
+                    logger.info("✓ Gestreamte Antwort von {} nach {} ms erhalten (vorhergesagt {} ms)",
+                            decision.model(), millis, decision.predictedMillis());
+                    if (filter.isEmpty()) {
+                        cacheAnswer(jobId, query, answer, cacheGeneration);
+                    }
+                    result.complete(answer);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    permit.release();
+                    recordModelCall(decision, promptTokens, start, false);
+                    logger.error("❌ Fehler bei der gestreamten Antwort: {}", error.getMessage());
+                    result.completeExceptionally(new LlmUnavailableException(
+                            "Fehler bei der gestreamten Antwort: " + error.getMessage(), error));
+                }
+            });
         } catch (Exception e) {
+            permit.release();
+            recordModelCall(decision, promptTokens, start, false);
             logger.error("❌ Fehler bei der Generierung der Antwort: {}", e.getMessage());
-            return "Entschuldigung, es gab einen Fehler beim Verarbeiten deiner Anfrage. " +
-                    "Bitte überprüfe, ob die Open WebUI erreichbar ist und versuche es später erneut.";
+            result.completeExceptionally(new LlmUnavailableException(
+                    "Fehler bei der Generierung der Antwort: " + e.getMessage(), e));
+        }
+
+        return result;
+    }
+
+    /**
+     * Meldet das Ergebnis eines Modellaufrufs an den Kreis des Modells und, falls der Aufruf begonnen hat,
+     * die Dauer an den Router
+     *
+     * @param start Beginn des eigentlichen Aufrufs (nach dem Warten im Gateway), 0 = nicht gestartet
+     * @return Dauer in ms
+     */
+    private long recordModelCall(ModelRouter.Decision decision, int promptTokens, long start, boolean success) {
+        if (decision == null) {
+            return 0;
+        }
+        CircuitBreaker circuit = modelCircuits.get(decision.model());
+        if (success) {
+            circuit.recordSuccess();
+        } else {
+            circuit.recordFailure();
+        }
+        if (start == 0) {
+            return 0;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        modelRouter.record(decision, promptTokens, millis, success);
+        return millis;
+    }
+
+    /**
+     * Ob Anfragen statt vom LLM extraktiv beantwortet werden sollen: der Kreis ist offen (LLM nicht
+     * erreichbar oder wiederholt fehlgeschlagen) oder die geschätzte Wartezeit im Gateway ist zu hoch
+     */
+    public boolean shouldAnswerExtractively() {
+        if (!degradeEnabled) {
+            return false;
+        }
+        if (modelCircuits.values().stream().allMatch(CircuitBreaker::isOpen)) {
+            logger.warn("LLM-Kreise aller Modelle offen, Anfrage wird extraktiv beantwortet");
+            return true;
+        }
+        long waitMillis = llmGateway.estimatedWaitMillis();
+        if (waitMillis > degradeMaxWaitMillis) {
+            logger.warn("Geschätzte LLM-Wartezeit {} ms über {} ms, Anfrage wird extraktiv beantwortet",
+                    waitMillis, degradeMaxWaitMillis);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ob eine vom Gateway abgelehnte Anfrage extraktiv beantwortet werden darf (statt HTTP 503)
+     */
+    public boolean isDegradationEnabled() {
+        return degradeEnabled;
+    }
+
+    /**
+     * Antwort aus den besten Auszügen der gefundenen Seiten, ohne LLM; wird nicht im Antwort-Cache abgelegt
+     */
+    public String answerExtractively(ContextPacker.Result packed) {
+        extractiveAnswers.incrementAndGet();
+        return ExtractiveAnswer.format(packed, degradeMaxSources);
+    }
+
+    /**
+     * Optimierter Prompt für deutsche Hochschul-Inhalte
+     */
+    private String buildPrompt(String query, String context) {
+        return String.format(
+                "Du bist ein hilfsreicher Assistent für Studierende der Hochschule Heilbronn. " +
+                        "Beantworte die folgende Frage basierend auf den bereitgestellten Informationen aus den Webseiten der Hochschule.\n\n" +
+                        "WICHTIGE REGELN:\n" +
+                        "- Antworte auf Deutsch\n" +
+                        "- Sei präzise und hilfreich\n" +
+                        "- Beziehe dich nur auf die gegebenen Informationen\n" +
+                        "- Wenn die Antwort nicht in den Informationen steht, sage das ehrlich\n" +
+                        "- Gib konkrete Hinweise und Links wenn möglich\n\n" +
+                        "KONTEXT (Informationen von der HHN-Website):\n%s\n\n" +
+                        "FRAGE:\n%s\n\n" +
+                        "ANTWORT:",
+                context, query
+        );
+    }
+
+    /**
+     * Stand des Antwort-Caches eines Jobs; vor dem Retrieval lesen und an generateResponse übergeben
+     */
+    public long answerCacheGeneration(String jobId) {
+        return answerCache == null || jobId == null ? 0 : answerCache.generation(jobId);
+    }
+
+    /**
+     * Legt eine erfolgreiche Antwort im semantischen Antwort-Cache des Jobs ab, sofern der Job
+     * seit cacheGeneration nicht neu indexiert wurde
+     */
+    private void cacheAnswer(String jobId, String query, String answer, long cacheGeneration) {
+        if (answerCache == null || jobId == null || answer == null) {
+            return;
+        }
+        try {
+            answerCache.put(jobId, embedQuery(QueryCache.normalize(query)), answer, cacheGeneration);
+        } catch (Exception e) {
+            logger.error("Fehler beim Speichern im Antwort-Cache: {}", e.getMessage());
         }
     }
 
@@ -229,10 +961,35 @@ public class RAGService {
 
     @PreDestroy
     public void cleanup() {
+        warmupExecutor.shutdownNow();
+        healthCheckExecutor.shutdownNow();
+        if (llmGateway != null) {
+            llmGateway.close();
+        }
+        if (queryEmbeddingBatcher != null) {
+            queryEmbeddingBatcher.close();
+        }
+        for (EmbeddingStore<TextSegment> store : embeddingStores.values()) {
+            closeStore(store);
+        }
+        if (embeddingCache != null) {
+            try {
+                embeddingCache.close();
+            } catch (IOException e) {
+                logger.error("Error closing embedding cache: {}", e.getMessage());
+            }
+        }
         if (qdrantClient != null) {
             try {
+                // Schließt auch den gemeinsamen Kanal; laufende Aufrufe bekommen kurz Zeit zum Abschluss
                 qdrantClient.close();
+                if (!qdrantChannel.awaitTermination(5, TimeUnit.SECONDS)) {
+                    qdrantChannel.shutdownNow();
+                }
                 logger.info("Qdrant gRPC client closed successfully");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                qdrantChannel.shutdownNow();
             } catch (Exception e) {
                 logger.error("Error closing Qdrant client: {}", e.getMessage());
             }
@@ -275,36 +1032,58 @@ public class RAGService {
             throw new IllegalArgumentException("Job nicht gefunden oder nicht abgeschlossen: " + jobId);
         }
 
-        // Prüfen, ob bereits initialisiert
-        if (embeddingStores.containsKey(jobId)) {
-            logger.info("Embedding-Store für Job {} bereits initialisiert", jobId);
-            return;
+        synchronized (lockFor(jobId)) {
+            // Prüfen, ob bereits initialisiert
+            if (embeddingStores.containsKey(jobId)) {
+                logger.info("Embedding-Store für Job {} bereits initialisiert", jobId);
+                return;
+            }
+
+            initializeEmbeddingStore(job);
+        }
+    }
+
+    /**
+     * Baut den Index eines Jobs auf und pflegt dabei dessen Index-Status
+     */
+    private void initializeEmbeddingStore(CrawlJob job) throws IOException {
+        job.setIndexStatus("LOADING");
+        try {
+            buildEmbeddingStore(job);
+            job.setIndexStatus("READY");
+        } catch (IOException | RuntimeException e) {
+            closeStore(embeddingStores.remove(job.getId()));
+            job.setIndexStatus("FAILED");
+            throw e;
         }
+    }
 
-        String collectionName = "job_" + jobId.replace("-", "_");
+    private void buildEmbeddingStore(CrawlJob job) throws IOException {
+        String jobId = job.getId();
+        String collectionName = collectionNameFor(jobId);
         EmbeddingStore<TextSegment> embeddingStore;
 
-        // Embedding Store konfigurieren (In-Memory oder Qdrant)
+        // Embedding Store konfigurieren (lokal oder Qdrant)
         if (useInMemoryStore) {
-            logger.info("Verwende In-Memory-Store für Job {}", jobId);
-            embeddingStore = new InMemoryEmbeddingStore<>();
+            embeddingStore = createLocalStore(job);
         } else {
             try {
                 if (!collectionExists(collectionName)) {
                     logger.info("Collection {} wird erstellt...", collectionName);
                     createCollection(collectionName);
                 }
+                ensurePayloadIndexes(collectionName);
 
-                embeddingStore = QdrantEmbeddingStore.builder()
-                        .host(qdrantHost)
-                        .port(qdrantPort)
-                        .collectionName(collectionName)
-                        .build();
+                // Nutzt den gemeinsamen Client statt eines eigenen Kanals pro Job
+                embeddingStore = new QdrantEmbeddingStore(qdrantClient, collectionName, QDRANT_TEXT_KEY);
 
                 logger.info("✓ Qdrant Embedding Store für Job {} konfiguriert", jobId);
             } catch (Exception e) {
-                logger.error("Qdrant Fehler, verwende In-Memory Store: {}", e.getMessage());
-                embeddingStore = new InMemoryEmbeddingStore<>();
+                if (!fallbackToLocalStore) {
+                    throw new IOException("Qdrant nicht erreichbar: " + e.getMessage(), e);
+                }
+                logger.error("Qdrant Fehler, verwende lokalen Store: {}", e.getMessage());
+                embeddingStore = createLocalStore(job);
             }
         }
 
@@ -313,100 +1092,1071 @@ public class RAGService {
         // Dokumente laden und indexieren
         logger.info("Lade Dokumente aus Crawl-Job {}...", jobId);
         List<RAGDocument> documents = loadDocumentsFromCrawlJob(job);
-        documentCache.put(jobId, documents);
+        documentCache.put(jobId, new JobDocuments(new DocumentIndex(documents), loadLexicalIndex(job, documents)));
         logger.info("{} Dokumente geladen", documents.size());
 
-        // Dokumente chunken und embedden
-        logger.info("Erstelle Embeddings für {} Dokumente...", documents.size());
-        int processedCount = 0;
-        for (RAGDocument doc : documents) {
-            try {
-                if (doc.getContent() == null || doc.getContent().trim().isEmpty()) {
-                    logger.warn("Überspringe Dokument {} mit leerem Inhalt", doc.getId());
-                    continue;
-                }
-
-                // Metadata und Document erstellen
-                Metadata metadata = new Metadata();
-                metadata.add("url", doc.getUrl());
-                metadata.add("title", doc.getTitle());
-                metadata.add("category", doc.getCategory());
-
-                Document langchainDoc = Document.from(doc.getContent(), metadata);
-
-                // Dokument chunken
-                DocumentSplitter splitter = DocumentSplitters.recursive(CHUNK_SIZE, CHUNK_OVERLAP);
-                List<TextSegment> segments = splitter.split(langchainDoc).stream()
-                        .map(doc1 -> (TextSegment) doc1)
-                        .collect(Collectors.toList());
-
-                // Embeddings erstellen und speichern
-                for (TextSegment segment : segments) {
-                    Embedding embedding = embeddingModel.embed(segment).content();
-                    embeddingStore.add(embedding, segment);
-                }
-
-                processedCount++;
-                if (processedCount % 10 == 0) {
-                    logger.info("Verarbeitet: {} von {} Dokumenten", processedCount, documents.size());
-                }
-            } catch (Exception e) {
-                logger.error("Fehler beim Verarbeiten von Dokument {}: {}", doc.getId(), e.getMessage());
-            }
+        // Persistierter Index (lokal oder gemeinsame Collection): nur fehlende oder geänderte Seiten einbetten
+        List<RAGDocument> documentsToEmbed = documents;
+        if (embeddingStore instanceof MappedEmbeddingStore mappedStore && mappedStore.size() > 0) {
+            documentsToEmbed = documentsMissingFrom(mappedStore, documents);
+            logger.info("Persistierter Index für Job {} geladen: {} Seiten unverändert, {} neu einzubetten",
+                    jobId, documents.size() - documentsToEmbed.size(), documentsToEmbed.size());
+        } else if (embeddingStore instanceof QdrantEmbeddingStore && isSharedCollection()) {
+            documentsToEmbed = documentsMissingFromCollection(collectionName, jobId, documents);
+            logger.info("Gemeinsame Collection {} für Job {}: {} Seiten unverändert, {} neu einzubetten",
+                    collectionName, jobId, documents.size() - documentsToEmbed.size(), documentsToEmbed.size());
         }
 
+        // Dokumente chunken und batchweise parallel embedden
+        List<TextSegment> segments = splitDocuments(documentsToEmbed);
+        logger.info("Erstelle Embeddings für {} Segmente aus {} Dokumenten...", segments.size(), documentsToEmbed.size());
+        embedAndStore(jobId, segments, embeddingStore);
+        flushStore(embeddingStore);
+        invalidateCaches(jobId);
+
         logger.info("✓ RAG-System für Job {} initialisiert mit {} Dokumenten", jobId, documents.size());
     }
 
     /**
-     * Findet relevante Dokumente für eine Anfrage
+     * Aktualisiert den Index eines bereits initialisierten Jobs inkrementell.
+     * Seiten werden über crawl_timestamp und Inhalts-Hash mit dem indexierten Stand verglichen;
+     * nur neue oder geänderte Seiten werden eingebettet, die Vektoren entfernter oder
+     * geänderter Seiten werden gelöscht.
      */
-    public List<RAGDocument> findRelevantDocuments(String jobId, String query, int maxResults) {
-        // Prüfen, ob das Embedding-Store initialisiert ist
-        if (!embeddingStores.containsKey(jobId)) {
-            try {
-                logger.info("Initialisiere Embedding-Store für Job {}...", jobId);
-                initializeEmbeddingStoreForJob(jobId);
-            } catch (Exception e) {
-                logger.error("Fehler beim Initialisieren des RAG-Systems: {}", e.getMessage());
-                return new ArrayList<>();
-            }
+    public void refreshJobIndex(String jobId) throws IOException {
+        CrawlJob job = crawlerService.getJob(jobId);
+        if (job == null || !"COMPLETED".equals(job.getStatus())) {
+            throw new IllegalArgumentException("Job nicht gefunden oder nicht abgeschlossen: " + jobId);
         }
 
-        EmbeddingStore<TextSegment> embeddingStore = embeddingStores.get(jobId);
+        synchronized (lockFor(jobId)) {
+            EmbeddingStore<TextSegment> embeddingStore = embeddingStores.get(jobId);
+            if (embeddingStore == null) {
+                initializeEmbeddingStore(job);
+                return;
+            }
 
+            DocumentIndex indexed = documentCache.getOrDefault(jobId, JobDocuments.EMPTY).documents();
+            // Seiten, deren Vektoren beim letzten Schreiben verloren gingen
+            Set<String> dirty = Set.copyOf(dirtyUrls.getOrDefault(jobId, Set.of()));
+
+            List<RAGDocument> currentDocuments = new ArrayList<>();
+            List<RAGDocument> changedDocuments = new ArrayList<>();
+            Set<String> staleUrls = new HashSet<>();
+            Set<String> currentUrls = new HashSet<>();
+
+            for (RAGDocument doc : loadDocumentsFromCrawlJob(job)) {
+                currentUrls.add(doc.getUrl());
+                RAGDocument indexedDoc = indexed.getByUrl(doc.getUrl());
+
+                if (indexedDoc != null && isUnchanged(indexedDoc, doc, dirty)) {
+                    currentDocuments.add(indexedDoc);
+                    continue;
+                }
+
+                if (indexedDoc != null) {
+                    staleUrls.add(doc.getUrl());
+                }
+                changedDocuments.add(doc);
+                currentDocuments.add(doc);
+            }
+
+            int removedCount = 0;
+            for (RAGDocument indexedDoc : indexed.getDocuments()) {
+                if (!currentUrls.contains(indexedDoc.getUrl())) {
+                    staleUrls.add(indexedDoc.getUrl());
+                    removedCount++;
+                }
+            }
+
+            if (changedDocuments.isEmpty() && staleUrls.isEmpty()) {
+                logger.info("Index für Job {} ist aktuell ({} Seiten)", jobId, currentDocuments.size());
+                return;
+            }
+
+            logger.info("Inkrementelle Aktualisierung für Job {}: {} neue/geänderte, {} entfernte Seiten",
+                    jobId, changedDocuments.size(), removedCount);
+
+            // Schlägt das Löschen fehl, bricht die Aktualisierung ab; sonst lägen alte und neue Vektoren
+            // derselben Seite nebeneinander in der Collection
+            if (embeddingStore instanceof QdrantEmbeddingStore) {
+                deletePointsByUrl(collectionNameFor(jobId), jobId, staleUrls);
+            }
+
+            // Werden jetzt neu eingebettet; schlägt das Einbetten oder Schreiben erneut fehl, markiert embedAndStore sie wieder
+            if (!dirty.isEmpty()) {
+                dirtyUrls.get(jobId).removeAll(dirty);
+            }
+
+            if (embeddingStore instanceof QdrantEmbeddingStore) {
+                embedAndStore(jobId, splitDocuments(changedDocuments), embeddingStore);
+            } else if (embeddingStore instanceof MappedEmbeddingStore mappedStore) {
+                mappedStore.removeByUrl(staleUrls);
+                if (mappedStore.getDeletedCount() > mappedStore.size()) {
+                    // Überwiegend gelöschte Einträge: Dateien neu schreiben, Vektoren kommen aus dem Embedding-Cache
+                    mappedStore.clear();
+                    embedAndStore(jobId, splitDocuments(currentDocuments), mappedStore);
+                } else {
+                    embedAndStore(jobId, splitDocuments(changedDocuments), mappedStore);
+                }
+                flushStore(mappedStore);
+            } else {
+                // Der In-Memory-Store kann keine Einträge löschen und wird neu aufgebaut;
+                // unveränderte Segmente kommen dabei aus dem Embedding-Cache
+                EmbeddingStore<TextSegment> rebuiltStore = new InMemoryEmbeddingStore<>();
+                embedAndStore(jobId, splitDocuments(currentDocuments), rebuiltStore);
+                embeddingStores.put(jobId, rebuiltStore);
+            }
+
+            documentCache.put(jobId, new JobDocuments(new DocumentIndex(currentDocuments),
+                    loadLexicalIndex(job, currentDocuments)));
+            invalidateCaches(jobId);
+            logger.info("✓ Index für Job {} aktualisiert ({} Seiten)", jobId, currentDocuments.size());
+        }
+    }
+
+    /**
+     * Bettet Segmente ein und schreibt sie in den Store. Qdrant-Ziele erhalten die Punkte über einen
+     * {@link QdrantBulkWriter} in großen, asynchronen Upsert-Batches statt eines synchronen addAll pro Batch.
+     * Seiten, die nicht eingebettet oder nicht geschrieben werden konnten, werden bei der nächsten
+     * Aktualisierung erneut eingebettet; in Qdrant werden ihre bereits geschriebenen Punkte entfernt.
+     */
+    private void embedAndStore(String jobId, List<TextSegment> segments, EmbeddingStore<TextSegment> embeddingStore) {
+        Set<String> failedUrls = ConcurrentHashMap.newKeySet();
+        if (!(embeddingStore instanceof QdrantEmbeddingStore) || qdrantClient == null || segments.isEmpty()) {
+            embeddingPipeline.embedAndStore(jobId, segments, EmbeddingSink.of(embeddingStore), failedUrls);
+        } else {
+            String collectionName = collectionNameFor(jobId);
+            try (QdrantBulkWriter writer = new QdrantBulkWriter(qdrantClient, collectionName,
+                    upsertBatchSize, upsertMaxInFlight, upsertMaxRetries)) {
+                embeddingPipeline.embedAndStore(jobId, segments, writer, failedUrls);
+            } catch (QdrantBulkWriter.IncompleteWriteException e) {
+                logger.error("❌ {}", e.getMessage());
+                failedUrls.addAll(e.getFailedUrls());
+            }
+            if (!failedUrls.isEmpty()) {
+                try {
+                    deletePointsByUrl(collectionName, jobId, failedUrls);
+                } catch (IOException e) {
+                    // Die Seiten bleiben markiert; die nächste Aktualisierung löscht ihre Punkte vor dem Einbetten
+                    logger.error("❌ {}", e.getMessage());
+                }
+            }
+        }
+
+        if (!failedUrls.isEmpty()) {
+            logger.error("❌ {} Seiten von Job {} nicht vollständig indexiert; sie werden bei der nächsten Aktualisierung erneut eingebettet",
+                    failedUrls.size(), jobId);
+            dirtyUrls.computeIfAbsent(jobId, k -> ConcurrentHashMap.newKeySet()).addAll(failedUrls);
+        }
+    }
+
+    /**
+     * Eine Seite gilt als unverändert, wenn Crawl-Zeitpunkt oder Inhalts-Hash übereinstimmen
+     * und ihre Vektoren zuletzt vollständig geschrieben wurden
+     */
+    private boolean isUnchanged(RAGDocument indexed, RAGDocument current, Set<String> dirty) {
+        if (dirty.contains(current.getUrl())) {
+            return false;
+        }
+        if (indexed.getCrawlTimestamp() != null && indexed.getCrawlTimestamp().equals(current.getCrawlTimestamp())) {
+            return true;
+        }
+        return Objects.equals(indexed.getContentHash(), current.getContentHash());
+    }
+
+    /**
+     * Löscht alle Punkte der angegebenen URLs eines Jobs aus einer Qdrant-Collection.
+     * In der gemeinsamen Collection bleiben die Punkte anderer Jobs mit derselben URL erhalten.
+     *
+     * @throws IOException wenn Qdrant das Löschen ablehnt; ein Teil der Punkte kann dann noch vorhanden sein
+     */
+    private void deletePointsByUrl(String collectionName, String jobId, Set<String> urls) throws IOException {
+        List<String> urlList = new ArrayList<>(urls);
+        for (int i = 0; i < urlList.size(); i += DELETE_BATCH_SIZE) {
+            List<String> batch = urlList.subList(i, Math.min(i + DELETE_BATCH_SIZE, urlList.size()));
+            Points.Filter.Builder filterBuilder = Points.Filter.newBuilder()
+                    .addMust(ConditionFactory.matchKeywords("url", batch));
+            if (isSharedCollection()) {
+                filterBuilder.addMust(ConditionFactory.matchKeyword(DocumentIndex.JOB_ID_KEY, jobId));
+            }
+            Points.Filter filter = filterBuilder.build();
+            try {
+                qdrantClient.deleteAsync(collectionName, filter).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Löschen der Vektoren aus " + collectionName + " unterbrochen");
+            } catch (ExecutionException e) {
+                throw new IOException("gRPC-Fehler (deletePoints " + collectionName + "): " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        logger.debug("Vektoren von {} URLs aus Collection {} gelöscht", urls.size(), collectionName);
+    }
+
+    /**
+     * Lädt den BM25-Index eines Jobs aus bm25_index.bin neben crawl_index.json oder baut ihn neu auf,
+     * wenn die Datei fehlt oder nicht mehr zum Dokumentenbestand passt
+     *
+     * @return der Index oder null, wenn die hybride Suche deaktiviert ist
+     */
+    private LexicalIndex loadLexicalIndex(CrawlJob job, List<RAGDocument> documents) {
+        if (!hybridSearchEnabled) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Path indexFile = Paths.get(job.getOutputDirectory(), LexicalIndex.INDEX_FILE);
+        LexicalIndex index = null;
         try {
-            // Query embedden
-            Embedding queryEmbedding = embeddingModel.embed(query).content();
+            index = LexicalIndex.load(indexFile, documents);
+        } catch (IOException e) {
+            logger.warn("BM25-Index {} nicht lesbar, wird neu aufgebaut: {}", indexFile, e.getMessage());
+        }
 
-            // Ähnliche Dokumente finden
-            List<EmbeddingMatch<TextSegment>> matches = embeddingStore.findRelevant(queryEmbedding, maxResults);
+        if (index != null) {
+            logger.info("BM25-Index für Job {} geladen: {} Dokumente, {} Terme in {} ms",
+                    job.getId(), index.documentCount(), index.termCount(), (System.nanoTime() - start) / 1_000_000);
+        } else {
+            index = LexicalIndex.build(documents);
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                logger.error("Fehler beim Schreiben des BM25-Index {}: {}", indexFile, e.getMessage());
+            }
+            logger.info("BM25-Index für Job {} aufgebaut: {} Dokumente, {} Terme in {} ms",
+                    job.getId(), index.documentCount(), index.termCount(), (System.nanoTime() - start) / 1_000_000);
+        }
+        return index;
+    }
 
-            // RAG-Dokumente aus dem Cache abrufen
-            List<RAGDocument> documents = documentCache.getOrDefault(jobId, new ArrayList<>());
+    /**
+     * Erstellt den lokalen Store eines Jobs: persistent per Memory-Mapping (Standard, optional mit
+     * HNSW-Graph und Quantisierung) oder flüchtig im Heap
+     */
+    private EmbeddingStore<TextSegment> createLocalStore(CrawlJob job) {
+        String jobId = job.getId();
+        boolean useHnsw = "hnsw".equalsIgnoreCase(localStoreType);
+        if (useHnsw || "mmap".equalsIgnoreCase(localStoreType)) {
+            try {
+                Path storeDirectory = Paths.get(localStoreDir, jobId);
+                HnswIndex.Settings hnswSettings = useHnsw
+                        ? new HnswIndex.Settings(hnswM, hnswEfConstruction, hnswEfSearch)
+                        : null;
+                MappedEmbeddingStore store = MappedEmbeddingStore.open(storeDirectory, EMBEDDING_SIZE, hnswSettings,
+                        resolveQuantization(job, storeDirectory));
+                logger.info("Verwende persistenten Vektor-Store für Job {} ({} Vektoren, Quantisierung {})",
+                        jobId, store.size(), store.getQuantization());
+                return store;
+            } catch (IOException e) {
+                logger.error("❌ Persistenter Vektor-Store für Job {} nicht verfügbar, verwende In-Memory Store: {}",
+                        jobId, e.getMessage());
+            }
+        }
+        logger.info("Verwende In-Memory-Store für Job {}", jobId);
+        return new InMemoryEmbeddingStore<>();
+    }
 
-            // Relevante Dokumente anhand der URLs finden
-            List<RAGDocument> relevantDocs = new ArrayList<>();
-            for (EmbeddingMatch<TextSegment> match : matches) {
-                TextSegment segment = match.embedded();
-                String url = segment.metadata().get("url");
-
-                // Passendes Dokument im Cache finden
-                for (RAGDocument doc : documents) {
-                    if (doc.getUrl().equals(url)) {
-                        if (!relevantDocs.contains(doc)) {
-                            relevantDocs.add(doc);
-                        }
-                        break;
-                    }
+    /**
+     * Quantisierung pro Job: explizit am Job gesetzt, sonst der Modus eines vorhandenen Stores,
+     * für neue Stores der konfigurierte Standard
+     */
+    private Quantization resolveQuantization(CrawlJob job, Path storeDirectory) throws IOException {
+        if (job.getQuantization() != null) {
+            try {
+                return Quantization.from(job.getQuantization());
+            } catch (IllegalArgumentException e) {
+                // Jobs, die vor der Prüfung in CrawlerController angelegt wurden
+                logger.warn("Job {}: {}; verwende den Modus des Stores bzw. den Standard", job.getId(), e.getMessage());
+            }
+        }
+        Quantization persisted = MappedEmbeddingStore.persistedQuantization(storeDirectory);
+        return persisted != null ? persisted : Quantization.from(defaultQuantization);
+    }
+
+    /**
+     * Gleicht einen persistierten Store mit dem aktuellen Crawl ab. Vektoren entfernter oder geänderter
+     * Seiten werden gelöscht; zurückgegeben werden die Seiten, die (neu) eingebettet werden müssen.
+     */
+    private List<RAGDocument> documentsMissingFrom(MappedEmbeddingStore store, List<RAGDocument> documents) {
+        Set<String> currentUrls = new HashSet<>();
+        Set<String> staleUrls = new HashSet<>();
+        List<RAGDocument> missing = new ArrayList<>();
+
+        for (RAGDocument doc : documents) {
+            currentUrls.add(doc.getUrl());
+            if (store.containsDocument(doc.getUrl(), doc.getContentHash())) {
+                continue;
+            }
+            staleUrls.add(doc.getUrl());
+            missing.add(doc);
+        }
+
+        store.retainUrls(currentUrls);
+        store.removeByUrl(staleUrls);
+        return missing;
+    }
+
+    private void flushStore(EmbeddingStore<TextSegment> store) {
+        if (store instanceof MappedEmbeddingStore mappedStore) {
+            try {
+                mappedStore.flush();
+            } catch (IOException e) {
+                logger.error("Fehler beim Schreiben des Vektor-Stores {}: {}", mappedStore.getDirectory(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Das ONNX-Modell liegt im Jar von AllMiniLmL6V2EmbeddingModel, das alle Instanzen über eine
+     * statische Session bedient. Für eigene Sessions wird die Modelldatei einmalig ins Temp-Verzeichnis
+     * kopiert; fehlt sie, bleibt es bei der gemeinsamen Session.
+     */
+    private Path extractEmbeddingModel() {
+        try (InputStream model = AllMiniLmL6V2EmbeddingModel.class.getResourceAsStream("/all-minilm-l6-v2.onnx")) {
+            if (model == null) {
+                logger.warn("ONNX-Modell nicht im Classpath gefunden, verwende eine gemeinsame Embedding-Session");
+                return null;
+            }
+            Path file = Files.createTempFile("all-minilm-l6-v2", ".onnx");
+            file.toFile().deleteOnExit();
+            Files.copy(model, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            logger.error("❌ ONNX-Modell konnte nicht bereitgestellt werden, verwende eine gemeinsame Session: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Baut den gemeinsamen gRPC-Kanal mit Keep-Alive auf. Der Kanal multiplext alle Aufrufe über
+     * eine HTTP/2-Verbindung; die Deadline gilt für jeden einzelnen Aufruf des Clients.
+     */
+    private QdrantClient createQdrantClient() {
+        ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress(qdrantHost, qdrantPort)
+                .keepAliveTime(qdrantKeepAliveSeconds, TimeUnit.SECONDS)
+                .keepAliveTimeout(qdrantKeepAliveTimeoutSeconds, TimeUnit.SECONDS)
+                .keepAliveWithoutCalls(true)
+                .maxInboundMessageSize(qdrantMaxInboundMessageMb * 1024 * 1024);
+        if (qdrantUseTls) {
+            channelBuilder.useTransportSecurity();
+        } else {
+            channelBuilder.usePlaintext();
+        }
+        qdrantChannel = channelBuilder.build();
+
+        QdrantGrpcClient.Builder grpcClient = QdrantGrpcClient.newBuilder(qdrantChannel, true)
+                .withTimeout(Duration.ofMillis(qdrantTimeoutMs));
+        if (!qdrantApiKey.isBlank()) {
+            grpcClient.withApiKey(qdrantApiKey);
+        }
+        return new QdrantClient(grpcClient.build());
+    }
+
+    private void closeStore(EmbeddingStore<TextSegment> store) {
+        if (store instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                logger.error("Error closing embedding store: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collection, in der die Punkte eines Jobs liegen
+     */
+    private String collectionNameFor(String jobId) {
+        return isSharedCollection() ? sharedCollectionName : perJobCollectionName(jobId);
+    }
+
+    private String perJobCollectionName(String jobId) {
+        return "job_" + jobId.replace("-", "_");
+    }
+
+    private boolean isSharedCollection() {
+        return "shared".equalsIgnoreCase(qdrantCollectionMode);
+    }
+
+    private Object lockFor(String jobId) {
+        return jobLocks.computeIfAbsent(jobId, k -> new Object());
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Metadaten der Segmente eines Dokuments. Die Filterfelder werden wie die Filterwerte normalisiert,
+     * damit die case-sensitiven Keyword-Bedingungen in Qdrant greifen.
+     */
+    static Metadata segmentMetadata(RAGDocument doc) {
+        Metadata metadata = new Metadata();
+        metadata.add("url", doc.getUrl());
+        metadata.add("title", doc.getTitle());
+        metadata.add(MetadataFilter.CATEGORY_KEY, MetadataFilter.normalize(doc.getCategory()));
+        if (doc.getDomain() != null) {
+            metadata.add(MetadataFilter.DOMAIN_KEY, MetadataFilter.normalize(doc.getDomain()));
+        }
+        if (doc.getPageType() != null) {
+            metadata.add(MetadataFilter.PAGE_TYPE_KEY, MetadataFilter.normalize(doc.getPageType()));
+        }
+        metadata.add(DocumentIndex.DOCUMENT_ID_KEY, doc.getId());
+        metadata.add(DocumentIndex.JOB_ID_KEY, doc.getJobId());
+        if (doc.getContentHash() != null) {
+            metadata.add(MappedEmbeddingStore.CONTENT_HASH_KEY, doc.getContentHash());
+        }
+        return metadata;
+    }
+
+    /**
+     * Zerlegt die Dokumente eines Jobs in Segmente inklusive Metadaten
+     */
+    private List<TextSegment> splitDocuments(List<RAGDocument> documents) {
+        DocumentSplitter splitter = DocumentSplitters.recursive(CHUNK_SIZE, CHUNK_OVERLAP);
+        List<TextSegment> segments = new ArrayList<>();
+
+        for (RAGDocument doc : documents) {
+            try {
+                if (doc.getContent() == null || doc.getContent().trim().isEmpty()) {
+                    logger.warn("Überspringe Dokument {} mit leerem Inhalt", doc.getId());
+                    continue;
                 }
+
+                // Metadata und Document erstellen
+                Document langchainDoc = Document.from(doc.getContent(), segmentMetadata(doc));
+                segments.addAll(splitter.split(langchainDoc));
+            } catch (Exception e) {
+                logger.error("Fehler beim Verarbeiten von Dokument {}: {}", doc.getId(), e.getMessage());
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Packt die zur Anfrage passenden Segmente der gefundenen Dokumente in das Token-Budget des Prompts.
+     * Verwendet werden die Segmente, über die die Vektorsuche ein Dokument gefunden hat, mit ihrer
+     * Ähnlichkeit aus dem Store. Nur Dokumente ohne solche Segmente (reine BM25-Treffer) werden wie bei
+     * der Indexierung zerlegt und per Kosinus-Ähnlichkeit zu den Segment-Vektoren aus dem Embedding-Cache
+     * bewertet; fehlen Vektoren, entscheidet der Anteil der enthaltenen Anfrage-Terme.
+     *
+     * @param retrieval gefundene Dokumente in Rang-Reihenfolge mit ihren Segment-Treffern
+     */
+    public ContextPacker.Result packContext(String query, Retrieval retrieval) {
+        DocumentSplitter splitter = DocumentSplitters.recursive(CHUNK_SIZE, CHUNK_OVERLAP);
+        String normalizedQuery = QueryCache.normalize(query);
+        float[] queryVector = null;
+        Set<String> queryTerms = new HashSet<>(LexicalIndex.tokenize(normalizedQuery));
+
+        List<RAGDocument> documents = retrieval.documents();
+        List<RAGDocument> packedDocuments = new ArrayList<>(documents.size());
+        List<List<ContextPacker.ScoredSegment>> scoredSegments = new ArrayList<>(documents.size());
+        for (RAGDocument doc : documents) {
+            List<ContextPacker.ScoredSegment> matched = retrieval.segmentsOf(doc);
+            if (!matched.isEmpty()) {
+                packedDocuments.add(doc);
+                scoredSegments.add(matched);
+                continue;
+            }
+            if (doc.getContent() == null || doc.getContent().trim().isEmpty()) {
+                continue;
+            }
+            List<TextSegment> segments = splitter.split(Document.from(doc.getContent(), new Metadata()));
+
+            // Segment-Vektoren aus dem Cache; fehlt einer, wird das ganze Dokument lexikalisch bewertet
+            List<float[]> vectors = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                Embedding cached = embeddingCache != null ? embeddingCache.get(segment.text()) : null;
+                if (cached == null) {
+                    vectors = null;
+                    break;
+                }
+                vectors.add(cached.vector());
+            }
+            if (vectors != null && queryVector == null) {
+                queryVector = embedQuery(normalizedQuery).vector();
+            }
+
+            List<ContextPacker.ScoredSegment> scored = new ArrayList<>(segments.size());
+            for (int i = 0; i < segments.size(); i++) {
+                String text = segments.get(i).text();
+                double score = vectors != null
+                        ? SimilarityKernels.cosine(queryVector, vectors.get(i))
+                        : termCoverage(queryTerms, text);
+                scored.add(new ContextPacker.ScoredSegment(i, text, score));
+            }
+            packedDocuments.add(doc);
+            scoredSegments.add(scored);
+        }
+
+        return new ContextPacker(contextTokenBudget, contextMaxSegmentsPerDocument, CHUNK_OVERLAP * 2)
+                .pack(packedDocuments, scoredSegments);
+    }
+
+    private static double termCoverage(Set<String> queryTerms, String text) {
+        if (queryTerms.isEmpty()) {
+            return 0;
+        }
+        Set<String> segmentTerms = new HashSet<>(LexicalIndex.tokenize(text));
+        long matched = queryTerms.stream().filter(segmentTerms::contains).count();
+        return (double) matched / queryTerms.size();
+    }
+
+    /**
+     * Findet relevante Dokumente für eine Anfrage
+     */
+    public List<RAGDocument> findRelevantDocuments(String jobId, String query, int maxResults) {
+        return findRelevantDocuments(jobId, query, maxResults, MetadataFilter.none());
+    }
+
+    public List<RAGDocument> findRelevantDocuments(String jobId, String query, int maxResults, MetadataFilter filter) {
+        return retrieve(jobId, query, maxResults, filter).documents();
+    }
+
+    /**
+     * Findet relevante Dokumente unter den Seiten, die dem Filter entsprechen, samt der Segmente, über die
+     * sie gefunden wurden. Der Filter wird an den Store durchgereicht (Qdrant-Payload-Filter bzw.
+     * Vorfilterung im lokalen Store und im BM25-Index), sodass nur die Vektoren der passenden Seiten
+     * bewertet werden.
+     */
+    public Retrieval retrieve(String jobId, String query, int maxResults, MetadataFilter filter) {
+        // Prüfen, ob das Embedding-Store initialisiert ist
+        if (!embeddingStores.containsKey(jobId)) {
+            try {
+                logger.info("Initialisiere Embedding-Store für Job {}...", jobId);
+                initializeEmbeddingStoreForJob(jobId);
+            } catch (Exception e) {
+                logger.error("Fehler beim Initialisieren des RAG-Systems: {}", e.getMessage());
+                return Retrieval.empty();
+            }
+        }
+
+        // Wiederholte Anfragen direkt aus dem Ergebnis-Cache beantworten
+        String normalizedQuery = QueryCache.normalize(query);
+        String cacheKey = filter.isEmpty() ? normalizedQuery : normalizedQuery + " [" + filter + "]";
+        long cacheGeneration = queryCache.generation(jobId);
+        Retrieval cachedResult = queryCache.getResult(jobId, cacheKey, maxResults);
+        if (cachedResult != null) {
+            logger.debug("Retrieval-Ergebnis für '{}' aus dem Cache", cacheKey);
+            return cachedResult;
+        }
+
+        EmbeddingStore<TextSegment> embeddingStore = embeddingStores.get(jobId);
+        // Dokumente und BM25-Index aus demselben Snapshot, auch wenn parallel aktualisiert wird
+        JobDocuments snapshot = documentCache.getOrDefault(jobId, JobDocuments.EMPTY);
+        DocumentIndex documents = snapshot.documents();
+        LexicalIndex lexicalIndex = snapshot.lexicalIndex();
+
+        try {
+            Retrieval retrieval;
+            if (lexicalIndex == null) {
+                retrieval = vectorSearch(jobId, embeddingStore, documents, normalizedQuery, maxResults, filter);
+            } else {
+                retrieval = hybridSearch(jobId, embeddingStore, documents, lexicalIndex, normalizedQuery, maxResults, filter);
             }
 
-            return relevantDocs;
+            queryCache.putResult(jobId, cacheKey, maxResults, retrieval, cacheGeneration);
+            return retrieval;
         } catch (Exception e) {
             logger.error("Fehler beim Suchen relevanter Dokumente: {}", e.getMessage());
-            return new ArrayList<>();
+            return Retrieval.empty();
+        }
+    }
+
+    public List<RAGDocument> findRelevantDocuments(Collection<String> jobIds, String query, int maxResults,
+                                                   MetadataFilter filter) {
+        return retrieve(jobIds, query, maxResults, filter).documents();
+    }
+
+    /**
+     * Jobübergreifende Suche. In der gemeinsamen Collection genügt ein einziger Qdrant-Aufruf mit
+     * job_id-Filter; sonst werden die Jobs einzeln durchsucht und per Reciprocal Rank Fusion zusammengeführt.
+     * Durchsucht werden nur Jobs mit fertigem Index; die übrigen werden im Hintergrund indexiert.
+     *
+     * @param jobIds zu durchsuchende Jobs oder null für alle abgeschlossenen Jobs
+     */
+    public Retrieval retrieve(Collection<String> jobIds, String query, int maxResults, MetadataFilter filter) {
+        List<String> readyJobs = new ArrayList<>();
+        for (String jobId : targetJobs(jobIds)) {
+            if (embeddingStores.containsKey(jobId)) {
+                readyJobs.add(jobId);
+            } else {
+                initializeInBackground(jobId);
+            }
+        }
+        if (readyJobs.isEmpty()) {
+            return Retrieval.empty();
+        }
+        if (readyJobs.size() == 1) {
+            return retrieve(readyJobs.get(0), query, maxResults, filter);
+        }
+
+        boolean singleSearch = isSharedCollection() && readyJobs.stream()
+                .allMatch(jobId -> embeddingStores.get(jobId) instanceof QdrantEmbeddingStore);
+        if (!singleSearch) {
+            List<Retrieval> rankings = new ArrayList<>();
+            for (String jobId : readyJobs) {
+                rankings.add(retrieve(jobId, query, maxResults, filter));
+            }
+            return fuseRankings(rankings, maxResults);
+        }
+
+        try {
+            // Die gemeinsame Collection enthält alle Jobs: der job_id-Filter ist immer gesetzt
+            Embedding queryEmbedding = embedQuery(QueryCache.normalize(query));
+            List<SegmentHit> hits = searchQdrant(sharedCollectionName, queryEmbedding, maxResults * 2,
+                    toQdrantFilter(readyJobs, filter));
+
+            Retrieval.Builder retrieval = new Retrieval.Builder();
+            for (SegmentHit hit : hits) {
+                JobDocuments documents = documentCache.get(hit.segment().metadata().get(DocumentIndex.JOB_ID_KEY));
+                RAGDocument doc = documents != null ? documents.documents().resolve(hit.segment()) : null;
+                if (doc != null) {
+                    retrieval.addDocument(doc);
+                    retrieval.addMatch(doc, hit.segment(), hit.score());
+                }
+            }
+            return retrieval.build().limit(maxResults);
+        } catch (Exception e) {
+            logger.error("Fehler bei der jobübergreifenden Suche: {}", e.getMessage());
+            return Retrieval.empty();
+        }
+    }
+
+    /**
+     * true, solange keiner der Jobs einen fertigen Index hat und mindestens einer noch indexiert wird
+     *
+     * @param jobIds zu durchsuchende Jobs oder null für alle abgeschlossenen Jobs
+     */
+    public boolean isWarming(Collection<String> jobIds) {
+        List<String> targetJobs = targetJobs(jobIds);
+        return targetJobs.stream().noneMatch(embeddingStores::containsKey)
+                && targetJobs.stream().anyMatch(jobId -> "LOADING".equals(getIndexStatus(jobId)));
+    }
+
+    private List<String> targetJobs(Collection<String> jobIds) {
+        List<String> targetJobs = new ArrayList<>();
+        if (jobIds == null) {
+            crawlerService.getCompletedJobs().forEach(job -> targetJobs.add(job.getId()));
+        } else {
+            targetJobs.addAll(jobIds);
+        }
+        return targetJobs;
+    }
+
+    /**
+     * Stellt die Indexierung eines Jobs im Warm-up-Thread ein, statt den anfragenden Thread zu blockieren
+     */
+    private void initializeInBackground(String jobId) {
+        CrawlJob job = crawlerService.getJob(jobId);
+        if (job == null || !"COMPLETED".equals(job.getStatus()) || !pendingInitializations.add(jobId)) {
+            return;
+        }
+        job.setIndexStatus("LOADING");
+        warmupExecutor.submit(() -> {
+            try {
+                initializeEmbeddingStoreForJob(jobId);
+            } catch (Exception e) {
+                logger.error("Fehler beim Initialisieren des RAG-Systems für Job {}: {}", jobId, e.getMessage());
+            } finally {
+                pendingInitializations.remove(jobId);
+            }
+        });
+    }
+
+    /**
+     * BM25 läuft zuerst; ist der lexikalische Treffer eindeutig (z.B. ein Studiengang oder eine Raumnummer),
+     * wird das BM25-Ergebnis direkt verwendet und die Anfrage gar nicht erst eingebettet. Sonst folgt die
+     * Vektorsuche, und beide Rankings werden per Reciprocal Rank Fusion zusammengeführt.
+     */
+    private Retrieval hybridSearch(String jobId, EmbeddingStore<TextSegment> embeddingStore,
+                                   DocumentIndex documents, LexicalIndex lexicalIndex, String normalizedQuery,
+                                   int maxResults, MetadataFilter filter)
+            throws InterruptedException, ExecutionException {
+        int candidates = Math.max(maxResults * 2, 10);
+        List<RAGDocument> allDocuments = documents.getDocuments();
+        LexicalIndex.Result lexicalResult = lexicalIndex.search(normalizedQuery, candidates,
+                filter.isEmpty() ? null : doc -> filter.matches(allDocuments.get(doc)));
+        List<RAGDocument> lexicalDocs = new ArrayList<>(lexicalResult.hits().size());
+        for (LexicalIndex.Hit hit : lexicalResult.hits()) {
+            lexicalDocs.add(documents.getDocuments().get(hit.document()));
+        }
+
+        if (lexicalResult.isDecisive(lexicalDecisiveRatio)) {
+            logger.debug("Eindeutiger BM25-Treffer für '{}', Vektorsuche übersprungen", normalizedQuery);
+            return Retrieval.of(lexicalDocs).limit(maxResults);
+        }
+
+        Retrieval vectorResult = vectorSearch(jobId, embeddingStore, documents, normalizedQuery, candidates, filter);
+        return fuseRankings(List.of(Retrieval.of(lexicalDocs), vectorResult), maxResults);
+    }
+
+    /**
+     * Reciprocal Rank Fusion: jedes Dokument erhält die Summe 1 / (k + Rang) über alle Rankings;
+     * die gefundenen Segmente eines Dokuments werden aus allen Rankings übernommen
+     */
+    private Retrieval fuseRankings(List<Retrieval> rankings, int maxResults) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, RAGDocument> documentsById = new LinkedHashMap<>();
+        for (Retrieval ranking : rankings) {
+            List<RAGDocument> documents = ranking.documents();
+            for (int rank = 0; rank < documents.size(); rank++) {
+                RAGDocument doc = documents.get(rank);
+                scores.merge(doc.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+                documentsById.putIfAbsent(doc.getId(), doc);
+            }
+        }
+
+        List<RAGDocument> fused = new ArrayList<>(documentsById.values());
+        fused.sort((a, b) -> Double.compare(scores.get(b.getId()), scores.get(a.getId())));
+        Retrieval.Builder retrieval = new Retrieval.Builder();
+        for (RAGDocument doc : fused.subList(0, Math.min(maxResults, fused.size()))) {
+            retrieval.addDocument(doc);
+            for (Retrieval ranking : rankings) {
+                ranking.segmentsOf(doc).forEach(segment -> retrieval.addSegment(doc, segment));
+            }
         }
+        return retrieval.build();
+    }
+
+    /**
+     * Vektorsuche: Treffer werden in konstanter Zeit auf ihre Dokumente abgebildet, Duplikate über die ID
+     * entfernt; die Segmente bleiben als Grundlage für den Kontext erhalten
+     */
+    private Retrieval vectorSearch(String jobId, EmbeddingStore<TextSegment> embeddingStore,
+                                   DocumentIndex documents, String normalizedQuery, int maxResults,
+                                   MetadataFilter filter) throws InterruptedException, ExecutionException {
+        // Query embedden (mit Cache)
+        Embedding queryEmbedding = embedQuery(normalizedQuery);
+
+        // Ähnliche Segmente finden, bei gesetztem Filter direkt im Store eingeschränkt
+        List<SegmentHit> hits = new ArrayList<>();
+        if (embeddingStore instanceof QdrantEmbeddingStore && (isSharedCollection() || !filter.isEmpty())) {
+            List<String> jobIds = isSharedCollection() ? List.of(jobId) : null;
+            hits = searchQdrant(collectionNameFor(jobId), queryEmbedding, maxResults, toQdrantFilter(jobIds, filter));
+        } else {
+            List<EmbeddingMatch<TextSegment>> matches;
+            if (filter.isEmpty()) {
+                matches = embeddingStore.findRelevant(queryEmbedding, maxResults);
+            } else if (embeddingStore instanceof MappedEmbeddingStore mappedStore) {
+                List<String> urls = new ArrayList<>();
+                for (RAGDocument doc : documents.getDocuments()) {
+                    if (filter.matches(doc)) {
+                        urls.add(doc.getUrl());
+                    }
+                }
+                matches = mappedStore.findRelevant(queryEmbedding, maxResults, 0, urls);
+            } else {
+                matches = embeddingStore.findRelevant(queryEmbedding, maxResults * IN_MEMORY_FILTER_OVERFETCH);
+            }
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                hits.add(new SegmentHit(match.embedded(), match.score()));
+            }
+        }
+
+        Retrieval.Builder retrieval = new Retrieval.Builder();
+        for (SegmentHit hit : hits) {
+            RAGDocument doc = documents.resolve(hit.segment());
+            if (doc != null && filter.matches(doc)) {
+                retrieval.addDocument(doc);
+                retrieval.addMatch(doc, hit.segment(), hit.score());
+            }
+        }
+        return retrieval.build().limit(maxResults);
+    }
+
+    /**
+     * Gefilterte Suche direkt über den Qdrant-Client, da QdrantEmbeddingStore keine Filter unterstützt.
+     * Die Bedingungen werden als Payload-Filter übergeben und über die Keyword-Indizes ausgewertet.
+     */
+    private List<SegmentHit> searchQdrant(String collectionName, Embedding queryEmbedding, int maxResults,
+                                          Points.Filter filter) throws InterruptedException, ExecutionException {
+        Points.SearchPoints request = Points.SearchPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .addAllVector(queryEmbedding.vectorAsList())
+                .setLimit(maxResults)
+                .setFilter(filter)
+                .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                .build();
+
+        List<SegmentHit> hits = new ArrayList<>();
+        for (Points.ScoredPoint point : qdrantClient.searchAsync(request).get()) {
+            Metadata metadata = new Metadata();
+            String text = null;
+            for (Map.Entry<String, JsonWithInt.Value> entry : point.getPayloadMap().entrySet()) {
+                if (entry.getValue().getKindCase() != JsonWithInt.Value.KindCase.STRING_VALUE) {
+                    continue;
+                }
+                if (QDRANT_TEXT_KEY.equals(entry.getKey())) {
+                    text = entry.getValue().getStringValue();
+                } else {
+                    metadata.add(entry.getKey(), entry.getValue().getStringValue());
+                }
+            }
+            if (text != null) {
+                hits.add(new SegmentHit(TextSegment.from(text, metadata), point.getScore()));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @param jobIds Jobs, auf die die Suche beschränkt wird, oder null für alle Punkte der Collection
+     */
+    private Points.Filter toQdrantFilter(Collection<String> jobIds, MetadataFilter filter) {
+        Points.Filter.Builder builder = Points.Filter.newBuilder();
+        if (jobIds != null) {
+            builder.addMust(ConditionFactory.matchKeywords(DocumentIndex.JOB_ID_KEY, new ArrayList<>(jobIds)));
+        }
+        if (filter.getCategory() != null) {
+            builder.addMust(ConditionFactory.matchKeyword(MetadataFilter.CATEGORY_KEY, filter.getCategory()));
+        }
+        if (filter.getDomain() != null) {
+            builder.addMust(ConditionFactory.matchKeyword(MetadataFilter.DOMAIN_KEY, filter.getDomain()));
+        }
+        if (filter.getPageType() != null) {
+            builder.addMust(ConditionFactory.matchKeyword(MetadataFilter.PAGE_TYPE_KEY, filter.getPageType()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gleicht die Punkte eines Jobs in der gemeinsamen Collection über URL und Inhalts-Hash mit dem
+     * aktuellen Crawl ab. Punkte entfernter oder geänderter Seiten werden gelöscht; zurückgegeben
+     * werden die Seiten, die (neu) eingebettet werden müssen.
+     */
+    private List<RAGDocument> documentsMissingFromCollection(String collectionName, String jobId,
+                                                            List<RAGDocument> documents) throws IOException {
+        Map<String, String> indexedHashes = new HashMap<>();
+        Points.Filter jobFilter = Points.Filter.newBuilder()
+                .addMust(ConditionFactory.matchKeyword(DocumentIndex.JOB_ID_KEY, jobId))
+                .build();
+        try {
+            Points.PointId offset = null;
+            do {
+                Points.ScrollResponse page = scrollPage(collectionName, jobFilter, false, offset);
+                for (Points.RetrievedPoint point : page.getResultList()) {
+                    JsonWithInt.Value url = point.getPayloadMap().get("url");
+                    JsonWithInt.Value hash = point.getPayloadMap().get(MappedEmbeddingStore.CONTENT_HASH_KEY);
+                    if (url != null) {
+                        indexedHashes.put(url.getStringValue(), hash != null ? hash.getStringValue() : "");
+                    }
+                }
+                offset = page.hasNextPageOffset() ? page.getNextPageOffset() : null;
+            } while (offset != null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return documents;
+        } catch (ExecutionException e) {
+            logger.error("gRPC-Fehler (scroll {}): {}", collectionName, e.getMessage());
+            return documents;
+        }
+
+        List<RAGDocument> missing = new ArrayList<>();
+        Set<String> staleUrls = new HashSet<>(indexedHashes.keySet());
+        for (RAGDocument doc : documents) {
+            String indexedHash = indexedHashes.get(doc.getUrl());
+            if (indexedHash != null && indexedHash.equals(doc.getContentHash())) {
+                staleUrls.remove(doc.getUrl());
+                continue;
+            }
+            missing.add(doc);
+        }
+        if (!staleUrls.isEmpty()) {
+            deletePointsByUrl(collectionName, jobId, staleUrls);
+        }
+        return missing;
+    }
+
+    /**
+     * Liest eine Seite von Punkten einer Collection (mit Payload, optional mit Vektoren)
+     *
+     * @param offset erster Punkt der Seite oder null für den Anfang
+     */
+    private Points.ScrollResponse scrollPage(String collectionName, Points.Filter filter, boolean withVectors,
+                                             Points.PointId offset) throws InterruptedException, ExecutionException {
+        Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setLimit(SCROLL_BATCH_SIZE)
+                .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                .setWithVectors(WithVectorsSelectorFactory.enable(withVectors));
+        if (filter != null) {
+            request.setFilter(filter);
+        }
+        if (offset != null) {
+            request.setOffset(offset);
+        }
+        return qdrantClient.scrollAsync(request.build()).get();
+    }
+
+    /**
+     * Migriert die Punkte aller Jobs aus den Collections pro Job in die gemeinsame Collection.
+     * Vektoren und Payload werden unverändert kopiert und um job_id ergänzt; bereits migrierte Punkte
+     * eines Jobs werden vorher entfernt, sodass die Migration wiederholt werden kann.
+     *
+     * @param deleteSource Collections pro Job nach erfolgreicher Kopie löschen (nur im Modus shared)
+     * @return Bericht mit der Anzahl kopierter Punkte pro Job
+     */
+    public Map<String, Object> migrateToSharedCollection(boolean deleteSource) {
+        // Im Modus per_job werden die Collections pro Job weiterhin durchsucht und dürfen nicht verschwinden
+        if (deleteSource && !isSharedCollection()) {
+            throw new IllegalArgumentException(
+                    "deleteSource ist nur bei qdrant.collection.mode=shared erlaubt");
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        if (qdrantClient == null) {
+            report.put("error", "Qdrant ist nicht verfügbar");
+            return report;
+        }
+
+        long start = System.nanoTime();
+        if (!collectionExists(sharedCollectionName)) {
+            createCollection(sharedCollectionName);
+        }
+        ensurePayloadIndexes(sharedCollectionName);
+
+        Map<String, Object> migratedJobs = new LinkedHashMap<>();
+        long totalPoints = 0;
+        for (CrawlJob job : crawlerService.getAllJobs()) {
+            String sourceCollection = perJobCollectionName(job.getId());
+            if (!collectionExists(sourceCollection)) {
+                continue;
+            }
+            try {
+                long copied = copyPoints(sourceCollection, job.getId());
+                migratedJobs.put(job.getId(), copied);
+                totalPoints += copied;
+                logger.info("✓ Job {} migriert: {} Punkte aus {} nach {}", job.getId(), copied,
+                        sourceCollection, sharedCollectionName);
+
+                if (deleteSource) {
+                    qdrantClient.deleteCollectionAsync(sourceCollection).get();
+                    logger.info("Collection {} gelöscht", sourceCollection);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                report.put("error", "Migration unterbrochen");
+                break;
+            } catch (ExecutionException e) {
+                logger.error("❌ Migration von Job {} fehlgeschlagen: {}", job.getId(), e.getMessage());
+                migratedJobs.put(job.getId(), "FAILED: " + e.getMessage());
+            }
+        }
+
+        report.put("targetCollection", sharedCollectionName);
+        report.put("jobs", migratedJobs);
+        report.put("points", totalPoints);
+        report.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        report.put("sharedModeActive", isSharedCollection());
+        return report;
+    }
+
+    private long copyPoints(String sourceCollection, String jobId) throws InterruptedException, ExecutionException {
+        Points.Filter jobFilter = Points.Filter.newBuilder()
+                .addMust(ConditionFactory.matchKeyword(DocumentIndex.JOB_ID_KEY, jobId))
+                .build();
+        qdrantClient.deleteAsync(sharedCollectionName, jobFilter).get();
+
+        long copied = 0;
+        Points.PointId offset = null;
+        do {
+            Points.ScrollResponse page = scrollPage(sourceCollection, null, true, offset);
+            List<Points.PointStruct> batch = new ArrayList<>(page.getResultList().size());
+            for (Points.RetrievedPoint point : page.getResultList()) {
+                Points.PointStruct.Builder copy = Points.PointStruct.newBuilder()
+                        .setId(point.getId())
+                        .setVectors(point.getVectors())
+                        .putAllPayload(point.getPayloadMap())
+                        .putPayload(DocumentIndex.JOB_ID_KEY, ValueFactory.value(jobId));
+                // Ältere Punkte tragen die Filterfelder noch in Originalschreibweise
+                for (String key : MetadataFilter.KEYS) {
+                    JsonWithInt.Value value = point.getPayloadMap().get(key);
+                    if (value != null && value.getKindCase() == JsonWithInt.Value.KindCase.STRING_VALUE) {
+                        copy.putPayload(key, ValueFactory.value(MetadataFilter.normalize(value.getStringValue())));
+                    }
+                }
+                batch.add(copy.build());
+            }
+            if (!batch.isEmpty()) {
+                qdrantClient.upsertAsync(sharedCollectionName, batch).get();
+                copied += batch.size();
+            }
+            offset = page.hasNextPageOffset() ? page.getNextPageOffset() : null;
+        } while (offset != null);
+        return copied;
+    }
+
+    /**
+     * Legt Keyword-Indizes für die gefilterten Payload-Felder an; bereits vorhandene Indizes bleiben unverändert
+     */
+    private void ensurePayloadIndexes(String collectionName) {
+        for (String field : INDEXED_PAYLOAD_FIELDS) {
+            try {
+                qdrantClient.createPayloadIndexAsync(collectionName, field, Collections.PayloadSchemaType.Keyword,
+                        null, true, null, null).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Thread interrupted while creating payload index: {}", e.getMessage());
+                return;
+            } catch (ExecutionException e) {
+                logger.error("gRPC-Fehler (createPayloadIndex {}): {}", field, e.getMessage());
+            }
+        }
+        logger.debug("Payload-Indizes für Collection {} geprüft: {}", collectionName, INDEXED_PAYLOAD_FIELDS);
+    }
+
+    /**
+     * Erstellt das Embedding einer normalisierten Anfrage oder liest es aus dem Query-Cache
+     */
+    private Embedding embedQuery(String normalizedQuery) {
+        Embedding cached = queryCache.getEmbedding(normalizedQuery);
+        if (cached != null) {
+            return cached;
+        }
+        Embedding embedding = embeddingModel.embed(normalizedQuery).content();
+        queryCache.putEmbedding(normalizedQuery, embedding);
+        return embedding;
+    }
+
+    /**
+     * Verwirft alle von einem Job-Index abhängigen Cache-Einträge
+     */
+    private void invalidateCaches(String jobId) {
+        queryCache.invalidateJob(jobId);
+        if (answerCache != null) {
+            answerCache.invalidateJob(jobId);
+        }
+    }
+
+    /**
+     * Liefert Kennzahlen der RAG-Caches
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queryCache", queryCache.getStats());
+        stats.put("llmGateway", llmGateway.getStats());
+        stats.put("modelRouter", modelRouter.getStats());
+        Map<String, Object> degradation = new LinkedHashMap<>();
+        Map<String, Object> circuits = new LinkedHashMap<>();
+        modelCircuits.forEach((model, circuit) -> circuits.put(model, circuit.getStats()));
+        degradation.put("circuits", circuits);
+        degradation.put("enabled", degradeEnabled);
+        degradation.put("extractiveAnswers", extractiveAnswers.get());
+        stats.put("llmDegradation", degradation);
+        if (answerCache != null) {
+            stats.put("answerCache", answerCache.getStats());
+        }
+        if (embeddingCache != null) {
+            Map<String, Object> embeddingCacheStats = new LinkedHashMap<>();
+            embeddingCacheStats.put("entries", embeddingCache.size());
+            embeddingCacheStats.put("hits", embeddingCache.getHits());
+            embeddingCacheStats.put("misses", embeddingCache.getMisses());
+            stats.put("embeddingCache", embeddingCacheStats);
+        }
+        return stats;
     }
 
     /**
@@ -415,7 +2165,21 @@ public class RAGService {
     public void updateForNewCompletedJob(String jobId) {
         try {
             logger.info("Aktualisiere RAG-System für neuen Job: {}", jobId);
-            initializeEmbeddingStoreForJob(jobId);
+            if (embeddingStores.containsKey(jobId)) {
+                refreshJobIndex(jobId);
+            } else {
+                initializeEmbeddingStoreForJob(jobId);
+            }
+
+            // Jobs mit demselben Ausgabeverzeichnis teilen sich crawl_index.json
+            // und werden nach einem Re-Crawl inkrementell nachgezogen
+            CrawlJob job = crawlerService.getJob(jobId);
+            for (CrawlJob other : crawlerService.getCompletedJobs()) {
+                if (!other.getId().equals(jobId) && embeddingStores.containsKey(other.getId())
+                        && Objects.equals(other.getOutputDirectory(), job.getOutputDirectory())) {
+                    refreshJobIndex(other.getId());
+                }
+            }
         } catch (Exception e) {
             logger.error("Fehler beim Aktualisieren des RAG-Systems für neuen Job: {}", e.getMessage());
         }
@@ -470,8 +2234,18 @@ public class RAGService {
             return documents;
         }
 
-        // Alle gecrawlten URLs durchgehen
+        // Bei Re-Crawls enthält der Index mehrere Einträge pro URL; nur der neueste zählt
+        Map<String, JsonNode> latestByUrl = new LinkedHashMap<>();
         for (JsonNode urlNode : urlsArray) {
+            String url = urlNode.path("url").asText();
+            JsonNode existing = latestByUrl.get(url);
+            if (existing == null || parseTimestamp(urlNode).isAfter(parseTimestamp(existing))) {
+                latestByUrl.put(url, urlNode);
+            }
+        }
+
+        // Alle gecrawlten URLs durchgehen
+        for (JsonNode urlNode : latestByUrl.values()) {
             String filePath = urlNode.get("file_path").asText();
             Path path = Paths.get(filePath);
 
@@ -510,6 +2284,10 @@ public class RAGService {
                         category,
                         filePath
                 );
+                ragDoc.setCrawlTimestamp(urlNode.path("crawl_timestamp").asText(null));
+                ragDoc.setDomain(urlNode.path("domain").asText(docNode.path("domain").asText(null)));
+                ragDoc.setPageType(urlNode.path("page_type").asText("allgemein"));
+                ragDoc.setContentHash(EmbeddingCache.contentHash(content));
 
                 documents.add(ragDoc);
 
@@ -520,4 +2298,26 @@ public class RAGService {
 
         return documents;
     }
-}
\ No newline at end of file
+
+    private Instant parseTimestamp(JsonNode urlNode) {
+        try {
+            return Instant.parse(urlNode.path("crawl_timestamp").asText());
+        } catch (DateTimeParseException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    /**
+     * Dokumente eines Jobs zusammen mit dem passenden BM25-Index (null bei deaktivierter hybrider Suche)
+     */
+    private record JobDocuments(DocumentIndex documents, LexicalIndex lexicalIndex) {
+
+        private static final JobDocuments EMPTY = new JobDocuments(DocumentIndex.empty(), null);
+    }
+
+    /**
+     * Segment aus dem Store mit seiner Ähnlichkeit zur Anfrage
+     */
+    private record SegmentHit(TextSegment segment, double score) {
+    }
+}
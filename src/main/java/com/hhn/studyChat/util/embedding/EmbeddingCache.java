@@ -0,0 +1,247 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistenter Embedding-Cache, der den Hash eines Segmenttextes auf seinen Vektor abbildet.
+ * Die Vektoren liegen als kompakte Binärdatei (float32) vor, die per Memory-Mapping gelesen
+ * und geschrieben wird. Der Cache wird von allen Jobs gemeinsam genutzt und übersteht Neustarts.
+ *
+ * Dateiformat: Header (Magic, Version, Dimension, Anzahl) gefolgt von Datensätzen fester Länge
+ * aus 16 Byte Hash (SHA-256, gekürzt) und dem Vektor.
+ */
+public class EmbeddingCache implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    private static final int MAGIC = 0x53434543; // "SCEC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int HASH_SIZE = 16;
+    private static final int RECORDS_PER_REGION = 8192;
+
+    private final Path file;
+    private final int dimension;
+    private final int recordSize;
+    private final long regionSize;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> regions = new CopyOnWriteArrayList<>();
+    private final Map<HashKey, Integer> index = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile int count;
+
+    private EmbeddingCache(Path file, int dimension) throws IOException {
+        this.file = file;
+        this.dimension = dimension;
+        this.recordSize = HASH_SIZE + dimension * Float.BYTES;
+        this.regionSize = (long) recordSize * RECORDS_PER_REGION;
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean isNew = channel.size() < HEADER_SIZE;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+        if (isNew) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, dimension);
+            header.putInt(12, 0);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != dimension) {
+            channel.close();
+            throw new IOException("Inkompatible Embedding-Cache-Datei: " + file);
+        }
+
+        loadIndex(header.getInt(12));
+    }
+
+    /**
+     * Öffnet den Cache oder legt ihn neu an
+     *
+     * @param file Pfad zur Cache-Datei
+     * @param dimension Dimension der gespeicherten Vektoren
+     */
+    public static EmbeddingCache open(Path file, int dimension) throws IOException {
+        return new EmbeddingCache(file, dimension);
+    }
+
+    /**
+     * Liest die Hashes aller vorhandenen Datensätze in den Index ein
+     */
+    private void loadIndex(int storedCount) throws IOException {
+        long start = System.nanoTime();
+        for (int slot = 0; slot < storedCount; slot++) {
+            ByteBuffer region = regionFor(slot);
+            int offset = offsetInRegion(slot);
+            index.put(new HashKey(region.getLong(offset), region.getLong(offset + 8)), slot);
+        }
+        count = storedCount;
+        logger.info("Embedding-Cache {} geladen: {} Einträge in {} ms",
+                file, storedCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Gibt das gecachte Embedding für einen Segmenttext zurück oder null
+     */
+    public Embedding get(String text) {
+        Integer slot = index.get(HashKey.of(text));
+        if (slot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            ByteBuffer region = regionFor(slot);
+            int offset = offsetInRegion(slot) + HASH_SIZE;
+            float[] vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = region.getFloat(offset + i * Float.BYTES);
+            }
+            hits.incrementAndGet();
+            return Embedding.from(vector);
+        } catch (IOException e) {
+            logger.error("Fehler beim Lesen aus dem Embedding-Cache: {}", e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Speichert ein Embedding für einen Segmenttext, sofern noch nicht vorhanden
+     */
+    public synchronized void put(String text, Embedding embedding) {
+        float[] vector = embedding.vector();
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Erwartete Dimension " + dimension + ", erhalten " + vector.length);
+        }
+
+        HashKey key = HashKey.of(text);
+        if (index.containsKey(key)) {
+            return;
+        }
+
+        try {
+            int slot = count;
+            ByteBuffer region = regionFor(slot);
+            int offset = offsetInRegion(slot);
+            region.putLong(offset, key.high());
+            region.putLong(offset + 8, key.low());
+            for (int i = 0; i < dimension; i++) {
+                region.putFloat(offset + HASH_SIZE + i * Float.BYTES, vector[i]);
+            }
+
+            // Zähler erst nach dem Datensatz schreiben, damit ein Abbruch des Prozesses keine halben Einträge
+            // hinterlässt; gegen einen Absturz des Systems sichert erst flush() ab
+            count = slot + 1;
+            header.putInt(12, count);
+            index.put(key, slot);
+        } catch (IOException e) {
+            logger.error("Fehler beim Schreiben in den Embedding-Cache: {}", e.getMessage());
+        }
+    }
+
+    private ByteBuffer regionFor(int slot) throws IOException {
+        int regionIndex = slot / RECORDS_PER_REGION;
+        if (regionIndex < regions.size()) {
+            return regions.get(regionIndex);
+        }
+
+        synchronized (regions) {
+            // READ_WRITE-Mapping vergrößert die Datei bei Bedarf automatisch
+            while (regions.size() <= regionIndex) {
+                long position = HEADER_SIZE + regions.size() * regionSize;
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize));
+            }
+            return regions.get(regionIndex);
+        }
+    }
+
+    private int offsetInRegion(int slot) {
+        return (slot % RECORDS_PER_REGION) * recordSize;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Schreibt alle Änderungen auf die Platte; die Datensätze vor dem Header, damit der gespeicherte
+     * Zähler nie auf Datensätze zeigt, die noch nicht auf der Platte sind
+     */
+    public synchronized void flush() {
+        synchronized (regions) {
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+        }
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+        logger.info("Embedding-Cache geschlossen ({} Einträge, {} Treffer, {} Fehlschläge)",
+                count, hits.get(), misses.get());
+    }
+
+    /**
+     * Berechnet den Inhalts-Hash eines Textes als Hex-String (SHA-256)
+     */
+    public static String contentHash(String text) {
+        byte[] digest = sha256(text);
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Die ersten 128 Bit des SHA-256-Hashes eines Segmenttextes
+     */
+    private record HashKey(long high, long low) {
+        static HashKey of(String text) {
+            ByteBuffer digest = ByteBuffer.wrap(sha256(text));
+            return new HashKey(digest.getLong(), digest.getLong());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batched, parallele Embedding-Pipeline für die Indexierung eines Crawl-Jobs.
+ * Segmente werden nach Textlänge sortiert und in Batches für embedAll gruppiert,
+ * damit ähnlich lange Texte gemeinsam verarbeitet werden. Eine begrenzte Anzahl
+ * Worker bettet die Batches ein und schreibt sie per addAll in das Ziel.
+ * Ist ein {@link EmbeddingCache} gesetzt, werden nur Segmente ohne Cache-Treffer
+ * durch das Modell geschickt.
+ */
+public class EmbeddingPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingPipeline.class);
+
+    private final EmbeddingModel embeddingModel;
+    private final int batchSize;
+    private final int workers;
+    private final EmbeddingCache embeddingCache;
+
+    public EmbeddingPipeline(EmbeddingModel embeddingModel, int batchSize, int workers) {
+        this(embeddingModel, batchSize, workers, null);
+    }
+
+    public EmbeddingPipeline(EmbeddingModel embeddingModel, int batchSize, int workers, EmbeddingCache embeddingCache) {
+        this.embeddingModel = embeddingModel;
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+        this.embeddingCache = embeddingCache;
+    }
+
+    /**
+     * Bettet alle Segmente ein und speichert sie im angegebenen Store
+     *
+     * @param jobId Job, für den indexiert wird (nur für Logs und Thread-Namen)
+     * @param segments Die zu indexierenden Segmente
+     * @param embeddingStore Ziel-Store
+     * @return Anzahl der erfolgreich gespeicherten Segmente
+     */
+    public int embedAndStore(String jobId, List<TextSegment> segments, EmbeddingStore<TextSegment> embeddingStore) {
+        return embedAndStore(jobId, segments, EmbeddingSink.of(embeddingStore));
+    }
+
+    /**
+     * Wie {@link #embedAndStore(String, List, EmbeddingStore)}, für reine Schreibziele
+     */
+    public int embedAndStore(String jobId, List<TextSegment> segments, EmbeddingSink sink) {
+        return embedAndStore(jobId, segments, sink, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Wie {@link #embedAndStore(String, List, EmbeddingSink)}; die URLs der Segmente, die nicht eingebettet
+     * oder nicht gespeichert werden konnten, landen in failedUrls, damit der Aufrufer diese Seiten erneut
+     * einbetten kann. Bei einer Unterbrechung gelten alle Seiten als nicht geschrieben.
+     *
+     * @param failedUrls threadsicheres Set, in das die betroffenen Seiten-URLs eingetragen werden
+     */
+    public int embedAndStore(String jobId, List<TextSegment> segments, EmbeddingSink sink, Set<String> failedUrls) {
+        if (segments == null || segments.isEmpty()) {
+            logger.info("Keine Segmente zum Einbetten für Job {}", jobId);
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        List<List<TextSegment>> batches = createLengthBucketedBatches(segments);
+        int poolSize = Math.min(workers, batches.size());
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-" + jobId + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+
+        int storedCount = 0;
+        long cacheHitsBefore = embeddingCache != null ? embeddingCache.getHits() : 0;
+        try {
+            for (List<TextSegment> batch : batches) {
+                completionService.submit(() -> embedBatch(jobId, batch, sink, failedUrls));
+            }
+
+            for (int i = 0; i < batches.size(); i++) {
+                try {
+                    storedCount += completionService.take().get();
+                } catch (ExecutionException e) {
+                    // Nicht zuzuordnen, welcher Batch fehlschlug: alle Seiten gelten als nicht geschrieben
+                    logger.error("Fehler in der Embedding-Pipeline für Job {}: {}", jobId, e.getCause().getMessage());
+                    addUrls(segments, failedUrls);
+                }
+
+                if ((i + 1) % 10 == 0) {
+                    logger.info("Verarbeitet: {} von {} Batches", i + 1, batches.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Embedding-Pipeline für Job {} unterbrochen", jobId);
+            addUrls(segments, failedUrls);
+        } finally {
+            executor.shutdownNow();
+            if (embeddingCache != null) {
+                embeddingCache.flush();
+            }
+        }
+
+        double seconds = Math.max((System.nanoTime() - start) / 1_000_000_000.0, 1e-9);
+        logger.info("✓ {} von {} Segmenten für Job {} in {} s eingebettet ({} Segmente/s, {} Batches, {} Worker)",
+                storedCount, segments.size(), jobId, String.format("%.2f", seconds),
+                String.format("%.1f", storedCount / seconds), batches.size(), poolSize);
+        if (embeddingCache != null) {
+            logger.info("Embedding-Cache: {} Segmente ohne Modellaufruf übernommen",
+                    embeddingCache.getHits() - cacheHitsBefore);
+        }
+
+        return storedCount;
+    }
+
+    /**
+     * Bettet einen Batch mit einem embedAll-Aufruf ein und speichert ihn mit einem addAll-Aufruf
+     */
+    private int embedBatch(String jobId, List<TextSegment> batch, EmbeddingSink sink, Set<String> failedUrls) {
+        try {
+            List<Embedding> embeddings = embed(batch);
+            sink.addAll(embeddings, batch);
+            return batch.size();
+        } catch (Exception e) {
+            logger.error("Fehler beim Einbetten eines Batches ({} Segmente) für Job {}: {}",
+                    batch.size(), jobId, e.getMessage());
+            addUrls(batch, failedUrls);
+            return 0;
+        }
+    }
+
+    private static void addUrls(List<TextSegment> segments, Set<String> urls) {
+        for (TextSegment segment : segments) {
+            String url = segment.metadata().get("url");
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+    }
+
+    /**
+     * Erstellt die Embeddings eines Batches; Cache-Treffer werden übernommen,
+     * nur die übrigen Segmente laufen durch das Modell
+     */
+    private List<Embedding> embed(List<TextSegment> batch) {
+        if (embeddingCache == null) {
+            return embeddingModel.embedAll(batch).content();
+        }
+
+        Embedding[] embeddings = new Embedding[batch.size()];
+        List<TextSegment> missing = new ArrayList<>();
+        List<Integer> missingPositions = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Embedding cached = embeddingCache.get(batch.get(i).text());
+            if (cached != null) {
+                embeddings[i] = cached;
+            } else {
+                missing.add(batch.get(i));
+                missingPositions.add(i);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<Embedding> computed = embeddingModel.embedAll(missing).content();
+            for (int i = 0; i < computed.size(); i++) {
+                embeddings[missingPositions.get(i)] = computed.get(i);
+                embeddingCache.put(missing.get(i).text(), computed.get(i));
+            }
+        }
+
+        return Arrays.asList(embeddings);
+    }
+
+    /**
+     * Sortiert die Segmente nach Textlänge und teilt sie in Batches auf,
+     * damit innerhalb eines Batches möglichst wenig Padding entsteht
+     */
+    private List<List<TextSegment>> createLengthBucketedBatches(List<TextSegment> segments) {
+        List<TextSegment> sorted = new ArrayList<>(segments);
+        sorted.sort(Comparator.comparingInt(segment -> segment.text().length()));
+
+        List<List<TextSegment>> batches = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i += batchSize) {
+            batches.add(new ArrayList<>(sorted.subList(i, Math.min(i + batchSize, sorted.size()))));
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,140 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pool von Embedding-Modell-Sessions, aufgeteilt in zwei Spuren:
+ * - Query-Spur: querySessions Sessions sind für Chat-Anfragen reserviert; ist eine Indexierungs-Session
+ *   frei, darf die Anfrage auch diese nutzen
+ * - Indexierungs-Spur: die übrigen Sessions, die sich die Worker der Embedding-Pipeline teilen
+ *
+ * So laufen Batches mehrerer Worker parallel auf eigenen Sessions, und eine laufende Indexierung
+ * kann Chat-Anfragen nicht vollständig verdrängen. Eine Session wird nur für die Dauer eines
+ * embedAll-Aufrufs belegt.
+ */
+public class EmbeddingSessionPool {
+
+    private final int sessions;
+    private final BlockingQueue<EmbeddingModel> querySessions;
+    private final BlockingQueue<EmbeddingModel> indexingSessions;
+    private final AtomicLong queryCalls = new AtomicLong();
+    private final AtomicLong queryWaitNanos = new AtomicLong();
+    private final EmbeddingModel queryModel = new Lane(true);
+    private final EmbeddingModel indexingModel = new Lane(false);
+
+    /**
+     * @param sessions      Gesamtzahl der Sessions (mindestens 2, sonst teilen sich beide Spuren eine Session)
+     * @param querySessions davon für Chat-Anfragen reserviert
+     * @param factory       erzeugt eine Session; darf bei nur einer verfügbaren Session dieselbe Instanz liefern
+     */
+    public EmbeddingSessionPool(int sessions, int querySessions, Supplier<EmbeddingModel> factory) {
+        int total = Math.max(1, sessions);
+        int reserved = total == 1 ? 1 : Math.max(1, Math.min(querySessions, total - 1));
+        int indexing = total == 1 ? 1 : total - reserved;
+        this.sessions = total;
+
+        this.querySessions = new ArrayBlockingQueue<>(reserved);
+        this.indexingSessions = new ArrayBlockingQueue<>(indexing);
+        if (total == 1) {
+            EmbeddingModel shared = factory.get();
+            this.querySessions.add(shared);
+            this.indexingSessions.add(shared);
+            return;
+        }
+        for (int i = 0; i < reserved; i++) {
+            this.querySessions.add(factory.get());
+        }
+        for (int i = 0; i < indexing; i++) {
+            this.indexingSessions.add(factory.get());
+        }
+    }
+
+    /**
+     * Modell für Chat-Anfragen (Query-Embeddings)
+     */
+    public EmbeddingModel queryModel() {
+        return queryModel;
+    }
+
+    /**
+     * Modell für die Indexierung; blockiert, solange alle Indexierungs-Sessions belegt sind
+     */
+    public EmbeddingModel indexingModel() {
+        return indexingModel;
+    }
+
+    /**
+     * Anzahl unterschiedlicher Sessions; so viele Aufrufe können gleichzeitig rechnen
+     */
+    public int sessionCount() {
+        return sessions;
+    }
+
+    public int querySessionCount() {
+        return querySessions.remainingCapacity() + querySessions.size();
+    }
+
+    public int indexingSessionCount() {
+        return indexingSessions.remainingCapacity() + indexingSessions.size();
+    }
+
+    /**
+     * Durchschnittliche Wartezeit einer Chat-Anfrage auf eine freie Session in Mikrosekunden
+     */
+    public double averageQueryWaitMicros() {
+        long calls = queryCalls.get();
+        return calls == 0 ? 0 : queryWaitNanos.get() / 1_000.0 / calls;
+    }
+
+    private Response<List<Embedding>> embedAll(List<TextSegment> segments, boolean query) throws InterruptedException {
+        long start = System.nanoTime();
+        BlockingQueue<EmbeddingModel> home = query ? querySessions : indexingSessions;
+        EmbeddingModel session = home.poll();
+        if (session == null && query) {
+            // Reservierte Sessions belegt: eine freie Indexierungs-Session übernehmen
+            home = indexingSessions;
+            session = home.poll();
+        }
+        if (session == null) {
+            home = query ? querySessions : indexingSessions;
+            session = home.take();
+        }
+        if (query) {
+            queryCalls.incrementAndGet();
+            queryWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        try {
+            return session.embedAll(segments);
+        } finally {
+            home.add(session);
+        }
+    }
+
+    private final class Lane implements EmbeddingModel {
+
+        private final boolean query;
+
+        private Lane(boolean query) {
+            this.query = query;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            try {
+                return EmbeddingSessionPool.this.embedAll(segments, query);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Warten auf eine freie Embedding-Session unterbrochen", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.List;
+
+/**
+ * Schreibendes Ziel der {@link EmbeddingPipeline}: nimmt eingebettete Segmente entgegen, ohne
+ * Suchen anbieten zu müssen. Jeder {@link EmbeddingStore} lässt sich über {@link #of} verwenden.
+ */
+@FunctionalInterface
+public interface EmbeddingSink {
+
+    void addAll(List<Embedding> embeddings, List<TextSegment> segments);
+
+    static EmbeddingSink of(EmbeddingStore<TextSegment> store) {
+        return store::addAll;
+    }
+}
@@ -0,0 +1,219 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sammelt gleichzeitige Query-Embeddings zu Micro-Batches. Ein Dispatcher-Thread nimmt die erste
+ * Anfrage entgegen und wartet höchstens windowMillis bzw. bis maxBatchSize Anfragen vorliegen; der
+ * Batch wird dann mit einem embedAll-Aufruf eingebettet und jedes Future einzeln abgeschlossen.
+ * Gleiche Anfragetexte innerhalb eines Batches werden nur einmal eingebettet.
+ *
+ * Das Fenster ist dynamisch: Liegt keine weitere Anfrage vor und läuft kein Batch, wird sofort
+ * eingebettet, sodass einzelne Anfragen bei geringer Last keine zusätzliche Latenz bekommen.
+ */
+public class QueryEmbeddingBatcher implements EmbeddingModel, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryEmbeddingBatcher.class);
+    // Höchstwartezeit eines Aufrufers auf sein Embedding; ein Query-Embedding dauert sonst Millisekunden
+    static final long MAX_WAIT_MILLIS = 10_000;
+
+    private final EmbeddingModel delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService batchExecutor;
+    private final Thread dispatcher;
+    private final AtomicInteger runningBatches = new AtomicInteger();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong embeddedTexts = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate       Modell, das die Batches einbettet
+     * @param windowMillis   maximale Wartezeit auf weitere Anfragen (Bruchteile erlaubt, z.B. 2.5)
+     * @param maxBatchSize   maximale Anzahl Anfragen pro Batch
+     * @param parallelBatches Anzahl gleichzeitig eingebetteter Batches, höchstens so viele wie Sessions,
+     *                        die das Modell gleichzeitig nutzen kann
+     */
+    public QueryEmbeddingBatcher(EmbeddingModel delegate, double windowMillis, int maxBatchSize, int parallelBatches) {
+        this.delegate = delegate;
+        this.windowNanos = (long) (windowMillis * 1_000_000);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(Math.max(1, parallelBatches), runnable -> {
+            Thread thread = new Thread(runnable, "query-embedding-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "query-embedding-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Reiht einen Anfragetext ein; das Future wird mit seinem Embedding abgeschlossen
+     */
+    public CompletableFuture<Embedding> submit(String text) {
+        Request request = new Request(text, new CompletableFuture<>());
+        if (!running) {
+            request.result().completeExceptionally(closed());
+            return request.result();
+        }
+        requests.incrementAndGet();
+        queue.add(request);
+        // close() kann die Warteschlange zwischen Prüfung und Einreihen geleert haben
+        if (!running && queue.remove(request)) {
+            request.result().completeExceptionally(closed());
+        }
+        return request.result();
+    }
+
+    /**
+     * Einzelne Texte laufen über den Batcher, mehrere Segmente sind bereits ein Batch und gehen direkt ans Modell
+     */
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        if (segments.size() != 1) {
+            return delegate.embedAll(segments);
+        }
+        CompletableFuture<Embedding> result = submit(segments.get(0).text());
+        try {
+            return Response.from(List.of(result.get(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS)));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            throw new IllegalStateException("Query-Embedding nicht innerhalb von " + MAX_WAIT_MILLIS + " ms berechnet", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Warten auf das Query-Embedding unterbrochen", e);
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            List<Request> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+
+                // Nur bei paralleler Last auf weitere Anfragen warten
+                if (!queue.isEmpty() || runningBatches.get() > 0) {
+                    long deadline = System.nanoTime() + windowNanos;
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+
+                runningBatches.incrementAndGet();
+                try {
+                    batchExecutor.execute(() -> {
+                        try {
+                            embedBatch(batch);
+                        } finally {
+                            runningBatches.decrementAndGet();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // close() kann den Executor zwischen Entnehmen und Verteilen heruntergefahren haben
+                    runningBatches.decrementAndGet();
+                    RuntimeException error = running ? e : closed();
+                    batch.forEach(request -> request.result().completeExceptionally(error));
+                }
+            } catch (InterruptedException e) {
+                // Bereits gesammelte Anfragen nicht unbeantwortet zurücklassen
+                batch.forEach(request -> request.result().completeExceptionally(closed()));
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void embedBatch(List<Request> batch) {
+        Map<String, List<CompletableFuture<Embedding>>> byText = new LinkedHashMap<>();
+        for (Request request : batch) {
+            byText.computeIfAbsent(request.text(), k -> new ArrayList<>()).add(request.result());
+        }
+
+        try {
+            List<TextSegment> segments = new ArrayList<>(byText.size());
+            byText.keySet().forEach(text -> segments.add(TextSegment.from(text)));
+            List<Embedding> embeddings = delegate.embedAll(segments).content();
+            // Zähler vor dem Beantworten erhöhen, damit Aufrufer den Batch bereits in den Kennzahlen sehen
+            batches.incrementAndGet();
+            embeddedTexts.addAndGet(segments.size());
+
+            int i = 0;
+            for (List<CompletableFuture<Embedding>> callers : byText.values()) {
+                Embedding embedding = embeddings.get(i++);
+                callers.forEach(caller -> caller.complete(embedding));
+            }
+        } catch (RuntimeException e) {
+            logger.error("❌ Fehler beim Einbetten eines Batches mit {} Anfragen: {}", batch.size(), e.getMessage());
+            batch.forEach(request -> request.result().completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Durchschnittliche Anzahl Anfragen pro embedAll-Aufruf
+     */
+    public double averageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) requests.get() / count;
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getEmbeddedTextCount() {
+        return embeddedTexts.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        batchExecutor.shutdown();
+        Request pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(closed());
+        }
+        logger.info("Query-Embeddings: {} Anfragen in {} Batches (Ø {} pro Batch, {} eingebettete Texte)",
+                requests.get(), batches.get(), String.format("%.2f", averageBatchSize()), embeddedTexts.get());
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("QueryEmbeddingBatcher ist geschlossen");
+    }
+
+    private record Request(String text, CompletableFuture<Embedding> result) {
+    }
+}
@@ -0,0 +1,107 @@
+package com.hhn.studyChat.util.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Einfacher Circuit Breaker für das LLM: Nach failureThreshold aufeinanderfolgenden Fehlern ist der
+ * Kreis für openMillis offen. Danach darf genau eine Anfrage das LLM prüfen (HALF_OPEN); ein Erfolg
+ * schließt den Kreis, ein weiterer Fehler öffnet ihn sofort erneut. Bleibt das Ergebnis der Probe
+ * länger als openMillis aus, darf die nächste Anfrage erneut prüfen.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean opened;
+    private long openedCount;
+    private boolean probing;
+    private long probeStartedAt;
+
+    /**
+     * @param failureThreshold Anzahl aufeinanderfolgender Fehler, ab der der Kreis öffnet
+     * @param openMillis       Dauer, für die der Kreis offen bleibt
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    public synchronized State getState() {
+        if (!opened) {
+            return State.CLOSED;
+        }
+        return System.nanoTime() - openUntil < 0 ? State.OPEN : State.HALF_OPEN;
+    }
+
+    /**
+     * true, solange Anfragen gar nicht erst an das LLM gehen sollen: der Kreis ist offen oder die
+     * einzige Probe im Zustand HALF_OPEN läuft bereits
+     */
+    public synchronized boolean isOpen() {
+        State state = getState();
+        return state == State.OPEN || (state == State.HALF_OPEN && isProbeRunning());
+    }
+
+    /**
+     * Reserviert einen Aufruf: im Zustand CLOSED immer erlaubt, im Zustand HALF_OPEN nur für die erste
+     * Anfrage, die damit zur Probe wird
+     */
+    public synchronized boolean tryAcquire() {
+        State state = getState();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN || isProbeRunning()) {
+            return false;
+        }
+        probing = true;
+        probeStartedAt = System.nanoTime();
+        return true;
+    }
+
+    private boolean isProbeRunning() {
+        return probing && System.nanoTime() - probeStartedAt < openNanos;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        opened = false;
+        probing = false;
+    }
+
+    public synchronized void recordFailure() {
+        probing = false;
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            if (!opened || System.nanoTime() - openUntil >= 0) {
+                openedCount++;
+            }
+            opened = true;
+            openUntil = System.nanoTime() + openNanos;
+        }
+    }
+
+    /**
+     * Öffnet den Kreis sofort, z.B. wenn der Health-Check das LLM nicht erreicht
+     */
+    public synchronized void trip() {
+        consecutiveFailures = Math.max(consecutiveFailures, failureThreshold - 1);
+        recordFailure();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", getState().name());
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("opened", openedCount);
+        return stats;
+    }
+}
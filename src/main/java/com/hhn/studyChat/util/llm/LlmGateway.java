@@ -0,0 +1,281 @@
+package com.hhn.studyChat.util.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Begrenzt die gleichzeitigen Aufrufe an das LLM (Open WebUI). Höchstens maxConcurrent Aufrufe laufen
+ * parallel; weitere warten in einer begrenzten Warteschlange, in der interaktive Chat-Anfragen vor
+ * Hintergrundarbeit (z.B. Health-Checks) drankommen. Jede Anfrage hat eine Deadline, die Wartezeit
+ * und Ausführung umfasst. Ist die Warteschlange voll oder läuft die Deadline bereits beim Warten ab,
+ * wird sofort mit {@link OverloadedException} abgelehnt, die eine Retry-After-Schätzung enthält.
+ */
+public class LlmGateway implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmGateway.class);
+
+    // Zustände eines Aufrufs in execute
+    private static final int CALL_PENDING = 0;
+    private static final int CALL_STARTED = 1;
+    private static final int CALL_ABANDONED = 2;
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long deadlineNanos;
+    private final ExecutorService callExecutor;
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+            Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+    private long sequence;
+    private int running;
+
+    // Gleitender Mittelwert der Aufrufdauer für die Retry-After-Schätzung
+    private volatile double averageCallMillis = 2_000;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * @param maxConcurrent maximale Anzahl gleichzeitiger LLM-Aufrufe
+     * @param queueCapacity maximale Anzahl wartender Anfragen
+     * @param deadlineMillis Deadline je Anfrage (Warten und Ausführung), z.B. aus rag.llm.timeout
+     */
+    public LlmGateway(int maxConcurrent, int queueCapacity, long deadlineMillis) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.callExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "llm-call-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Führt einen blockierenden LLM-Aufruf innerhalb der Deadline aus. Der Platz wird erst frei, wenn der
+     * Aufruf tatsächlich endet; bei abgelaufener Deadline kehrt der Aufrufer aber sofort zurück.
+     *
+     * @throws OverloadedException Warteschlange voll oder Deadline beim Warten abgelaufen
+     * @throws TimeoutException    Deadline während der Ausführung abgelaufen
+     */
+    public <T> T execute(Priority priority, Callable<T> call) throws TimeoutException, ExecutionException {
+        long deadline = System.nanoTime() + deadlineNanos;
+        acquire(priority, deadline);
+
+        long start = System.nanoTime();
+        // Wer zuerst kommt, gibt den Platz frei: der gestartete Aufruf an seinem Ende oder der Abbruch,
+        // wenn der Aufruf noch gar nicht begonnen hat (sonst liefe er nie und der Platz bliebe belegt)
+        AtomicInteger state = new AtomicInteger(CALL_PENDING);
+        Future<T> result;
+        try {
+            result = callExecutor.submit(() -> {
+                if (!state.compareAndSet(CALL_PENDING, CALL_STARTED)) {
+                    return null;
+                }
+                try {
+                    return call.call();
+                } finally {
+                    release(start);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(start);
+            throw e;
+        }
+
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            abandon(result, state);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(result, state);
+            throw new ExecutionException(e);
+        }
+    }
+
+    /**
+     * Bricht einen Aufruf nach abgelaufener Deadline ab; hat er noch nicht begonnen, wird sein Platz sofort frei
+     */
+    private void abandon(Future<?> result, AtomicInteger state) {
+        result.cancel(true);
+        if (state.compareAndSet(CALL_PENDING, CALL_ABANDONED)) {
+            synchronized (this) {
+                releaseSlot();
+            }
+        }
+    }
+
+    /**
+     * Reserviert einen Platz für einen Aufruf, der selbst asynchron läuft (z.B. Streaming).
+     * Der Aufrufer muss {@link Permit#release()} genau einmal aufrufen, sobald der Aufruf endet.
+     */
+    public Permit acquire(Priority priority) {
+        acquire(priority, System.nanoTime() + deadlineNanos);
+        long start = System.nanoTime();
+        AtomicInteger released = new AtomicInteger();
+        return () -> {
+            if (released.getAndIncrement() == 0) {
+                release(start);
+            }
+        };
+    }
+
+    private synchronized void acquire(Priority priority, long deadline) {
+        if (running < maxConcurrent && waiting.isEmpty()) {
+            running++;
+            return;
+        }
+        if (waiting.size() >= queueCapacity) {
+            rejected.incrementAndGet();
+            throw new OverloadedException("LLM ausgelastet: " + waiting.size() + " Anfragen warten", retryAfterSeconds());
+        }
+
+        Waiter waiter = new Waiter(priority, sequence++);
+        waiting.add(waiter);
+        try {
+            while (!waiter.granted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    waiting.remove(waiter);
+                    timedOut.incrementAndGet();
+                    throw new OverloadedException("Deadline beim Warten auf das LLM abgelaufen", retryAfterSeconds());
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (waiter.granted) {
+                releaseSlot();
+            } else {
+                waiting.remove(waiter);
+            }
+            throw new OverloadedException("Warten auf das LLM unterbrochen", retryAfterSeconds());
+        }
+    }
+
+    private void release(long start) {
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        averageCallMillis = averageCallMillis * 0.8 + millis * 0.2;
+        completed.incrementAndGet();
+        synchronized (this) {
+            releaseSlot();
+        }
+    }
+
+    /**
+     * Gibt den Platz an die wartende Anfrage mit der höchsten Priorität weiter
+     */
+    private void releaseSlot() {
+        Waiter next = waiting.poll();
+        if (next == null) {
+            running--;
+            return;
+        }
+        next.granted = true;
+        notifyAll();
+    }
+
+    /**
+     * Geschätzte Sekunden, bis eine neue Anfrage drankäme
+     */
+    private int retryAfterSeconds() {
+        double rounds = (double) (waiting.size() + 1) / maxConcurrent;
+        return (int) Math.max(1, Math.ceil(rounds * averageCallMillis / 1_000));
+    }
+
+    /**
+     * Geschätzte Wartezeit in ms, bis eine neue Anfrage an der Reihe wäre (0, wenn ein Platz frei ist)
+     */
+    public synchronized long estimatedWaitMillis() {
+        if (running < maxConcurrent && waiting.isEmpty()) {
+            return 0;
+        }
+        return Math.round(Math.ceil((double) (waiting.size() + 1) / maxConcurrent) * averageCallMillis);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("running", running);
+        stats.put("waiting", waiting.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", completed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("averageCallMs", Math.round(averageCallMillis));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        callExecutor.shutdownNow();
+        logger.info("LLM-Gateway beendet: {} Aufrufe, {} abgelehnt, {} Deadline überschritten",
+                completed.get(), rejected.get(), timedOut.get());
+    }
+
+    /**
+     * Reservierter Platz für einen asynchronen LLM-Aufruf
+     */
+    @FunctionalInterface
+    public interface Permit {
+        void release();
+    }
+
+    /**
+     * Das LLM ist ausgelastet; der Client soll es nach retryAfterSeconds erneut versuchen (HTTP 503)
+     */
+    public static class OverloadedException extends RuntimeException {
+
+        private final int retryAfterSeconds;
+
+        public OverloadedException(String message, int retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    private static final class Waiter {
+
+        private final Priority priority;
+        private final long sequence;
+        private boolean granted;
+
+        private Waiter(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        private Priority priority() {
+            return priority;
+        }
+
+        private long sequence() {
+            return sequence;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.hhn.studyChat.util.llm;
+
+/**
+ * Das LLM hat nicht rechtzeitig oder fehlerhaft geantwortet, oder sein Kreis ist offen. Anders als bei
+ * {@link LlmGateway.OverloadedException} wurde die Anfrage angenommen; der Aufrufer kann stattdessen
+ * extraktiv antworten.
+ */
+public class LlmUnavailableException extends RuntimeException {
+
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+
+    public LlmUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
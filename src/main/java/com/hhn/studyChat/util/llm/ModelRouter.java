@@ -0,0 +1,216 @@
+package com.hhn.studyChat.util.llm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Wählt für jede Anfrage das LLM-Modell anhand gemessener Latenzen. Die Modelle sind nach Präferenz
+ * geordnet (das konfigurierte Hauptmodell zuerst, danach kleinere Fallbacks). Gewählt wird das erste
+ * Modell, dessen Kontextfenster für den Prompt reicht, dessen Fehlerquote unter maxErrorRate liegt und
+ * dessen vorhergesagte Latenz (p95 der letzten windowMillis, skaliert mit der Promptgröße, plus Wartezeit
+ * im Gateway) das SLO einhält. Passt keines, wird das Modell mit der niedrigsten Vorhersage genommen,
+ * unter Last also das kleinste. Modelle mit zu wenigen Messwerten werden ausprobiert, damit alte
+ * Messungen nach Ablauf des Fensters nicht dauerhaft ein Modell ausschließen.
+ */
+public class ModelRouter {
+
+    private static final int MAX_SAMPLES_PER_MODEL = 200;
+    private static final int MAX_RECENT_DECISIONS = 50;
+
+    private final Map<String, ModelStats> models = new LinkedHashMap<>();
+    private final long sloMillis;
+    private final long windowNanos;
+    private final double maxErrorRate;
+    private final int minSamples;
+    private final Deque<Map<String, Object>> recentRequests = new ArrayDeque<>();
+
+    /**
+     * @param contextTokens Modelle in Präferenzreihenfolge mit ihrem Kontextfenster in Tokens (0 = unbegrenzt)
+     * @param sloMillis     Ziel-Latenz einer Antwort
+     * @param windowMillis  Zeitraum, aus dem Messwerte berücksichtigt werden
+     * @param maxErrorRate  Fehlerquote, ab der ein Modell übersprungen wird
+     * @param minSamples    Messwerte, ab denen Latenz und Fehlerquote eines Modells bewertet werden
+     */
+    public ModelRouter(Map<String, Integer> contextTokens, long sloMillis, long windowMillis,
+                       double maxErrorRate, int minSamples) {
+        if (contextTokens.isEmpty()) {
+            throw new IllegalArgumentException("Mindestens ein Modell erforderlich");
+        }
+        contextTokens.forEach((model, tokens) -> models.put(model, new ModelStats(tokens)));
+        this.sloMillis = sloMillis;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxErrorRate = maxErrorRate;
+        this.minSamples = Math.max(1, minSamples);
+    }
+
+    /**
+     * @param promptTokens geschätzte Tokens des Prompts
+     * @param waitMillis   geschätzte Wartezeit im LLM-Gateway
+     */
+    public Decision route(int promptTokens, long waitMillis) {
+        return route(promptTokens, waitMillis, model -> true);
+    }
+
+    /**
+     * @param available Modelle, die gerade gewählt werden dürfen (z.B. ohne offenen Circuit Breaker)
+     */
+    public synchronized Decision route(int promptTokens, long waitMillis, Predicate<String> available) {
+        long now = System.nanoTime();
+        Decision fastest = null;
+        String firstAvailable = null;
+        for (Map.Entry<String, ModelStats> entry : models.entrySet()) {
+            String model = entry.getKey();
+            ModelStats stats = entry.getValue();
+            if (!available.test(model)) {
+                continue;
+            }
+            if (firstAvailable == null) {
+                firstAvailable = model;
+            }
+            if (stats.contextTokens > 0 && promptTokens > stats.contextTokens) {
+                continue;
+            }
+            List<Sample> samples = stats.samples(now, windowNanos);
+            if (samples.size() < minSamples) {
+                return new Decision(model, "zu wenige Messwerte", -1);
+            }
+            if (errorRate(samples) > maxErrorRate) {
+                continue;
+            }
+            long predicted = predictMillis(samples, promptTokens) + waitMillis;
+            if (predicted <= sloMillis) {
+                return new Decision(model, "SLO eingehalten", predicted);
+            }
+            if (fastest == null || predicted < fastest.predictedMillis()) {
+                fastest = new Decision(model, "SLO überschritten, schnellstes Modell", predicted);
+            }
+        }
+        if (fastest != null) {
+            return fastest;
+        }
+        // Kein Modell passt (Prompt zu groß oder alle fehlerhaft): das bevorzugte verfügbare Modell versuchen
+        String model = firstAvailable != null ? firstAvailable : models.keySet().iterator().next();
+        return new Decision(model, "kein passendes Modell", -1);
+    }
+
+    /**
+     * Erfasst Dauer und Ergebnis einer Anfrage an das gewählte Modell
+     */
+    public synchronized void record(Decision decision, int promptTokens, long millis, boolean success) {
+        ModelStats stats = models.get(decision.model());
+        if (stats == null) {
+            return;
+        }
+        stats.add(new Sample(System.nanoTime(), millis, promptTokens, success));
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("model", decision.model());
+        request.put("reason", decision.reason());
+        request.put("predictedMs", decision.predictedMillis());
+        request.put("promptTokens", promptTokens);
+        request.put("durationMs", millis);
+        request.put("success", success);
+        recentRequests.addFirst(request);
+        if (recentRequests.size() > MAX_RECENT_DECISIONS) {
+            recentRequests.removeLast();
+        }
+    }
+
+    /**
+     * p95 der Messwerte, hochgerechnet auf größere Prompts als im Schnitt gemessen
+     */
+    private static long predictMillis(List<Sample> samples, int promptTokens) {
+        long[] latencies = successfulLatencies(samples);
+        if (latencies.length == 0) {
+            return Long.MAX_VALUE / 2;
+        }
+        double averageTokens = samples.stream().mapToInt(Sample::promptTokens).average().orElse(0);
+        double scale = averageTokens > 0 ? Math.max(1.0, promptTokens / averageTokens) : 1.0;
+        return Math.round(percentile(latencies, 0.95) * scale);
+    }
+
+    private static long[] successfulLatencies(List<Sample> samples) {
+        long[] latencies = samples.stream().filter(Sample::success).mapToLong(Sample::millis).toArray();
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double errorRate(List<Sample> samples) {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        return (double) samples.stream().filter(s -> !s.success()).count() / samples.size();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long now = System.nanoTime();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sloMs", sloMillis);
+        Map<String, Object> perModel = new LinkedHashMap<>();
+        models.forEach((model, modelStats) -> {
+            List<Sample> samples = modelStats.samples(now, windowNanos);
+            long[] latencies = successfulLatencies(samples);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("samples", samples.size());
+            entry.put("p50Ms", percentile(latencies, 0.50));
+            entry.put("p95Ms", percentile(latencies, 0.95));
+            entry.put("errorRate", Math.round(errorRate(samples) * 100) / 100.0);
+            entry.put("contextTokens", modelStats.contextTokens);
+            perModel.put(model, entry);
+        });
+        stats.put("models", perModel);
+        stats.put("recentRequests", new ArrayList<>(recentRequests));
+        return stats;
+    }
+
+    /**
+     * Gewähltes Modell mit Begründung und vorhergesagter Latenz (-1 = keine Vorhersage)
+     */
+    public record Decision(String model, String reason, long predictedMillis) {
+    }
+
+    private record Sample(long timestamp, long millis, int promptTokens, boolean success) {
+    }
+
+    private static final class ModelStats {
+
+        private final int contextTokens;
+        private final Deque<Sample> samples = new ArrayDeque<>();
+
+        private ModelStats(int contextTokens) {
+            this.contextTokens = contextTokens;
+        }
+
+        private void add(Sample sample) {
+            samples.addLast(sample);
+            if (samples.size() > MAX_SAMPLES_PER_MODEL) {
+                samples.removeFirst();
+            }
+        }
+
+        /**
+         * Messwerte innerhalb des Fensters; ältere werden verworfen
+         */
+        private List<Sample> samples(long now, long windowNanos) {
+            while (!samples.isEmpty() && now - samples.peekFirst().timestamp() > windowNanos) {
+                samples.removeFirst();
+            }
+            return new ArrayList<>(samples);
+        }
+    }
+}
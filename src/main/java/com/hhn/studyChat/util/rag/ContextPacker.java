@@ -0,0 +1,173 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Packt die passendsten Segmente der gefundenen Dokumente in ein Token-Budget für den Prompt.
+ *
+ * Die Auswahl erfolgt reihum nach Dokument-Rang: zuerst das beste Segment jedes Dokuments,
+ * dann das zweitbeste usw., solange das Budget reicht. Benachbarte Segmente derselben Seite werden
+ * zu einer Passage zusammengeführt, wobei der Überlappungsbereich des Splitters nur einmal
+ * übernommen wird; inhaltsgleiche Segmente (z.B. wiederkehrende Seitenbausteine) werden übersprungen.
+ */
+public class ContextPacker {
+
+    // Trenner zwischen nicht benachbarten Segmenten einer Passage
+    static final String GAP = " […] ";
+    // Kürzere Übereinstimmungen zwischen Segmentende und -anfang gelten als Zufall, nicht als Überlappung
+    private static final int MIN_OVERLAP = 8;
+
+    private final int tokenBudget;
+    private final int maxSegmentsPerDocument;
+    private final int maxOverlap;
+
+    /**
+     * @param tokenBudget            maximale (geschätzte) Tokenanzahl aller Passagen zusammen
+     * @param maxSegmentsPerDocument höchstens so viele Segmente je Dokument, auch wenn Budget übrig ist
+     * @param maxOverlap             maximale Überlappung benachbarter Segmente in Zeichen
+     */
+    public ContextPacker(int tokenBudget, int maxSegmentsPerDocument, int maxOverlap) {
+        this.tokenBudget = tokenBudget;
+        this.maxSegmentsPerDocument = maxSegmentsPerDocument;
+        this.maxOverlap = maxOverlap;
+    }
+
+    /**
+     * Grobe Token-Schätzung (ca. 4 Zeichen pro Token bei deutschem Text und BPE-Tokenizern)
+     */
+    public static int estimateTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : (text.length() + 3) / 4;
+    }
+
+    /**
+     * @param documents Dokumente in Rang-Reihenfolge
+     * @param segments  je Dokument die Segmente mit ihrer Position im Dokument und ihrer Relevanz für die
+     *                  Anfrage; es genügen die gefundenen Segmente, ohne Lücke zusammengeführt werden
+     *                  nur direkt aufeinanderfolgende Positionen
+     */
+    public Result pack(List<RAGDocument> documents, List<List<ScoredSegment>> segments) {
+        List<List<ScoredSegment>> ranked = new ArrayList<>(documents.size());
+        List<Map<Integer, ScoredSegment>> byIndex = new ArrayList<>(documents.size());
+        List<TreeSet<Integer>> selected = new ArrayList<>(documents.size());
+        int[] packedTokens = new int[documents.size()];
+        for (List<ScoredSegment> documentSegments : segments) {
+            List<ScoredSegment> byScore = new ArrayList<>(documentSegments);
+            byScore.sort(Comparator.comparingDouble(ScoredSegment::score).reversed());
+            ranked.add(byScore);
+            Map<Integer, ScoredSegment> documentByIndex = new HashMap<>();
+            documentSegments.forEach(segment -> documentByIndex.put(segment.index(), segment));
+            byIndex.add(documentByIndex);
+            selected.add(new TreeSet<>());
+        }
+
+        Set<String> seenTexts = new HashSet<>();
+        int usedTokens = 0;
+        boolean progress = true;
+        for (int round = 0; progress && round < maxSegmentsPerDocument; round++) {
+            progress = false;
+            for (int d = 0; d < documents.size(); d++) {
+                if (round >= ranked.get(d).size()) {
+                    continue;
+                }
+                progress = true;
+                ScoredSegment candidate = ranked.get(d).get(round);
+                String normalizedText = normalize(candidate.text());
+                if (seenTexts.contains(normalizedText)) {
+                    continue;
+                }
+
+                // Kosten = Zuwachs der zusammengeführten Passagen; Überlappungen mit Nachbarn zählen nicht doppelt
+                selected.get(d).add(candidate.index());
+                int tokens = estimateTokens(render(byIndex.get(d), selected.get(d)));
+                if (usedTokens - packedTokens[d] + tokens > tokenBudget) {
+                    selected.get(d).remove(candidate.index());
+                    continue;
+                }
+                usedTokens += tokens - packedTokens[d];
+                packedTokens[d] = tokens;
+                seenTexts.add(normalizedText);
+            }
+        }
+
+        List<Passage> passages = new ArrayList<>();
+        int selectedSegments = 0;
+        for (int d = 0; d < documents.size(); d++) {
+            if (!selected.get(d).isEmpty()) {
+                passages.add(new Passage(documents.get(d), render(byIndex.get(d), selected.get(d))));
+                selectedSegments += selected.get(d).size();
+            }
+        }
+        return new Result(passages, usedTokens, selectedSegments);
+    }
+
+    /**
+     * Fügt die ausgewählten Segmente in Textreihenfolge zusammen
+     */
+    private String render(Map<Integer, ScoredSegment> documentSegments, TreeSet<Integer> indices) {
+        StringBuilder text = new StringBuilder();
+        int previous = -2;
+        for (int index : indices) {
+            String segment = documentSegments.get(index).text();
+            if (text.length() == 0) {
+                text.append(segment);
+            } else if (index == previous + 1) {
+                appendWithoutOverlap(text, segment);
+            } else {
+                text.append(GAP).append(segment);
+            }
+            previous = index;
+        }
+        return text.toString();
+    }
+
+    /**
+     * Hängt das Folgesegment an und lässt dabei den längsten Anfang weg, mit dem der bisherige Text endet
+     */
+    void appendWithoutOverlap(StringBuilder text, String next) {
+        int limit = Math.min(maxOverlap, Math.min(text.length(), next.length()));
+        for (int length = limit; length >= MIN_OVERLAP; length--) {
+            if (regionEquals(text, text.length() - length, next, length)) {
+                text.append(next, length, next.length());
+                return;
+            }
+        }
+        text.append(' ').append(next);
+    }
+
+    private static boolean regionEquals(StringBuilder text, int offset, String next, int length) {
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(offset + i) != next.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Segment eines Dokuments: Position in Textreihenfolge, Text und Relevanz für die Anfrage
+     */
+    public record ScoredSegment(int index, String text, double score) {
+    }
+
+    /**
+     * Zusammengeführter Auszug eines Dokuments
+     */
+    public record Passage(RAGDocument document, String text) {
+    }
+
+    public record Result(List<Passage> passages, int tokens, int segmentCount) {
+    }
+}
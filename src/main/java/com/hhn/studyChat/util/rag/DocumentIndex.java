@@ -0,0 +1,72 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unveränderlicher Dokumentenbestand eines Jobs mit Hash-Indizes nach URL und Dokument-ID.
+ * Segmente tragen die ID ihres Eltern-Dokuments in den Metadaten, sodass ein Treffer
+ * aus dem Embedding-Store in konstanter Zeit auf sein Dokument abgebildet wird.
+ */
+public class DocumentIndex {
+
+    // Metadaten-Schlüssel, unter dem jedes Segment die ID seines Dokuments speichert
+    public static final String DOCUMENT_ID_KEY = "document_id";
+    // Metadaten-Schlüssel des Jobs; partitioniert die gemeinsame Qdrant-Collection
+    public static final String JOB_ID_KEY = "job_id";
+    // Metadaten-Schlüssel der Position eines Segments im Dokument (vom DocumentSplitter vergeben)
+    public static final String SEGMENT_INDEX_KEY = "index";
+
+    private static final DocumentIndex EMPTY = new DocumentIndex(Collections.emptyList());
+
+    private final List<RAGDocument> documents;
+    private final Map<String, RAGDocument> documentsByUrl;
+    private final Map<String, RAGDocument> documentsById;
+
+    public DocumentIndex(List<RAGDocument> documents) {
+        this.documents = Collections.unmodifiableList(documents);
+        this.documentsByUrl = new HashMap<>(documents.size() * 2);
+        this.documentsById = new HashMap<>(documents.size() * 2);
+
+        for (RAGDocument doc : documents) {
+            documentsByUrl.put(doc.getUrl(), doc);
+            documentsById.put(doc.getId(), doc);
+        }
+    }
+
+    public static DocumentIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Findet das Eltern-Dokument eines Segments; zuerst über die Dokument-ID,
+     * sonst über die URL (z.B. für Segmente aus älteren Qdrant-Collections)
+     */
+    public RAGDocument resolve(TextSegment segment) {
+        String documentId = segment.metadata().get(DOCUMENT_ID_KEY);
+        if (documentId != null) {
+            RAGDocument doc = documentsById.get(documentId);
+            if (doc != null) {
+                return doc;
+            }
+        }
+        return getByUrl(segment.metadata().get("url"));
+    }
+
+    public RAGDocument getByUrl(String url) {
+        return url != null ? documentsByUrl.get(url) : null;
+    }
+
+    public List<RAGDocument> getDocuments() {
+        return documents;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+}
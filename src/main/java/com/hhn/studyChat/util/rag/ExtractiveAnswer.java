@@ -0,0 +1,57 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+
+import java.util.List;
+
+/**
+ * Antwort ohne LLM: die besten Auszüge der gefundenen Seiten mit Titel und URL. Wird verwendet, wenn
+ * das LLM ausgelastet oder nicht erreichbar ist, und ist im Text deutlich als solche gekennzeichnet.
+ */
+public final class ExtractiveAnswer {
+
+    public static final String NOTICE = "⚠️ Das Sprachmodell ist gerade ausgelastet oder nicht erreichbar. " +
+            "Statt einer KI-Antwort siehst du hier die passendsten Auszüge aus den Webseiten der Hochschule:";
+
+    public static final String NO_RESULTS = "⚠️ Das Sprachmodell ist gerade ausgelastet oder nicht erreichbar, " +
+            "und es wurden keine passenden Seiten gefunden. Bitte versuche es später erneut.";
+
+    // Maximale Länge eines Auszugs in Zeichen
+    private static final int MAX_EXCERPT_CHARS = 400;
+
+    private ExtractiveAnswer() {
+    }
+
+    /**
+     * @param packed     die für die Frage ausgewählten Auszüge, in Rangfolge
+     * @param maxSources maximale Anzahl aufgeführter Seiten
+     */
+    public static String format(ContextPacker.Result packed, int maxSources) {
+        List<ContextPacker.Passage> passages = packed.passages();
+        if (passages.isEmpty()) {
+            return NO_RESULTS;
+        }
+
+        StringBuilder answer = new StringBuilder(NOTICE).append("\n\n");
+        int count = Math.min(maxSources, passages.size());
+        for (int i = 0; i < count; i++) {
+            RAGDocument doc = passages.get(i).document();
+            answer.append(i + 1).append(". ").append(doc.getTitle()).append("\n");
+            answer.append("„").append(excerpt(passages.get(i).text())).append("“\n");
+            answer.append("Quelle: ").append(doc.getUrl()).append("\n\n");
+        }
+        return answer.toString().trim();
+    }
+
+    /**
+     * Kürzt einen Auszug an einer Wortgrenze
+     */
+    static String excerpt(String text) {
+        String normalized = text.replaceAll("\\s+", " ").trim();
+        if (normalized.length() <= MAX_EXCERPT_CHARS) {
+            return normalized;
+        }
+        int cut = normalized.lastIndexOf(' ', MAX_EXCERPT_CHARS);
+        return normalized.substring(0, cut > 0 ? cut : MAX_EXCERPT_CHARS) + " …";
+    }
+}
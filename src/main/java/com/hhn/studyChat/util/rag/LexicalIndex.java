@@ -0,0 +1,381 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Invertierter Index über den Volltext der Dokumente eines Jobs mit BM25-Ranking.
+ * Die Postings-Listen bestehen aus primitiven int-Arrays (Dokumentnummer und Termhäufigkeit);
+ * die Dokumentnummer ist die Position des Dokuments in der Liste, aus der der Index gebaut wurde.
+ *
+ * Der Index ist unveränderlich und wird bei jeder Änderung des Dokumentenbestands neu gebaut.
+ * Ein Fingerabdruck aus URLs und Inhalts-Hashes erkennt beim Laden, ob die Datei noch passt.
+ */
+public class LexicalIndex {
+
+    public static final String INDEX_FILE = "bm25_index.bin";
+
+    private static final int MAGIC = 0x53434249; // "SCBI"
+    private static final int VERSION = 1;
+
+    // Standardparameter von BM25
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOPWORDS = Set.of(
+            "der", "die", "das", "den", "dem", "des", "ein", "eine", "einen", "einem", "einer", "eines",
+            "und", "oder", "ist", "sind", "wird", "werden", "kann", "muss", "gibt", "es", "ich", "du",
+            "wir", "man", "mit", "von", "vom", "zu", "zum", "zur", "im", "in", "am", "an", "auf", "für",
+            "bei", "aus", "nach", "wie", "was", "wo", "wann", "wer", "welche", "welcher", "welches",
+            "mir", "mich", "mein", "meine", "the", "and", "of", "to");
+
+    private final long fingerprint;
+    private final Map<String, Integer> termIds;
+    private final int[][] postingDocs;
+    private final int[][] postingFrequencies;
+    private final int[] documentLengths;
+    private final float averageLength;
+
+    private LexicalIndex(long fingerprint, Map<String, Integer> termIds, int[][] postingDocs,
+                         int[][] postingFrequencies, int[] documentLengths) {
+        this.fingerprint = fingerprint;
+        this.termIds = termIds;
+        this.postingDocs = postingDocs;
+        this.postingFrequencies = postingFrequencies;
+        this.documentLengths = documentLengths;
+        long totalLength = 0;
+        for (int length : documentLengths) {
+            totalLength += length;
+        }
+        this.averageLength = documentLengths.length > 0 ? Math.max(1f, (float) totalLength / documentLengths.length) : 1f;
+    }
+
+    /**
+     * Baut den Index aus dem Volltext der Dokumente auf
+     */
+    public static LexicalIndex build(List<RAGDocument> documents) {
+        Map<String, Integer> termIds = new HashMap<>();
+        List<IntList> docs = new ArrayList<>();
+        List<IntList> frequencies = new ArrayList<>();
+        int[] documentLengths = new int[documents.size()];
+
+        Map<String, Integer> termCounts = new HashMap<>();
+        for (int docNumber = 0; docNumber < documents.size(); docNumber++) {
+            RAGDocument doc = documents.get(docNumber);
+            termCounts.clear();
+            int length = 0;
+            for (String term : tokenize(doc.getTitle() + " " + doc.getContent())) {
+                termCounts.merge(term, 1, Integer::sum);
+                length++;
+            }
+            documentLengths[docNumber] = length;
+
+            for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
+                Integer termId = termIds.get(entry.getKey());
+                if (termId == null) {
+                    termId = termIds.size();
+                    termIds.put(entry.getKey(), termId);
+                    docs.add(new IntList());
+                    frequencies.add(new IntList());
+                }
+                docs.get(termId).add(docNumber);
+                frequencies.get(termId).add(entry.getValue());
+            }
+        }
+
+        int[][] postingDocs = new int[docs.size()][];
+        int[][] postingFrequencies = new int[docs.size()][];
+        for (int termId = 0; termId < docs.size(); termId++) {
+            postingDocs[termId] = docs.get(termId).toArray();
+            postingFrequencies[termId] = frequencies.get(termId).toArray();
+        }
+        return new LexicalIndex(fingerprint(documents), termIds, postingDocs, postingFrequencies, documentLengths);
+    }
+
+    /**
+     * Lädt den Index aus einer Datei, sofern er zum Dokumentenbestand passt
+     *
+     * @return der geladene Index oder null, wenn die Datei fehlt oder veraltet ist
+     */
+    public static LexicalIndex load(Path file, List<RAGDocument> documents) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long storedFingerprint = in.readLong();
+            int documentCount = in.readInt();
+            if (storedFingerprint != fingerprint(documents) || documentCount != documents.size()) {
+                return null;
+            }
+
+            int[] documentLengths = new int[documentCount];
+            for (int i = 0; i < documentCount; i++) {
+                documentLengths[i] = in.readInt();
+            }
+
+            int termCount = in.readInt();
+            Map<String, Integer> termIds = new HashMap<>(termCount * 2);
+            int[][] postingDocs = new int[termCount][];
+            int[][] postingFrequencies = new int[termCount][];
+            for (int termId = 0; termId < termCount; termId++) {
+                termIds.put(in.readUTF(), termId);
+                int postings = in.readInt();
+                int[] docs = new int[postings];
+                int[] frequencies = new int[postings];
+                for (int i = 0; i < postings; i++) {
+                    docs[i] = in.readInt();
+                    frequencies[i] = in.readInt();
+                }
+                postingDocs[termId] = docs;
+                postingFrequencies[termId] = frequencies;
+            }
+            return new LexicalIndex(storedFingerprint, termIds, postingDocs, postingFrequencies, documentLengths);
+        }
+    }
+
+    /**
+     * Schreibt den Index atomar (über eine temporäre Datei)
+     */
+    public void write(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        String[] terms = new String[termIds.size()];
+        termIds.forEach((term, termId) -> terms[termId] = term);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(documentLengths.length);
+            for (int length : documentLengths) {
+                out.writeInt(length);
+            }
+            out.writeInt(terms.length);
+            for (int termId = 0; termId < terms.length; termId++) {
+                out.writeUTF(terms[termId]);
+                int[] docs = postingDocs[termId];
+                int[] frequencies = postingFrequencies[termId];
+                out.writeInt(docs.length);
+                for (int i = 0; i < docs.length; i++) {
+                    out.writeInt(docs[i]);
+                    out.writeInt(frequencies[i]);
+                }
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Sucht die Dokumente mit dem höchsten BM25-Score für eine Anfrage
+     */
+    public Result search(String query, int maxResults) {
+        return search(query, maxResults, null);
+    }
+
+    /**
+     * Sucht nur unter den zulässigen Dokumenten; andere Dokumente werden beim Durchlaufen
+     * der Postings übersprungen
+     *
+     * @param allowed zulässige Dokumentnummern oder null für alle
+     */
+    public Result search(String query, int maxResults, IntPredicate allowed) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        int documentCount = documentLengths.length;
+        if (queryTerms.isEmpty() || documentCount == 0) {
+            return new Result(Collections.emptyList(), queryTerms.size());
+        }
+
+        float[] scores = new float[documentCount];
+        int[] matchedTerms = new int[documentCount];
+        IntList touched = new IntList();
+
+        for (String term : queryTerms) {
+            Integer termId = termIds.get(term);
+            if (termId == null) {
+                continue;
+            }
+            int[] docs = postingDocs[termId];
+            int[] frequencies = postingFrequencies[termId];
+            float idf = (float) Math.log(1 + (documentCount - docs.length + 0.5) / (docs.length + 0.5));
+
+            for (int i = 0; i < docs.length; i++) {
+                int doc = docs[i];
+                if (allowed != null && !allowed.test(doc)) {
+                    continue;
+                }
+                float tf = frequencies[i];
+                float norm = K1 * (1 - B + B * documentLengths[doc] / averageLength);
+                if (matchedTerms[doc]++ == 0) {
+                    touched.add(doc);
+                }
+                scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+
+        // Top-k per Min-Heap über die Dokumentnummern, ohne die Kandidaten vollständig zu sortieren
+        int[] candidates = touched.toArray();
+        int heapSize = Math.min(maxResults, candidates.length);
+        int[] heap = new int[heapSize];
+        int filled = 0;
+        for (int doc : candidates) {
+            if (filled < heapSize) {
+                heap[filled] = doc;
+                siftUp(heap, filled++, scores);
+            } else if (heapSize > 0 && scores[doc] > scores[heap[0]]) {
+                heap[0] = doc;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(heapSize);
+        for (int size = heapSize; size > 0; size--) {
+            int doc = heap[0];
+            hits.add(new Hit(doc, scores[doc], matchedTerms[doc]));
+            heap[0] = heap[size - 1];
+            siftDown(heap, size - 1, scores);
+        }
+        Collections.reverse(hits);
+        return new Result(hits, queryTerms.size());
+    }
+
+    private static void siftUp(int[] heap, int index, float[] scores) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[heap[index]] >= scores[heap[parent]]) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[heap[left]] < scores[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && scores[heap[right]] < scores[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(heap, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    public int documentCount() {
+        return documentLengths.length;
+    }
+
+    public int termCount() {
+        return termIds.size();
+    }
+
+    /**
+     * Zerlegt einen Text in kleingeschriebene Terme ohne Stoppwörter und Einzelzeichen
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.GERMAN))) {
+            if (token.length() > 1 && !STOPWORDS.contains(token)) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Fingerabdruck des Dokumentenbestands (FNV-1a über URL und Inhalts-Hash in Index-Reihenfolge)
+     */
+    private static long fingerprint(List<RAGDocument> documents) {
+        long hash = 0xcbf29ce484222325L;
+        for (RAGDocument doc : documents) {
+            String key = doc.getUrl() + '\n' + doc.getContentHash() + '\n';
+            for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Treffer der lexikalischen Suche
+     *
+     * @param document Position des Dokuments in der Liste, aus der der Index gebaut wurde
+     * @param matchedTerms Anzahl der Anfrage-Terme, die im Dokument vorkommen
+     */
+    public record Hit(int document, float score, int matchedTerms) {
+    }
+
+    public record Result(List<Hit> hits, int queryTermCount) {
+
+        /**
+         * Der Treffer ist eindeutig, wenn das beste Dokument alle Anfrage-Terme enthält
+         * und mindestens um den Faktor ratio besser bewertet ist als das zweitbeste
+         */
+        public boolean isDecisive(double ratio) {
+            if (hits.isEmpty() || hits.get(0).matchedTerms() < queryTermCount) {
+                return false;
+            }
+            return hits.size() == 1 || hits.get(0).score() >= ratio * hits.get(1).score();
+        }
+    }
+
+    /**
+     * Wachsende Liste primitiver ints für den Aufbau der Postings
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
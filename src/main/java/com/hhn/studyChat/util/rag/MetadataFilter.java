@@ -0,0 +1,104 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Optionale Einschränkung einer Suche auf Kategorie, Domain und Seitentyp.
+ * Nicht gesetzte Felder (null) schränken nicht ein; gesetzte Felder müssen exakt übereinstimmen.
+ * Filterwerte und die indexierten Metadaten werden mit {@link #normalize} in Kleinschreibung
+ * gebracht, da Qdrant Keywords case-sensitiv vergleicht.
+ */
+public class MetadataFilter {
+
+    // Metadaten-Schlüssel der Segmente bzw. Payload-Felder in Qdrant
+    public static final String CATEGORY_KEY = "category";
+    public static final String DOMAIN_KEY = "domain";
+    public static final String PAGE_TYPE_KEY = "page_type";
+    public static final List<String> KEYS = List.of(CATEGORY_KEY, DOMAIN_KEY, PAGE_TYPE_KEY);
+
+    private static final MetadataFilter NONE = new MetadataFilter(null, null, null);
+
+    private final String category;
+    private final String domain;
+    private final String pageType;
+
+    private MetadataFilter(String category, String domain, String pageType) {
+        this.category = category;
+        this.domain = domain;
+        this.pageType = pageType;
+    }
+
+    public static MetadataFilter none() {
+        return NONE;
+    }
+
+    /**
+     * Erstellt einen Filter; leere Werte werden ignoriert, Vergleiche erfolgen in Kleinschreibung
+     */
+    public static MetadataFilter of(String category, String domain, String pageType) {
+        MetadataFilter filter = new MetadataFilter(clean(category), clean(domain), clean(pageType));
+        return filter.isEmpty() ? NONE : filter;
+    }
+
+    private static String clean(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return normalize(value);
+    }
+
+    /**
+     * Schreibweise, in der Filterwerte verglichen und Metadaten indexiert werden
+     */
+    public static String normalize(String value) {
+        return value != null ? value.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    public boolean isEmpty() {
+        return category == null && domain == null && pageType == null;
+    }
+
+    public boolean matches(RAGDocument doc) {
+        return matches(category, doc.getCategory())
+                && matches(domain, doc.getDomain())
+                && matches(pageType, doc.getPageType());
+    }
+
+    private static boolean matches(String expected, String actual) {
+        return expected == null || (actual != null && expected.equals(normalize(actual)));
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getPageType() {
+        return pageType;
+    }
+
+    /**
+     * Kanonische Darstellung, z.B. für Cache-Schlüssel und Logs
+     */
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        if (category != null) {
+            parts.add(CATEGORY_KEY + "=" + category);
+        }
+        if (domain != null) {
+            parts.add(DOMAIN_KEY + "=" + domain);
+        }
+        if (pageType != null) {
+            parts.add(PAGE_TYPE_KEY + "=" + pageType);
+        }
+        return String.join(",", parts);
+    }
+}
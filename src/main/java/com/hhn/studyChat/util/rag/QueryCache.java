@@ -0,0 +1,149 @@
+package com.hhn.studyChat.util.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Zweistufiger Cache vor der Retrieval-Pipeline:
+ * 1. normalisierte Anfrage → Query-Embedding (jobübergreifend)
+ * 2. (jobId, normalisierte Anfrage, k) → Retrieval-Ergebnis
+ *
+ * Beide Stufen sind in der Größe begrenzt (LRU) und laufen nach einer TTL ab.
+ * Ändert sich der Index eines Jobs, werden dessen Ergebnisse verworfen.
+ */
+public class QueryCache {
+
+    private final TtlLruCache<String, Embedding> embeddings;
+    private final TtlLruCache<ResultKey, Retrieval> results;
+    // Wird bei jeder Index-Änderung eines Jobs erhöht, damit laufende Anfragen keine veralteten Ergebnisse eintragen
+    private final Map<String, AtomicLong> jobGenerations = new ConcurrentHashMap<>();
+
+    public QueryCache(int maxEntries, long ttlMillis) {
+        this.embeddings = new TtlLruCache<>(maxEntries, ttlMillis);
+        this.results = new TtlLruCache<>(maxEntries, ttlMillis);
+    }
+
+    /**
+     * Normalisiert eine Anfrage: Kleinschreibung, zusammengefasste Leerzeichen, ohne Satzzeichen am Ende
+     */
+    public static String normalize(String query) {
+        String normalized = query.toLowerCase(Locale.GERMAN).trim().replaceAll("\\s+", " ");
+        return normalized.replaceAll("[?!.,;:]+$", "").trim();
+    }
+
+    public Embedding getEmbedding(String normalizedQuery) {
+        return embeddings.get(normalizedQuery);
+    }
+
+    public void putEmbedding(String normalizedQuery, Embedding embedding) {
+        embeddings.put(normalizedQuery, embedding);
+    }
+
+    /**
+     * Liefert ein gecachtes (unveränderliches) Retrieval-Ergebnis oder null
+     */
+    public Retrieval getResult(String jobId, String normalizedQuery, int maxResults) {
+        return results.get(new ResultKey(jobId, normalizedQuery, maxResults));
+    }
+
+    /**
+     * Aktueller Index-Stand eines Jobs; muss vor der Suche gelesen und an putResult übergeben werden
+     */
+    public long generation(String jobId) {
+        return jobGenerations.computeIfAbsent(jobId, k -> new AtomicLong()).get();
+    }
+
+    public void putResult(String jobId, String normalizedQuery, int maxResults, Retrieval retrieval, long generation) {
+        // Prüfen und Eintragen unter derselben Sperre wie invalidateJob, damit kein veraltetes Ergebnis
+        // nach dem Entfernen noch eingetragen wird
+        synchronized (results) {
+            if (generation(jobId) != generation) {
+                return;
+            }
+            results.put(new ResultKey(jobId, normalizedQuery, maxResults), retrieval);
+        }
+    }
+
+    /**
+     * Verwirft alle Ergebnisse eines Jobs, z.B. nach einer Neuindexierung
+     */
+    public void invalidateJob(String jobId) {
+        synchronized (results) {
+            jobGenerations.computeIfAbsent(jobId, k -> new AtomicLong()).incrementAndGet();
+            results.removeIf(key -> key.jobId().equals(jobId));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("embeddingHits", embeddings.hits.get());
+        stats.put("embeddingMisses", embeddings.misses.get());
+        stats.put("embeddingEntries", embeddings.size());
+        stats.put("resultHits", results.hits.get());
+        stats.put("resultMisses", results.misses.get());
+        stats.put("resultEntries", results.size());
+        return stats;
+    }
+
+    private record ResultKey(String jobId, String query, int maxResults) {
+    }
+
+    /**
+     * Einfacher threadsicherer LRU-Cache mit Ablaufzeit pro Eintrag
+     */
+    private static class TtlLruCache<K, V> {
+        private final int maxEntries;
+        private final long ttlMillis;
+        private final LinkedHashMap<K, TimedValue<V>> entries;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        TtlLruCache(int maxEntries, long ttlMillis) {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.ttlMillis = ttlMillis;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, TimedValue<V>> eldest) {
+                    return size() > TtlLruCache.this.maxEntries;
+                }
+            };
+        }
+
+        synchronized V get(K key) {
+            TimedValue<V> entry = entries.get(key);
+            if (entry == null || entry.isExpired(ttlMillis)) {
+                if (entry != null) {
+                    entries.remove(key);
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value();
+        }
+
+        synchronized void put(K key, V value) {
+            entries.put(key, new TimedValue<>(value, System.currentTimeMillis()));
+        }
+
+        synchronized void removeIf(Predicate<K> predicate) {
+            entries.keySet().removeIf(predicate);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private record TimedValue<V>(V value, long createdAt) {
+        boolean isExpired(long ttlMillis) {
+            return ttlMillis > 0 && System.currentTimeMillis() - createdAt > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ergebnis einer Suche: Dokumente in Rang-Reihenfolge und je Dokument die Segmente, über die die
+ * Vektorsuche es gefunden hat. Der Kontext für den Prompt wird direkt aus diesen Treffern gepackt,
+ * ohne die Dokumente erneut zu zerlegen und zu bewerten. Dokumente, die nur die BM25-Suche
+ * geliefert hat, haben keine Segmente.
+ */
+public record Retrieval(List<RAGDocument> documents, Map<String, List<ContextPacker.ScoredSegment>> segments) {
+
+    private static final Retrieval EMPTY = new Retrieval(List.of(), Map.of());
+
+    public Retrieval {
+        documents = List.copyOf(documents);
+        Map<String, List<ContextPacker.ScoredSegment>> copy = new HashMap<>();
+        segments.forEach((documentId, documentSegments) -> copy.put(documentId, List.copyOf(documentSegments)));
+        segments = Map.copyOf(copy);
+    }
+
+    public static Retrieval empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Ergebnis ohne Segmente, z.B. aus der BM25-Suche
+     */
+    public static Retrieval of(List<RAGDocument> documents) {
+        return new Retrieval(documents, Map.of());
+    }
+
+    /**
+     * Gefundene Segmente eines Dokuments in Textreihenfolge; leer, wenn keine bekannt sind
+     */
+    public List<ContextPacker.ScoredSegment> segmentsOf(RAGDocument document) {
+        return segments.getOrDefault(document.getId(), List.of());
+    }
+
+    /**
+     * Die ersten maxResults Dokumente mit ihren Segmenten
+     */
+    public Retrieval limit(int maxResults) {
+        if (documents.size() <= maxResults) {
+            return this;
+        }
+        Builder builder = new Builder();
+        for (RAGDocument doc : documents.subList(0, maxResults)) {
+            builder.addDocument(doc);
+            segmentsOf(doc).forEach(segment -> builder.addSegment(doc, segment));
+        }
+        return builder.build();
+    }
+
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    /**
+     * Sammelt Treffer in Rang-Reihenfolge: ein Dokument steht an der Stelle seines ersten Treffers,
+     * ein mehrfach gefundenes Segment behält seine beste Ähnlichkeit
+     */
+    public static final class Builder {
+
+        private final Map<String, RAGDocument> documents = new LinkedHashMap<>();
+        private final Map<String, TreeMap<Integer, ContextPacker.ScoredSegment>> segments = new HashMap<>();
+
+        /**
+         * @return true, wenn das Dokument neu aufgenommen wurde
+         */
+        public boolean addDocument(RAGDocument doc) {
+            return documents.putIfAbsent(doc.getId(), doc) == null;
+        }
+
+        /**
+         * Nimmt ein Segment aus dem Store auf; ohne Position (ältere Stores) bleibt es unberücksichtigt
+         */
+        public void addMatch(RAGDocument doc, TextSegment segment, double score) {
+            String index = segment.metadata().get(DocumentIndex.SEGMENT_INDEX_KEY);
+            if (index == null) {
+                return;
+            }
+            try {
+                addSegment(doc, new ContextPacker.ScoredSegment(Integer.parseInt(index), segment.text(), score));
+            } catch (NumberFormatException e) {
+                // Fremde Metadaten unter demselben Schlüssel
+            }
+        }
+
+        public void addSegment(RAGDocument doc, ContextPacker.ScoredSegment segment) {
+            segments.computeIfAbsent(doc.getId(), id -> new TreeMap<>())
+                    .merge(segment.index(), segment, (a, b) -> a.score() >= b.score() ? a : b);
+        }
+
+        public int size() {
+            return documents.size();
+        }
+
+        public Retrieval build() {
+            Map<String, List<ContextPacker.ScoredSegment>> result = new HashMap<>();
+            segments.forEach((documentId, byIndex) -> {
+                if (documents.containsKey(documentId)) {
+                    result.put(documentId, new ArrayList<>(byIndex.values()));
+                }
+            });
+            return new Retrieval(new ArrayList<>(documents.values()), result);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.util.vector.SimilarityKernels;
+import dev.langchain4j.data.embedding.Embedding;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Semantischer Antwort-Cache pro Job: bereits beantwortete Fragen werden mit ihrem
+ * Embedding gespeichert. Eine neue Frage, deren Kosinus-Ähnlichkeit zu einer gespeicherten
+ * Frage über dem Schwellwert liegt, erhält die gespeicherte Antwort ohne LLM-Aufruf.
+ *
+ * Pro Job werden höchstens maxEntriesPerJob Antworten gehalten; verdrängt wird die am
+ * längsten nicht genutzte Antwort. Einträge laufen zusätzlich nach einer TTL ab.
+ */
+public class SemanticAnswerCache {
+
+    private final double similarityThreshold;
+    private final int maxEntriesPerJob;
+    private final long ttlMillis;
+    private final Map<String, List<Entry>> entriesByJob = new ConcurrentHashMap<>();
+    // Wird bei jeder Invalidierung eines Jobs erhöht, damit vor einem Re-Crawl erzeugte Antworten nicht nachträglich eingetragen werden
+    private final Map<String, AtomicLong> jobGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SemanticAnswerCache(double similarityThreshold, int maxEntriesPerJob, long ttlMillis) {
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntriesPerJob = Math.max(1, maxEntriesPerJob);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Sucht die ähnlichste bereits beantwortete Frage eines Jobs
+     *
+     * @return die gespeicherte Antwort oder null, wenn keine Frage ähnlich genug ist
+     */
+    public String findAnswer(String jobId, Embedding question) {
+        List<Entry> entries = entriesByJob.get(jobId);
+        if (entries == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        float[] vector = normalized(question.vector());
+        long now = System.currentTimeMillis();
+
+        synchronized (entries) {
+            entries.removeIf(entry -> isExpired(entry, now));
+
+            Entry best = null;
+            double bestSimilarity = similarityThreshold;
+            for (Entry entry : entries) {
+                double similarity = dot(vector, entry.vector);
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+
+            if (best == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            best.lastAccess = now;
+            hits.incrementAndGet();
+            return best.answer;
+        }
+    }
+
+    /**
+     * Aktueller Stand eines Jobs; muss vor Retrieval und Generierung gelesen und an put übergeben werden
+     */
+    public long generation(String jobId) {
+        return jobGenerations.computeIfAbsent(jobId, k -> new AtomicLong()).get();
+    }
+
+    /**
+     * Speichert die Antwort auf eine Frage; bei voller Kapazität wird die am längsten
+     * nicht genutzte Antwort verdrängt. Wurde der Job seit generation invalidiert, wird die
+     * Antwort verworfen.
+     */
+    public void put(String jobId, Embedding questionEmbedding, String answer, long generation) {
+        List<Entry> entries = entriesByJob.computeIfAbsent(jobId, k -> new ArrayList<>());
+        long now = System.currentTimeMillis();
+
+        synchronized (entries) {
+            if (generation(jobId) != generation) {
+                return;
+            }
+            entries.removeIf(entry -> isExpired(entry, now));
+            if (entries.size() >= maxEntriesPerJob) {
+                Entry leastRecentlyUsed = entries.get(0);
+                for (Entry entry : entries) {
+                    if (entry.lastAccess < leastRecentlyUsed.lastAccess) {
+                        leastRecentlyUsed = entry;
+                    }
+                }
+                entries.remove(leastRecentlyUsed);
+            }
+            entries.add(new Entry(normalized(questionEmbedding.vector()), answer, now));
+        }
+    }
+
+    /**
+     * Verwirft alle Antworten eines Jobs, z.B. nach einer Neuindexierung
+     */
+    public void invalidateJob(String jobId) {
+        jobGenerations.computeIfAbsent(jobId, k -> new AtomicLong()).incrementAndGet();
+        entriesByJob.remove(jobId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("entries", entriesByJob.values().stream().mapToInt(List::size).sum());
+        return stats;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlMillis > 0 && now - entry.createdAt > ttlMillis;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        return SimilarityKernels.dot(a, b);
+    }
+
+    private static class Entry {
+        private final float[] vector;
+        private final String answer;
+        private final long createdAt;
+        private long lastAccess;
+
+        Entry(float[] vector, String answer, long createdAt) {
+            this.vector = vector;
+            this.answer = answer;
+            this.createdAt = createdAt;
+            this.lastAccess = createdAt;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hhn.studyChat.util.rag;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fasst gleichzeitige Aufrufe mit demselben Schlüssel zusammen: Der erste Aufrufer führt die Berechnung
+ * aus, alle weiteren warten auf dasselbe Ergebnis. Nach Abschluss wird der Schlüssel freigegeben,
+ * spätere Aufrufe rechnen also wieder selbst (kein Cache).
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Führt call aus oder schließt sich einer laufenden Ausführung mit gleichem Schlüssel an.
+     * Fehler der Ausführung werden an alle wartenden Aufrufer weitergegeben.
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        executed.incrementAndGet();
+        try {
+            V result = call.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executed", executed.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+}
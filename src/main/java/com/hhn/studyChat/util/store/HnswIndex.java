@@ -0,0 +1,412 @@
+package com.hhn.studyChat.util.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * HNSW-Graph (Hierarchical Navigable Small World) für die approximative Nächste-Nachbarn-Suche.
+ * Die Knoten entsprechen den Slots eines Vektor-Stores, die Vektoren selbst liegen weiterhin im Store
+ * und werden über {@link Vectors} gelesen. Als Ähnlichkeit dient das Skalarprodukt normierter Vektoren.
+ *
+ * Knoten werden inkrementell eingefügt; Suchen laufen parallel unter einer Lesesperre.
+ * Gelöschte Knoten bleiben für die Navigation im Graphen und werden bei der Suche über einen Filter ausgeblendet.
+ */
+public class HnswIndex {
+
+    private static final int MAGIC = 0x53434857; // "SCHW"
+    private static final int VERSION = 1;
+
+    /**
+     * Parameter des Graphen
+     *
+     * @param m maximale Anzahl Nachbarn pro Knoten und Ebene (Ebene 0: 2 * m)
+     * @param efConstruction Kandidatenliste beim Einfügen
+     * @param efSearch Kandidatenliste bei der Suche
+     */
+    public record Settings(int m, int efConstruction, int efSearch) {
+        public Settings {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("Ungültige HNSW-Parameter: m=" + m
+                        + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+            }
+        }
+    }
+
+    /**
+     * Zugriff auf die (normierten) Vektoren der Knoten
+     */
+    public interface Vectors {
+        float[] vector(int node);
+
+        double similarity(float[] query, int node);
+    }
+
+    /**
+     * Ein Knoten mit seiner Ähnlichkeit zur Anfrage
+     */
+    public record Neighbor(int node, double similarity) {
+    }
+
+    private static final Comparator<Neighbor> BY_SIMILARITY = Comparator.comparingDouble(Neighbor::similarity);
+
+    private final Settings settings;
+    private final Vectors vectors;
+    private final int maxConnectionsLayer0;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Knoten -> Ebene -> [Anzahl, Nachbar 1, Nachbar 2, ...]
+    private final List<int[][]> graph = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(Settings settings, Vectors vectors) {
+        this.settings = settings;
+        this.vectors = vectors;
+        this.maxConnectionsLayer0 = settings.m() * 2;
+        this.levelMultiplier = 1 / Math.log(settings.m());
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return graph.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fügt den nächsten Knoten in den Graphen ein. Knoten müssen fortlaufend ab 0 eingefügt werden.
+     */
+    public void insert(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node != graph.size()) {
+                throw new IllegalArgumentException("Erwarteter Knoten " + graph.size() + ", erhalten " + node);
+            }
+
+            float[] vector = vectors.vector(node);
+            IntToDoubleFunction similarityToNode = other -> vectors.similarity(vector, other);
+            int level = randomLevel();
+            int[][] layers = new int[level + 1][];
+            for (int layer = 0; layer <= level; layer++) {
+                layers[layer] = new int[maxConnections(layer) + 1];
+            }
+            graph.add(layers);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            // Auf den oberen Ebenen gierig zum nächsten Knoten absteigen
+            Neighbor current = new Neighbor(entryPoint, similarityToNode.applyAsDouble(entryPoint));
+            for (int layer = maxLevel; layer > level; layer--) {
+                current = greedyClosest(similarityToNode, current, layer);
+            }
+
+            List<Neighbor> entryPoints = List.of(current);
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                List<Neighbor> candidates = searchLayer(similarityToNode, entryPoints, settings.efConstruction(), layer, null);
+                List<Neighbor> selected = selectNeighbors(candidates, settings.m());
+
+                int[] neighbors = layers[layer];
+                for (Neighbor neighbor : selected) {
+                    neighbors[++neighbors[0]] = neighbor.node();
+                }
+                for (Neighbor neighbor : selected) {
+                    connect(neighbor.node(), node, neighbor.similarity(), layer);
+                }
+                entryPoints = candidates;
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sucht die k ähnlichsten Knoten
+     *
+     * @param query normierter Anfragevektor
+     * @param k Anzahl der Ergebnisse
+     * @param accept Filter für zulässige Ergebnisse (z.B. nicht gelöschte Knoten), null für alle
+     * @return Treffer absteigend nach Ähnlichkeit
+     */
+    public List<Neighbor> search(float[] query, int k, IntPredicate accept) {
+        return search(node -> vectors.similarity(query, node), k, accept);
+    }
+
+    /**
+     * Sucht die k ähnlichsten Knoten mit einer eigenen Ähnlichkeitsfunktion,
+     * z.B. über quantisierte Vektoren
+     *
+     * @param similarityToQuery Ähnlichkeit eines Knotens zur Anfrage
+     * @param k Anzahl der Ergebnisse
+     * @param accept Filter für zulässige Ergebnisse, null für alle
+     * @return Treffer absteigend nach Ähnlichkeit
+     */
+    public List<Neighbor> search(IntToDoubleFunction similarityToQuery, int k, IntPredicate accept) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return new ArrayList<>();
+            }
+
+            Neighbor current = new Neighbor(entryPoint, similarityToQuery.applyAsDouble(entryPoint));
+            for (int layer = maxLevel; layer > 0; layer--) {
+                current = greedyClosest(similarityToQuery, current, layer);
+            }
+
+            List<Neighbor> results = searchLayer(similarityToQuery, List.of(current), Math.max(settings.efSearch(), k), 0, accept);
+            return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entfernt alle Knoten
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            graph.clear();
+            entryPoint = -1;
+            maxLevel = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Neighbor greedyClosest(IntToDoubleFunction similarityToQuery, Neighbor start, int layer) {
+        Neighbor current = start;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = graph.get(current.node())[layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                double similarity = similarityToQuery.applyAsDouble(neighbors[i]);
+                if (similarity > current.similarity()) {
+                    current = new Neighbor(neighbors[i], similarity);
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam-Suche auf einer Ebene. Traversiert werden alle Knoten, in die Ergebnisliste
+     * gelangen nur die vom Filter akzeptierten.
+     *
+     * @return bis zu ef Treffer absteigend nach Ähnlichkeit
+     */
+    private List<Neighbor> searchLayer(IntToDoubleFunction similarityToQuery, List<Neighbor> entryPoints, int ef, int layer,
+                                       IntPredicate accept) {
+        BitSet visited = new BitSet(graph.size());
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(BY_SIMILARITY);
+
+        for (Neighbor entry : entryPoints) {
+            visited.set(entry.node());
+            candidates.add(entry);
+            if (accept == null || accept.test(entry.node())) {
+                results.add(entry);
+                if (results.size() > ef) {
+                    results.poll();
+                }
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            Neighbor candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+                break;
+            }
+
+            int[] neighbors = graph.get(candidate.node())[layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int node = neighbors[i];
+                if (visited.get(node)) {
+                    continue;
+                }
+                visited.set(node);
+
+                double similarity = similarityToQuery.applyAsDouble(node);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Neighbor neighbor = new Neighbor(node, similarity);
+                    candidates.add(neighbor);
+                    if (accept == null || accept.test(node)) {
+                        results.add(neighbor);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Neighbor> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY.reversed());
+        return sorted;
+    }
+
+    /**
+     * Heuristik aus dem HNSW-Paper: ein Kandidat wird nur übernommen, wenn er der Anfrage näher ist
+     * als allen bereits gewählten Nachbarn. Freie Plätze werden mit den verworfenen Kandidaten aufgefüllt.
+     */
+    private List<Neighbor> selectNeighbors(List<Neighbor> candidates, int max) {
+        if (candidates.size() <= max) {
+            return candidates;
+        }
+
+        List<Neighbor> selected = new ArrayList<>(max);
+        List<Neighbor> pruned = new ArrayList<>();
+        for (Neighbor candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] candidateVector = vectors.vector(candidate.node());
+            boolean diverse = true;
+            for (Neighbor chosen : selected) {
+                if (vectors.similarity(candidateVector, chosen.node()) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Verbindet einen bestehenden Knoten mit dem neuen Knoten und kürzt dessen Nachbarliste bei Bedarf
+     */
+    private void connect(int node, int newNode, double similarity, int layer) {
+        int[] neighbors = graph.get(node)[layer];
+        int max = maxConnections(layer);
+        if (neighbors[0] < max) {
+            neighbors[++neighbors[0]] = newNode;
+            return;
+        }
+
+        float[] vector = vectors.vector(node);
+        List<Neighbor> candidates = new ArrayList<>(max + 1);
+        candidates.add(new Neighbor(newNode, similarity));
+        for (int i = 1; i <= neighbors[0]; i++) {
+            candidates.add(new Neighbor(neighbors[i], vectors.similarity(vector, neighbors[i])));
+        }
+        candidates.sort(BY_SIMILARITY.reversed());
+
+        List<Neighbor> selected = selectNeighbors(candidates, max);
+        neighbors[0] = 0;
+        for (Neighbor neighbor : selected) {
+            neighbors[++neighbors[0]] = neighbor.node();
+        }
+    }
+
+    private int maxConnections(int layer) {
+        return layer == 0 ? maxConnectionsLayer0 : settings.m();
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    /**
+     * Schreibt den Graphen in eine Datei (atomar über eine temporäre Datei)
+     */
+    public void write(Path file) throws IOException {
+        lock.readLock().lock();
+        try {
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(settings.m());
+                out.writeInt(graph.size());
+                out.writeInt(entryPoint);
+                out.writeInt(maxLevel);
+                for (int[][] layers : graph) {
+                    out.writeInt(layers.length);
+                    for (int[] neighbors : layers) {
+                        out.writeInt(neighbors[0]);
+                        for (int i = 1; i <= neighbors[0]; i++) {
+                            out.writeInt(neighbors[i]);
+                        }
+                    }
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Liest einen gespeicherten Graphen. Passt die Datei nicht zu den Parametern, wird ein leerer Graph geliefert.
+     */
+    public static HnswIndex read(Path file, Settings settings, Vectors vectors) throws IOException {
+        HnswIndex index = new HnswIndex(settings, vectors);
+        if (!Files.exists(file)) {
+            return index;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != settings.m()) {
+                return index;
+            }
+            int size = in.readInt();
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            for (int node = 0; node < size; node++) {
+                int[][] layers = new int[in.readInt()][];
+                for (int layer = 0; layer < layers.length; layer++) {
+                    int[] neighbors = new int[index.maxConnections(layer) + 1];
+                    neighbors[0] = in.readInt();
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        neighbors[i] = in.readInt();
+                    }
+                    layers[layer] = neighbors;
+                }
+                index.graph.add(layers);
+            }
+        }
+        return index;
+    }
+}
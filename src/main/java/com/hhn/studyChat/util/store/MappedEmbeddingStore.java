@@ -0,0 +1,824 @@
+package com.hhn.studyChat.util.store;
+
+import com.hhn.studyChat.util.vector.SimilarityKernels;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Persistenter lokaler Embedding Store auf Basis von Memory-Mapped Files.
+ * Wird verwendet, wenn Qdrant nicht verfügbar ist: die Vektoren liegen außerhalb des Java-Heaps
+ * und stehen nach einem Neustart sofort wieder zur Verfügung, ohne neu eingebettet zu werden.
+ *
+ * Ein Store besteht aus drei Dateien in einem Verzeichnis:
+ * - vectors.bin: Header (Magic, Version, Dimension, Anzahl) und zusammenhängende, normierte float32-Vektoren
+ * - segments.idx: Datensätze fester Länge (Offset und Länge in segments.dat, Flags, URL- und Inhalts-Hash)
+ * - segments.dat: ID, Text und Metadaten der Segmente mit variabler Länge
+ * - hnsw.graph (optional): HNSW-Graph für die approximative Suche, siehe {@link HnswIndex}
+ * - codes.bin, pq.codebook (optional): quantisierte Vektoren, siehe {@link Quantization}
+ *
+ * Ohne HNSW-Graph wird jede Anfrage per Brute-Force über alle Vektoren beantwortet.
+ * Mit Quantisierung läuft die Suche zunächst über die kompakten Codes; nur die besten
+ * Kandidaten werden anschließend mit den exakten Vektoren neu bewertet.
+ * Gelöschte Einträge werden nur markiert und bei der Suche übersprungen.
+ * Eine Suche kann per URL-Liste vorgefiltert werden; Vektoren anderer Seiten werden dann nicht gelesen.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedEmbeddingStore.class);
+
+    public static final String URL_KEY = "url";
+    public static final String CONTENT_HASH_KEY = "content_hash";
+
+    private static final String VECTORS_FILE = "vectors.bin";
+    private static final String INDEX_FILE = "segments.idx";
+    private static final String DATA_FILE = "segments.dat";
+    private static final String GRAPH_FILE = "hnsw.graph";
+
+    private static final int MAGIC = 0x53435653; // "SCVS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int INDEX_RECORD_SIZE = 32;
+    private static final int RECORDS_PER_REGION = 8192;
+    private static final int FLAG_DELETED = 1;
+    // Kandidaten für die exakte Neubewertung bei Quantisierung: maxResults * Faktor, mindestens Minimum
+    private static final int RESCORE_FACTOR = 4;
+    private static final int MIN_RESCORE_CANDIDATES = 32;
+    // Ab diesem Anteil zulässiger Slots sucht ein gefilterter Store mit HNSW-Graph im Graphen, sonst per Scan
+    private static final double FILTERED_GRAPH_MIN_FRACTION = 0.5;
+
+    private final Path directory;
+    private final int dimension;
+    private final long vectorRegionSize;
+    private final FileChannel vectorChannel;
+    private final FileChannel indexChannel;
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> vectorRegions = new ArrayList<>();
+    private final List<FloatBuffer> vectorViews = new ArrayList<>();
+    private final List<MappedByteBuffer> indexRegions = new ArrayList<>();
+    // URL-Hash -> Inhalts-Hash der indexierten Seiten (eine Zeile pro Seite, nicht pro Vektor)
+    private final Map<Long, Long> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HnswIndex hnsw;
+    private final QuantizedCodes codes;
+    private long dataSize;
+    private int count;
+    private int deletedCount;
+
+    private MappedEmbeddingStore(Path directory, int dimension, HnswIndex.Settings hnswSettings,
+                                 Quantization quantization) throws IOException {
+        this.directory = directory;
+        this.dimension = dimension;
+        this.vectorRegionSize = (long) dimension * Float.BYTES * RECORDS_PER_REGION;
+
+        Files.createDirectories(directory);
+        this.vectorChannel = openChannel(directory.resolve(VECTORS_FILE));
+        this.indexChannel = openChannel(directory.resolve(INDEX_FILE));
+        this.dataChannel = openChannel(directory.resolve(DATA_FILE));
+
+        boolean isNew = vectorChannel.size() < HEADER_SIZE;
+        this.header = vectorChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (isNew) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, dimension);
+            header.putInt(12, 0);
+            dataChannel.truncate(0);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != dimension) {
+            close();
+            throw new IOException("Inkompatibler Vektor-Store: " + directory);
+        }
+
+        load(header.getInt(12));
+        this.codes = quantization == Quantization.NONE ? null : loadCodes(quantization);
+        this.hnsw = hnswSettings == null ? null : loadGraph(hnswSettings);
+    }
+
+    /**
+     * Öffnet den Store im angegebenen Verzeichnis oder legt ihn neu an
+     *
+     * @param directory Verzeichnis des Stores (wird bei Bedarf angelegt)
+     * @param dimension Dimension der gespeicherten Vektoren
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension) throws IOException {
+        return new MappedEmbeddingStore(directory, dimension, null, Quantization.NONE);
+    }
+
+    /**
+     * Öffnet den Store mit HNSW-Graph für die approximative Suche
+     *
+     * @param directory Verzeichnis des Stores (wird bei Bedarf angelegt)
+     * @param dimension Dimension der gespeicherten Vektoren
+     * @param hnswSettings Parameter des Graphen
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension, HnswIndex.Settings hnswSettings) throws IOException {
+        return new MappedEmbeddingStore(directory, dimension, hnswSettings, Quantization.NONE);
+    }
+
+    /**
+     * Öffnet den Store mit optionalem HNSW-Graph und Quantisierung
+     *
+     * @param directory Verzeichnis des Stores (wird bei Bedarf angelegt)
+     * @param dimension Dimension der gespeicherten Vektoren
+     * @param hnswSettings Parameter des Graphen, null für Brute-Force-Suche
+     * @param quantization Kompression der Vektoren; bei einem Wechsel werden die Codes neu erzeugt
+     */
+    public static MappedEmbeddingStore open(Path directory, int dimension, HnswIndex.Settings hnswSettings,
+                                            Quantization quantization) throws IOException {
+        return new MappedEmbeddingStore(directory, dimension, hnswSettings, quantization);
+    }
+
+    /**
+     * Quantisierung eines vorhandenen Stores, null wenn im Verzeichnis noch kein Store liegt
+     */
+    public static Quantization persistedQuantization(Path directory) throws IOException {
+        return QuantizedCodes.persistedMode(directory);
+    }
+
+    private static FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Mappt die vorhandenen Dateien und liest nur die Index-Datensätze ein.
+     * Vektoren und Segmente bleiben auf der Platte bzw. im Page Cache.
+     */
+    private void load(int storedCount) throws IOException {
+        long start = System.nanoTime();
+        for (int slot = 0; slot < storedCount; slot++) {
+            ByteBuffer index = indexRegionFor(slot);
+            int offset = indexOffset(slot);
+            if ((index.getInt(offset + 12) & FLAG_DELETED) != 0) {
+                deletedCount++;
+                continue;
+            }
+            long urlHash = index.getLong(offset + 16);
+            if (urlHash != 0L) {
+                documents.put(urlHash, index.getLong(offset + 24));
+            }
+        }
+        if (storedCount > 0) {
+            vectorRegionFor(storedCount - 1);
+            // Segmente werden angehängt, der letzte Datensatz markiert also das Ende von segments.dat
+            ByteBuffer lastIndex = indexRegionFor(storedCount - 1);
+            int offset = indexOffset(storedCount - 1);
+            dataSize = lastIndex.getLong(offset) + lastIndex.getInt(offset + 8);
+        }
+        count = storedCount;
+        logger.info("Vektor-Store {} geladen: {} Vektoren ({} gelöscht) in {} ms",
+                directory, storedCount - deletedCount, deletedCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Öffnet die quantisierten Codes und erzeugt fehlende Codes aus den exakten Vektoren
+     */
+    private QuantizedCodes loadCodes(Quantization quantization) throws IOException {
+        long start = System.nanoTime();
+        QuantizedCodes quantizedCodes = QuantizedCodes.open(directory, quantization, dimension);
+        int loaded = quantizedCodes.codedCount();
+        if (!quantizedCodes.isTrained()) {
+            trainCodes(quantizedCodes);
+        }
+        for (int slot = quantizedCodes.codedCount(); slot < count; slot++) {
+            quantizedCodes.append(slot, readVector(slot));
+        }
+        logger.info("Quantisierung {} für {}: {} Byte pro Vektor statt {}, {} Codes geladen, {} erzeugt in {} ms",
+                quantization, directory, quantizedCodes.codeSize(), dimension * Float.BYTES,
+                loaded, quantizedCodes.codedCount() - loaded, (System.nanoTime() - start) / 1_000_000);
+        return quantizedCodes;
+    }
+
+    /**
+     * Trainiert das PQ-Codebuch auf einer Stichprobe der vorhandenen Vektoren, sobald genügend vorliegen.
+     * Bis dahin sucht der Store exakt.
+     */
+    private void trainCodes(QuantizedCodes quantizedCodes) throws IOException {
+        int live = count - deletedCount;
+        if (quantizedCodes.getMode() != Quantization.PQ || live < QuantizedCodes.PQ_MIN_TRAINING_SIZE) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int step = Math.max(1, live / QuantizedCodes.PQ_MAX_TRAINING_SIZE);
+        List<float[]> sample = new ArrayList<>();
+        for (int slot = 0; slot < count && sample.size() < QuantizedCodes.PQ_MAX_TRAINING_SIZE; slot += step) {
+            if (!isDeleted(slot)) {
+                sample.add(readVector(slot));
+            }
+        }
+        quantizedCodes.train(sample);
+        for (int slot = 0; slot < count; slot++) {
+            quantizedCodes.append(slot, readVector(slot));
+        }
+        logger.info("PQ-Codebuch für {} auf {} Vektoren trainiert in {} ms",
+                directory, sample.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Liest den gespeicherten Graphen und fügt Vektoren nach, die nach dem letzten Speichern hinzukamen
+     */
+    private HnswIndex loadGraph(HnswIndex.Settings settings) throws IOException {
+        long start = System.nanoTime();
+        HnswIndex.Vectors graphVectors = new HnswIndex.Vectors() {
+            @Override
+            public float[] vector(int node) {
+                return readVector(node);
+            }
+
+            @Override
+            public double similarity(float[] query, int node) {
+                return SimilarityKernels.dot(query, readVector(node));
+            }
+        };
+
+        HnswIndex graph = HnswIndex.read(directory.resolve(GRAPH_FILE), settings, graphVectors);
+        if (graph.size() > count) {
+            graph.clear();
+        }
+        int loaded = graph.size();
+        for (int slot = loaded; slot < count; slot++) {
+            graph.insert(slot);
+        }
+        logger.info("HNSW-Graph {} geladen: {} Knoten, {} nachträglich eingefügt in {} ms",
+                directory, loaded, count - loaded, (System.nanoTime() - start) / 1_000_000);
+        return graph;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = randomIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (embeddings.size() != textSegments.size()) {
+            throw new IllegalArgumentException("Anzahl der Embeddings und Segmente muss übereinstimmen");
+        }
+        List<String> ids = randomIds(embeddings.size());
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+
+    private static List<String> randomIds(int size) {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    private void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                append(ids.get(i), embeddings.get(i), textSegments == null ? null : textSegments.get(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fehler beim Schreiben in den Vektor-Store " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(String id, Embedding embedding, TextSegment segment) throws IOException {
+        float[] vector = embedding.vector();
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Erwartete Dimension " + dimension + ", erhalten " + vector.length);
+        }
+
+        int slot = count;
+        byte[] data = encodeSegment(id, segment);
+        long dataOffset = dataSize;
+        dataChannel.write(ByteBuffer.wrap(data), dataOffset);
+        dataSize += data.length;
+
+        String url = segment == null ? null : segment.metadata().get(URL_KEY);
+        String contentHash = segment == null ? null : segment.metadata().get(CONTENT_HASH_KEY);
+        long urlHash = hash64(url);
+        long contentHash64 = hash64(contentHash);
+
+        ByteBuffer index = indexRegionFor(slot);
+        int offset = indexOffset(slot);
+        index.putLong(offset, dataOffset);
+        index.putInt(offset + 8, data.length);
+        index.putInt(offset + 12, 0);
+        index.putLong(offset + 16, urlHash);
+        index.putLong(offset + 24, contentHash64);
+
+        // Vektoren werden normiert abgelegt, das Skalarprodukt entspricht damit der Kosinus-Ähnlichkeit
+        float[] normalized = normalize(vector);
+        FloatBuffer vectors = vectorViewFor(slot);
+        vectors.put((slot % RECORDS_PER_REGION) * dimension, normalized);
+        if (codes != null) {
+            codes.append(slot, normalized);
+        }
+
+        // Zähler erst nach dem Datensatz schreiben, damit ein Absturz keine halben Einträge hinterlässt
+        count = slot + 1;
+        header.putInt(12, count);
+        if (url != null) {
+            documents.put(urlHash, contentHash64);
+        }
+        if (hnsw != null) {
+            hnsw.insert(slot);
+        }
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return findRelevant(referenceEmbedding, maxResults, minScore, null);
+    }
+
+    /**
+     * Sucht nur unter den Vektoren der angegebenen Seiten. Die zulässigen Slots werden vorab über den
+     * URL-Hash in segments.idx bestimmt; bei wenigen zulässigen Slots wird per Scan statt im HNSW-Graphen
+     * gesucht, da der Graph bei starker Filterung kaum noch zusammenhängende Treffer findet.
+     *
+     * @param urls zulässige Seiten oder null für alle
+     */
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                          Collection<String> urls) {
+        float[] query = normalize(referenceEmbedding.vector());
+        if (maxResults <= 0 || norm(query) == 0) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            BitSet allowed = urls == null ? null : slotsOf(urls);
+            boolean quantized = codes != null && codes.codedCount() > 0;
+            int candidateCount = quantized ? Math.max(maxResults * RESCORE_FACTOR, MIN_RESCORE_CANDIDATES) : maxResults;
+            float[] scratch = new float[dimension];
+            IntToDoubleFunction similarity = quantized ? approximateSimilarity(query) : slot -> dot(query, slot, scratch);
+
+            List<ScoredSlot> candidates;
+            if (hnsw != null && (allowed == null || allowed.cardinality() >= count * FILTERED_GRAPH_MIN_FRACTION)) {
+                candidates = new ArrayList<>();
+                IntPredicate accept = allowed == null ? slot -> !isDeleted(slot) : allowed::get;
+                for (HnswIndex.Neighbor neighbor : hnsw.search(similarity, candidateCount, accept)) {
+                    candidates.add(new ScoredSlot(neighbor.node(), neighbor.similarity()));
+                }
+            } else {
+                candidates = scan(similarity, candidateCount, allowed);
+            }
+            if (quantized) {
+                candidates = rescore(query, candidates, maxResults);
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(candidates.size());
+            for (ScoredSlot candidate : candidates) {
+                // Gleiche Skala wie der In-Memory-Store von langchain4j: (Kosinus + 1) / 2
+                double score = (candidate.similarity() + 1) / 2;
+                if (score >= minScore) {
+                    matches.add(toMatch(candidate.slot(), score));
+                }
+            }
+            return matches;
+        } catch (IOException e) {
+            throw new IllegalStateException("Fehler beim Lesen aus dem Vektor-Store " + directory, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Nicht gelöschte Slots der angegebenen Seiten
+     */
+    private BitSet slotsOf(Collection<String> urls) {
+        Set<Long> urlHashes = new HashSet<>();
+        for (String url : urls) {
+            urlHashes.add(hash64(url));
+        }
+        BitSet slots = new BitSet(count);
+        for (int slot = 0; slot < count; slot++) {
+            ByteBuffer index = indexRegions.get(slot / RECORDS_PER_REGION);
+            int offset = indexOffset(slot);
+            if ((index.getInt(offset + 12) & FLAG_DELETED) == 0 && urlHashes.contains(index.getLong(offset + 16))) {
+                slots.set(slot);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Ähnlichkeit über die quantisierten Codes; noch nicht kodierte Slots werden exakt bewertet
+     */
+    private IntToDoubleFunction approximateSimilarity(float[] query) {
+        VectorQuantizer.Scorer scorer = codes.scorer(query);
+        int codedCount = codes.codedCount();
+        float[] scratch = new float[dimension];
+        return slot -> slot < codedCount ? codes.score(scorer, slot) : dot(query, slot, scratch);
+    }
+
+    /**
+     * Brute-Force-Suche: die n ähnlichsten nicht gelöschten Slots, absteigend sortiert
+     *
+     * @param allowed zulässige Slots oder null für alle nicht gelöschten
+     */
+    private List<ScoredSlot> scan(IntToDoubleFunction similarity, int n, BitSet allowed) {
+        // Min-Heap über die besten n Treffer
+        PriorityQueue<ScoredSlot> best = new PriorityQueue<>(n + 1);
+        int slot = allowed == null ? 0 : allowed.nextSetBit(0);
+        while (slot >= 0 && slot < count) {
+            if (allowed != null || !isDeleted(slot)) {
+                double value = similarity.applyAsDouble(slot);
+                if (best.size() < n) {
+                    best.add(new ScoredSlot(slot, value));
+                } else if (value > best.peek().similarity()) {
+                    best.poll();
+                    best.add(new ScoredSlot(slot, value));
+                }
+            }
+            slot = allowed == null ? slot + 1 : allowed.nextSetBit(slot + 1);
+        }
+
+        List<ScoredSlot> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.reverseOrder());
+        return sorted;
+    }
+
+    /**
+     * Bewertet Kandidaten mit den exakten Vektoren neu und liefert die besten n
+     */
+    private List<ScoredSlot> rescore(float[] query, List<ScoredSlot> candidates, int n) {
+        List<ScoredSlot> rescored = new ArrayList<>(candidates.size());
+        float[] scratch = new float[dimension];
+        for (ScoredSlot candidate : candidates) {
+            rescored.add(new ScoredSlot(candidate.slot(), dot(query, candidate.slot(), scratch)));
+        }
+        rescored.sort(Comparator.reverseOrder());
+        return rescored.size() > n ? new ArrayList<>(rescored.subList(0, n)) : rescored;
+    }
+
+    /**
+     * Skalarprodukt mit dem Vektor eines Slots; der Vektor wird per Bulk-Kopie in den
+     * Puffer des Aufrufers gelesen und mit den Ähnlichkeits-Kernels verrechnet
+     */
+    private double dot(float[] query, int slot, float[] scratch) {
+        vectorViews.get(slot / RECORDS_PER_REGION).get((slot % RECORDS_PER_REGION) * dimension, scratch);
+        return SimilarityKernels.dot(query, scratch);
+    }
+
+    private float[] readVector(int slot) {
+        float[] vector = new float[dimension];
+        vectorViews.get(slot / RECORDS_PER_REGION).get((slot % RECORDS_PER_REGION) * dimension, vector);
+        return vector;
+    }
+
+    private EmbeddingMatch<TextSegment> toMatch(int slot, double score) throws IOException {
+        ByteBuffer index = indexRegions.get(slot / RECORDS_PER_REGION);
+        int offset = indexOffset(slot);
+        ByteBuffer data = ByteBuffer.allocate(index.getInt(offset + 8));
+        dataChannel.read(data, index.getLong(offset));
+        data.flip();
+
+        String id = readString(data);
+        String text = readString(data);
+        int metadataSize = data.getInt();
+        Map<String, String> metadata = new HashMap<>();
+        for (int i = 0; i < metadataSize; i++) {
+            metadata.put(readString(data), readString(data));
+        }
+        TextSegment segment = text == null ? null : TextSegment.from(text, new Metadata(metadata));
+
+        return new EmbeddingMatch<>(score, id, Embedding.from(readVector(slot)), segment);
+    }
+
+    /**
+     * Prüft, ob eine Seite mit diesem Inhalts-Hash bereits indexiert ist
+     */
+    public boolean containsDocument(String url, String contentHash) {
+        lock.readLock().lock();
+        try {
+            Long indexedHash = documents.get(hash64(url));
+            return indexedHash != null && indexedHash == hash64(contentHash);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Markiert alle Vektoren der angegebenen URLs als gelöscht
+     *
+     * @return Anzahl gelöschter Vektoren
+     */
+    public int removeByUrl(Collection<String> urls) {
+        Set<Long> urlHashes = new HashSet<>();
+        for (String url : urls) {
+            urlHashes.add(hash64(url));
+        }
+        return removeWhere(urlHashes, true);
+    }
+
+    /**
+     * Markiert alle Vektoren als gelöscht, deren URL nicht in der Liste enthalten ist
+     *
+     * @return Anzahl gelöschter Vektoren
+     */
+    public int retainUrls(Collection<String> urls) {
+        Set<Long> urlHashes = new HashSet<>();
+        for (String url : urls) {
+            urlHashes.add(hash64(url));
+        }
+        return removeWhere(urlHashes, false);
+    }
+
+    private int removeWhere(Set<Long> urlHashes, boolean contained) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int slot = 0; slot < count; slot++) {
+                ByteBuffer index = indexRegions.get(slot / RECORDS_PER_REGION);
+                int offset = indexOffset(slot);
+                int flags = index.getInt(offset + 12);
+                long urlHash = index.getLong(offset + 16);
+                if ((flags & FLAG_DELETED) != 0 || urlHashes.contains(urlHash) != contained) {
+                    continue;
+                }
+                index.putInt(offset + 12, flags | FLAG_DELETED);
+                documents.remove(urlHash);
+                removed++;
+            }
+            deletedCount += removed;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Entfernt alle Einträge und setzt die Dateien zurück
+     */
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            count = 0;
+            deletedCount = 0;
+            dataSize = 0;
+            documents.clear();
+            header.putInt(12, 0);
+            dataChannel.truncate(0);
+            if (hnsw != null) {
+                hnsw.clear();
+            }
+            if (codes != null) {
+                codes.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isDeleted(int slot) {
+        ByteBuffer index = indexRegions.get(slot / RECORDS_PER_REGION);
+        return (index.getInt(indexOffset(slot) + 12) & FLAG_DELETED) != 0;
+    }
+
+    private FloatBuffer vectorViewFor(int slot) throws IOException {
+        vectorRegionFor(slot);
+        return vectorViews.get(slot / RECORDS_PER_REGION);
+    }
+
+    private ByteBuffer vectorRegionFor(int slot) throws IOException {
+        int regionIndex = slot / RECORDS_PER_REGION;
+        // READ_WRITE-Mapping vergrößert die Datei bei Bedarf automatisch
+        while (vectorRegions.size() <= regionIndex) {
+            long position = HEADER_SIZE + vectorRegions.size() * vectorRegionSize;
+            MappedByteBuffer region = vectorChannel.map(FileChannel.MapMode.READ_WRITE, position, vectorRegionSize);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            vectorRegions.add(region);
+            vectorViews.add(region.asFloatBuffer());
+        }
+        return vectorRegions.get(regionIndex);
+    }
+
+    private ByteBuffer indexRegionFor(int slot) throws IOException {
+        int regionIndex = slot / RECORDS_PER_REGION;
+        while (indexRegions.size() <= regionIndex) {
+            long position = (long) indexRegions.size() * INDEX_RECORD_SIZE * RECORDS_PER_REGION;
+            MappedByteBuffer region = indexChannel.map(FileChannel.MapMode.READ_WRITE, position,
+                    (long) INDEX_RECORD_SIZE * RECORDS_PER_REGION);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            indexRegions.add(region);
+        }
+        return indexRegions.get(regionIndex);
+    }
+
+    private static int indexOffset(int slot) {
+        return (slot % RECORDS_PER_REGION) * INDEX_RECORD_SIZE;
+    }
+
+    /**
+     * Anzahl der nicht gelöschten Vektoren
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDeletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Quantization getQuantization() {
+        return codes == null ? Quantization.NONE : codes.getMode();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Schreibt alle Änderungen auf die Platte
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            header.force();
+            for (MappedByteBuffer region : vectorRegions) {
+                region.force();
+            }
+            for (MappedByteBuffer region : indexRegions) {
+                region.force();
+            }
+            dataChannel.force(false);
+            if (hnsw != null) {
+                hnsw.write(directory.resolve(GRAPH_FILE));
+            }
+            if (codes != null) {
+                if (!codes.isTrained()) {
+                    trainCodes(codes);
+                }
+                codes.flush();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (vectorChannel.isOpen()) {
+            flush();
+        }
+        vectorChannel.close();
+        indexChannel.close();
+        dataChannel.close();
+        if (codes != null) {
+            codes.close();
+        }
+    }
+
+    private static byte[] encodeSegment(String id, TextSegment segment) {
+        List<byte[]> parts = new ArrayList<>();
+        parts.add(utf8(id));
+        parts.add(segment == null ? null : utf8(segment.text()));
+        Map<String, String> metadata = segment == null ? Map.of() : segment.metadata().asMap();
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            parts.add(utf8(entry.getKey()));
+            parts.add(utf8(entry.getValue()));
+        }
+
+        int size = Integer.BYTES;
+        for (byte[] part : parts) {
+            size += Integer.BYTES + (part == null ? 0 : part.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeBytes(buffer, parts.get(0));
+        writeBytes(buffer, parts.get(1));
+        buffer.putInt(metadata.size());
+        for (int i = 2; i < parts.size(); i++) {
+            writeBytes(buffer, parts.get(i));
+        }
+        return buffer.array();
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static float[] normalize(float[] vector) {
+        float norm = norm(vector);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0 : vector[i] / norm;
+        }
+        return normalized;
+    }
+
+    private static float norm(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * Die ersten 64 Bit des SHA-256-Hashes, 0 für fehlende Werte
+     */
+    private static long hash64(String value) {
+        if (value == null) {
+            return 0L;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    private record ScoredSlot(int slot, double similarity) implements Comparable<ScoredSlot> {
+        @Override
+        public int compareTo(ScoredSlot other) {
+            return Double.compare(similarity, other.similarity);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.hhn.studyChat.util.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Product Quantization: der Vektor wird in Teilräume zerlegt, jeder Teilraum wird durch den
+ * nächsten von 256 Zentroiden (ein Byte) ersetzt. Die Zentroide werden per k-Means auf einer
+ * Stichprobe der gespeicherten Vektoren trainiert.
+ * Anfragen werden über eine Tabelle der Teil-Skalarprodukte pro Zentroid bewertet.
+ */
+class ProductQuantizer implements VectorQuantizer {
+
+    private static final int MAGIC = 0x53435051; // "SCPQ"
+    private static final int CENTROIDS = 256;
+    private static final int TRAINING_ITERATIONS = 8;
+
+    private final int dimension;
+    private final int subspaceDimension;
+    private final int subspaces;
+    // Teilraum -> Zentroid -> Komponenten
+    private final float[][][] codebook;
+
+    private ProductQuantizer(int dimension, int subspaceDimension, float[][][] codebook) {
+        this.dimension = dimension;
+        this.subspaceDimension = subspaceDimension;
+        this.subspaces = dimension / subspaceDimension;
+        this.codebook = codebook;
+    }
+
+    /**
+     * Teilraum-Dimension für ca. 16x Kompression: 4 Dimensionen (16 Byte float32) pro Code-Byte
+     */
+    static int subspaceDimensionFor(int dimension) {
+        for (int candidate = 4; candidate > 1; candidate--) {
+            if (dimension % candidate == 0) {
+                return candidate;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Trainiert die Zentroide per k-Means auf den übergebenen (normierten) Vektoren
+     */
+    static ProductQuantizer train(int dimension, List<float[]> sample, long seed) {
+        if (sample.size() < CENTROIDS) {
+            throw new IllegalArgumentException("Mindestens " + CENTROIDS + " Vektoren für das Training erforderlich");
+        }
+
+        int subspaceDimension = subspaceDimensionFor(dimension);
+        int subspaces = dimension / subspaceDimension;
+        float[][][] codebook = new float[subspaces][CENTROIDS][subspaceDimension];
+
+        // Die Teilräume sind unabhängig und werden parallel trainiert
+        IntStream.range(0, subspaces).parallel().forEach(s -> {
+            Random random = new Random(seed + s);
+            int[] assignment = new int[sample.size()];
+            int start = s * subspaceDimension;
+            float[][] centroids = codebook[s];
+
+            // Initialisierung mit zufälligen Stichproben
+            for (int c = 0; c < CENTROIDS; c++) {
+                float[] vector = sample.get(random.nextInt(sample.size()));
+                System.arraycopy(vector, start, centroids[c], 0, subspaceDimension);
+            }
+
+            for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+                for (int v = 0; v < sample.size(); v++) {
+                    assignment[v] = nearestCentroid(centroids, sample.get(v), start, subspaceDimension);
+                }
+
+                float[][] sums = new float[CENTROIDS][subspaceDimension];
+                int[] counts = new int[CENTROIDS];
+                for (int v = 0; v < sample.size(); v++) {
+                    float[] vector = sample.get(v);
+                    int c = assignment[v];
+                    counts[c]++;
+                    for (int d = 0; d < subspaceDimension; d++) {
+                        sums[c][d] += vector[start + d];
+                    }
+                }
+                for (int c = 0; c < CENTROIDS; c++) {
+                    if (counts[c] == 0) {
+                        // Leeren Zentroid neu besetzen
+                        float[] vector = sample.get(random.nextInt(sample.size()));
+                        System.arraycopy(vector, start, centroids[c], 0, subspaceDimension);
+                        continue;
+                    }
+                    for (int d = 0; d < subspaceDimension; d++) {
+                        centroids[c][d] = sums[c][d] / counts[c];
+                    }
+                }
+            }
+        });
+
+        return new ProductQuantizer(dimension, subspaceDimension, codebook);
+    }
+
+    private static int nearestCentroid(float[][] centroids, float[] vector, int start, int length) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < centroids.length; c++) {
+            double distance = 0;
+            for (int d = 0; d < length; d++) {
+                double diff = vector[start + d] - centroids[c][d];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int codeSize() {
+        return subspaces;
+    }
+
+    @Override
+    public void encode(float[] vector, ByteBuffer target, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            int centroid = nearestCentroid(codebook[s], vector, s * subspaceDimension, subspaceDimension);
+            target.put(offset + s, (byte) centroid);
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] query) {
+        // Teil-Skalarprodukte der Anfrage mit allen Zentroiden, einmal pro Anfrage
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            int start = s * subspaceDimension;
+            for (int c = 0; c < CENTROIDS; c++) {
+                float[] centroid = codebook[s][c];
+                float dot = 0;
+                for (int d = 0; d < subspaceDimension; d++) {
+                    dot += query[start + d] * centroid[d];
+                }
+                table[s * CENTROIDS + c] = dot;
+            }
+        }
+
+        return (codes, offset) -> {
+            double sum = 0;
+            for (int s = 0; s < subspaces; s++) {
+                sum += table[s * CENTROIDS + (codes.get(offset + s) & 0xFF)];
+            }
+            return sum;
+        };
+    }
+
+    /**
+     * Schreibt das Codebuch (atomar über eine temporäre Datei)
+     */
+    void write(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(dimension);
+            out.writeInt(subspaceDimension);
+            for (float[][] centroids : codebook) {
+                for (float[] centroid : centroids) {
+                    for (float value : centroid) {
+                        out.writeFloat(value);
+                    }
+                }
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Liest ein gespeichertes Codebuch oder null, wenn keines passt
+     */
+    static ProductQuantizer read(Path file, int dimension) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != dimension) {
+                return null;
+            }
+            int subspaceDimension = in.readInt();
+            float[][][] codebook = new float[dimension / subspaceDimension][CENTROIDS][subspaceDimension];
+            for (float[][] centroids : codebook) {
+                for (float[] centroid : centroids) {
+                    for (int d = 0; d < subspaceDimension; d++) {
+                        centroid[d] = in.readFloat();
+                    }
+                }
+            }
+            return new ProductQuantizer(dimension, subspaceDimension, codebook);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.hhn.studyChat.util.store;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hhn.studyChat.util.embedding.EmbeddingSink;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schreibendes Ziel für die Indexierung in Qdrant. Punkte werden zu großen Batches gesammelt und
+ * über die asynchrone Client-API hochgeladen; höchstens maxInFlight Upserts sind gleichzeitig
+ * unterwegs. Ist das Fenster voll, blockiert addAll und bremst damit die Embedding-Worker
+ * (Backpressure). Fehlgeschlagene Batches werden mit exponentiellem Backoff wiederholt.
+ *
+ * Das Payload-Format entspricht dem von QdrantEmbeddingStore (Text unter "text_segment",
+ * Metadaten als String-Felder), sodass die Punkte wie gewohnt durchsucht werden können.
+ * close() wartet, bis alle Batches geschrieben sind, und wirft {@link IncompleteWriteException}
+ * mit den URLs der Seiten, deren Punkte nicht (vollständig) geschrieben wurden.
+ */
+public class QdrantBulkWriter implements EmbeddingSink, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(QdrantBulkWriter.class);
+
+    private static final String TEXT_KEY = "text_segment";
+    private static final long RETRY_BASE_DELAY_MS = 200;
+
+    /**
+     * Sendet einen Batch an die Collection (im Betrieb QdrantClient.upsertAsync)
+     */
+    @FunctionalInterface
+    interface Upsert {
+        ListenableFuture<Points.UpdateResult> upsert(List<Points.PointStruct> points);
+    }
+
+    private final Upsert upsert;
+    private final String collectionName;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long retryBaseDelayMillis;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService retryScheduler;
+    private final List<Pending> buffer = new ArrayList<>();
+    private final Set<Batch> inFlightBatches = ConcurrentHashMap.newKeySet();
+    private final Set<String> failedUrls = ConcurrentHashMap.newKeySet();
+    private final AtomicLong writtenPoints = new AtomicLong();
+    private final AtomicLong failedPoints = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final long start = System.nanoTime();
+
+    public QdrantBulkWriter(QdrantClient client, String collectionName, int batchSize, int maxInFlight, int maxRetries) {
+        this(points -> client.upsertAsync(collectionName, points), collectionName, batchSize, maxInFlight,
+                maxRetries, RETRY_BASE_DELAY_MS);
+    }
+
+    QdrantBulkWriter(Upsert upsert, String collectionName, int batchSize, int maxInFlight, int maxRetries,
+                     long retryBaseDelayMillis) {
+        this.upsert = upsert;
+        this.collectionName = collectionName;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBaseDelayMillis = retryBaseDelayMillis;
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "qdrant-upsert-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Übernimmt die Punkte in den Puffer; volle Batches werden asynchron gesendet.
+     * Blockiert, solange maxInFlight Upserts unterwegs sind.
+     */
+    @Override
+    public void addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (embeddings.size() != textSegments.size()) {
+            throw new IllegalArgumentException("Anzahl der Embeddings und Segmente muss übereinstimmen");
+        }
+        List<Pending> points = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            TextSegment segment = textSegments.get(i);
+            points.add(new Pending(toPoint(UUID.randomUUID().toString(), embeddings.get(i), segment),
+                    segment.metadata().get("url")));
+        }
+        enqueue(points);
+    }
+
+    private Points.PointStruct toPoint(String id, Embedding embedding, TextSegment segment) {
+        Map<String, JsonWithInt.Value> payload = new HashMap<>();
+        segment.metadata().asMap().forEach((key, value) -> payload.put(key, ValueFactory.value(value)));
+        payload.put(TEXT_KEY, ValueFactory.value(segment.text()));
+        return Points.PointStruct.newBuilder()
+                .setId(PointIdFactory.id(UUID.fromString(id)))
+                .setVectors(VectorsFactory.vectors(embedding.vectorAsList()))
+                .putAllPayload(payload)
+                .build();
+    }
+
+    private void enqueue(List<Pending> points) {
+        List<Batch> fullBatches = new ArrayList<>();
+        synchronized (buffer) {
+            buffer.addAll(points);
+            while (buffer.size() >= batchSize) {
+                List<Pending> head = buffer.subList(0, batchSize);
+                fullBatches.add(new Batch(new ArrayList<>(head)));
+                head.clear();
+            }
+        }
+        for (Batch batch : fullBatches) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Wartet auf einen freien Platz im Fenster und sendet den Batch asynchron
+     */
+    private void send(Batch batch) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            markFailed(batch);
+            logger.error("Upsert von {} Punkten nach {} abgebrochen", batch.size(), collectionName);
+            return;
+        }
+        inFlightBatches.add(batch);
+        upsert(batch, 0);
+    }
+
+    private void upsert(Batch batch, int attempt) {
+        ListenableFuture<Points.UpdateResult> result;
+        try {
+            result = upsert.upsert(batch.points());
+        } catch (RuntimeException e) {
+            onFailure(batch, attempt, e);
+            return;
+        }
+        // Der Listener läuft im gRPC-Thread, der die Antwort liefert; get() blockiert dort nicht mehr
+        result.addListener(() -> {
+            try {
+                result.get();
+                writtenPoints.addAndGet(batch.size());
+                complete(batch);
+            } catch (ExecutionException e) {
+                onFailure(batch, attempt, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                onFailure(batch, maxRetries, e);
+            }
+        }, Runnable::run);
+    }
+
+    /**
+     * Plant eine Wiederholung mit exponentiellem Backoff; der Platz im Fenster bleibt dabei belegt
+     */
+    private void onFailure(Batch batch, int attempt, Throwable error) {
+        if (attempt < maxRetries && !retryScheduler.isShutdown()) {
+            retries.incrementAndGet();
+            long delay = retryBaseDelayMillis << attempt;
+            logger.warn("Upsert von {} Punkten nach {} fehlgeschlagen (Versuch {}), Wiederholung in {} ms: {}",
+                    batch.size(), collectionName, attempt + 1, delay, error.getMessage());
+            retryScheduler.schedule(() -> upsert(batch, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        markFailed(batch);
+        complete(batch);
+        logger.error("❌ Upsert von {} Punkten nach {} endgültig fehlgeschlagen: {}",
+                batch.size(), collectionName, error.getMessage());
+    }
+
+    private void complete(Batch batch) {
+        if (inFlightBatches.remove(batch)) {
+            inFlight.release();
+        }
+    }
+
+    private void markFailed(Batch batch) {
+        failedPoints.addAndGet(batch.size());
+        failedUrls.addAll(batch.urls());
+    }
+
+    /**
+     * Sendet den restlichen Puffer und wartet, bis alle Upserts abgeschlossen sind. Wird das Warten
+     * unterbrochen, gelten alle noch ausstehenden Batches als fehlgeschlagen.
+     */
+    public void flush() {
+        List<Pending> rest;
+        synchronized (buffer) {
+            rest = new ArrayList<>(buffer);
+            buffer.clear();
+        }
+        if (!rest.isEmpty()) {
+            send(new Batch(rest));
+        }
+        try {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Batch batch : new ArrayList<>(inFlightBatches)) {
+                if (inFlightBatches.remove(batch)) {
+                    markFailed(batch);
+                    inFlight.release();
+                }
+            }
+            logger.error("Warten auf ausstehende Upserts nach {} unterbrochen", collectionName);
+        }
+    }
+
+    public long getWrittenPoints() {
+        return writtenPoints.get();
+    }
+
+    public long getFailedPoints() {
+        return failedPoints.get();
+    }
+
+    /**
+     * Schreibt alle ausstehenden Punkte
+     *
+     * @throws IncompleteWriteException wenn Punkte endgültig nicht geschrieben werden konnten
+     */
+    @Override
+    public void close() throws IncompleteWriteException {
+        flush();
+        retryScheduler.shutdownNow();
+        double seconds = Math.max((System.nanoTime() - start) / 1_000_000_000.0, 1e-9);
+        logger.info("✓ {} Punkte nach {} geschrieben in {} s ({} Punkte/s, Batch-Größe {}, {} parallel, {} Wiederholungen, {} fehlgeschlagen)",
+                writtenPoints.get(), collectionName, String.format("%.2f", seconds),
+                String.format("%.0f", writtenPoints.get() / seconds), batchSize, maxInFlight,
+                retries.get(), failedPoints.get());
+        if (failedPoints.get() > 0) {
+            throw new IncompleteWriteException(collectionName, failedPoints.get(), Set.copyOf(failedUrls));
+        }
+    }
+
+    /**
+     * Punkte konnten nicht geschrieben werden; die betroffenen Seiten müssen erneut eingebettet werden
+     */
+    public static class IncompleteWriteException extends IOException {
+
+        private final Set<String> failedUrls;
+
+        public IncompleteWriteException(String collectionName, long failedPoints, Set<String> failedUrls) {
+            super(failedPoints + " Punkte von " + failedUrls.size() + " Seiten nicht nach " + collectionName + " geschrieben");
+            this.failedUrls = failedUrls;
+        }
+
+        public Set<String> getFailedUrls() {
+            return failedUrls;
+        }
+    }
+
+    private record Pending(Points.PointStruct point, String url) {
+    }
+
+    /**
+     * Ein gesendeter Batch; Gleichheit über die Identität, damit gleiche Inhalte getrennt verfolgt werden
+     */
+    private static final class Batch {
+
+        private final List<Pending> pending;
+
+        private Batch(List<Pending> pending) {
+            this.pending = pending;
+        }
+
+        private List<Points.PointStruct> points() {
+            List<Points.PointStruct> points = new ArrayList<>(pending.size());
+            pending.forEach(p -> points.add(p.point()));
+            return points;
+        }
+
+        private Set<String> urls() {
+            Set<String> urls = new HashSet<>();
+            for (Pending p : pending) {
+                if (p.url() != null) {
+                    urls.add(p.url());
+                }
+            }
+            return urls;
+        }
+
+        private int size() {
+            return pending.size();
+        }
+    }
+}
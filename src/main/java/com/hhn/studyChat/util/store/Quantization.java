@@ -0,0 +1,33 @@
+package com.hhn.studyChat.util.store;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Kompressionsverfahren für die Vektoren des lokalen Stores
+ */
+public enum Quantization {
+    // Nur exakte float32-Vektoren
+    NONE,
+    // int8 pro Dimension mit Skalierungsfaktor pro Vektor (ca. 4x kleiner)
+    INT8,
+    // Product Quantization mit 256 Zentroiden pro Teilraum (ca. 16x kleiner)
+    PQ;
+
+    /**
+     * Liest den Modus aus Konfiguration oder Anfrage (Groß-/Kleinschreibung egal); leer ergibt NONE
+     *
+     * @throws IllegalArgumentException bei unbekanntem Modus
+     */
+    public static Quantization from(String value) {
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unbekannte Quantisierung '" + value.trim()
+                    + "', erlaubt sind " + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.hhn.studyChat.util.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quantisierte Codes der Vektoren eines {@link MappedEmbeddingStore} in codes.bin.
+ * Die Codes werden per Memory-Mapping gelesen; Slot i des Stores entspricht Code i.
+ * Bei Product Quantization liegt das trainierte Codebuch in pq.codebook; bis zum Training
+ * sind keine Codes vorhanden und der Store sucht exakt.
+ *
+ * Die Synchronisation erfolgt durch den Store.
+ */
+class QuantizedCodes implements Closeable {
+
+    static final String CODES_FILE = "codes.bin";
+    private static final String CODEBOOK_FILE = "pq.codebook";
+
+    // Mindestanzahl Vektoren für das PQ-Training und maximale Stichprobe
+    static final int PQ_MIN_TRAINING_SIZE = 1024;
+    static final int PQ_MAX_TRAINING_SIZE = 8192;
+
+    private static final int MAGIC = 0x53435143; // "SCQC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORDS_PER_REGION = 8192;
+
+    private final Path directory;
+    private final Quantization mode;
+    private final int dimension;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private VectorQuantizer quantizer;
+    private int codedCount;
+
+    private QuantizedCodes(Path directory, Quantization mode, int dimension) throws IOException {
+        this.directory = directory;
+        this.mode = mode;
+        this.dimension = dimension;
+        this.quantizer = mode == Quantization.INT8
+                ? new ScalarQuantizer(dimension)
+                : ProductQuantizer.read(directory.resolve(CODEBOOK_FILE), dimension);
+
+        this.channel = FileChannel.open(directory.resolve(CODES_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean isNew = channel.size() < HEADER_SIZE;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        int codeSize = quantizer == null ? 0 : quantizer.codeSize();
+        if (isNew || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getInt(8) != mode.ordinal() || header.getInt(12) != codeSize) {
+            // Neuer Store oder Moduswechsel: Codes werden aus den exakten Vektoren neu erzeugt
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, mode.ordinal());
+            header.putInt(12, codeSize);
+            header.putInt(16, 0);
+        }
+        this.codedCount = header.getInt(16);
+        if (codedCount > 0) {
+            regionFor(codedCount - 1);
+        }
+    }
+
+    static QuantizedCodes open(Path directory, Quantization mode, int dimension) throws IOException {
+        if (mode == Quantization.NONE) {
+            throw new IllegalArgumentException("Keine Quantisierung konfiguriert");
+        }
+        return new QuantizedCodes(directory, mode, dimension);
+    }
+
+    /**
+     * Modus eines vorhandenen Stores: NONE ohne codes.bin, null wenn noch kein Store existiert
+     */
+    static Quantization persistedMode(Path directory) throws IOException {
+        Path codesFile = directory.resolve(CODES_FILE);
+        if (!Files.exists(codesFile)) {
+            return Files.isDirectory(directory) ? Quantization.NONE : null;
+        }
+        try (FileChannel codesChannel = FileChannel.open(codesFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            codesChannel.read(buffer, 0);
+            if (buffer.getInt(0) != MAGIC) {
+                return Quantization.NONE;
+            }
+            int ordinal = buffer.getInt(8);
+            return ordinal >= 0 && ordinal < Quantization.values().length
+                    ? Quantization.values()[ordinal]
+                    : Quantization.NONE;
+        }
+    }
+
+    Quantization getMode() {
+        return mode;
+    }
+
+    boolean isTrained() {
+        return quantizer != null;
+    }
+
+    /**
+     * Anzahl der Slots mit Code; alle höheren Slots werden exakt bewertet
+     */
+    int codedCount() {
+        return codedCount;
+    }
+
+    int codeSize() {
+        return quantizer == null ? 0 : quantizer.codeSize();
+    }
+
+    /**
+     * Kodiert den nächsten Slot, sofern ein Quantisierer vorhanden ist
+     */
+    void append(int slot, float[] normalizedVector) throws IOException {
+        if (quantizer == null || slot != codedCount) {
+            return;
+        }
+        quantizer.encode(normalizedVector, regionFor(slot), offsetInRegion(slot));
+        codedCount = slot + 1;
+        header.putInt(16, codedCount);
+    }
+
+    /**
+     * Trainiert das PQ-Codebuch; vorhandene Codes werden verworfen und müssen neu erzeugt werden
+     */
+    void train(List<float[]> sample) throws IOException {
+        if (mode != Quantization.PQ) {
+            return;
+        }
+        ProductQuantizer productQuantizer = ProductQuantizer.train(dimension, sample, 42L);
+        productQuantizer.write(directory.resolve(CODEBOOK_FILE));
+        quantizer = productQuantizer;
+        regions.clear();
+        codedCount = 0;
+        header.putInt(12, productQuantizer.codeSize());
+        header.putInt(16, 0);
+    }
+
+    VectorQuantizer.Scorer scorer(float[] normalizedQuery) {
+        return quantizer.scorer(normalizedQuery);
+    }
+
+    double score(VectorQuantizer.Scorer scorer, int slot) {
+        return scorer.score(regions.get(slot / RECORDS_PER_REGION), offsetInRegion(slot));
+    }
+
+    void clear() {
+        codedCount = 0;
+        header.putInt(16, 0);
+    }
+
+    private ByteBuffer regionFor(int slot) throws IOException {
+        int regionIndex = slot / RECORDS_PER_REGION;
+        long regionSize = (long) quantizer.codeSize() * RECORDS_PER_REGION;
+        // READ_WRITE-Mapping vergrößert die Datei bei Bedarf automatisch
+        while (regions.size() <= regionIndex) {
+            long position = HEADER_SIZE + regions.size() * regionSize;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            regions.add(region);
+        }
+        return regions.get(regionIndex);
+    }
+
+    private int offsetInRegion(int slot) {
+        return (slot % RECORDS_PER_REGION) * quantizer.codeSize();
+    }
+
+    void flush() {
+        header.force();
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            flush();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.hhn.studyChat.util.store;
+
+import com.hhn.studyChat.util.vector.SimilarityKernels;
+
+import java.nio.ByteBuffer;
+
+/**
+ * int8-Skalarquantisierung: jede Komponente wird auf [-127, 127] abgebildet,
+ * skaliert mit dem Betragsmaximum des Vektors. Ein Code besteht aus dem
+ * Skalierungsfaktor (float) und einem Byte pro Dimension.
+ */
+class ScalarQuantizer implements VectorQuantizer {
+
+    private final int dimension;
+
+    ScalarQuantizer(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int codeSize() {
+        return Float.BYTES + dimension;
+    }
+
+    @Override
+    public void encode(float[] vector, ByteBuffer target, int offset) {
+        float maxAbs = 0;
+        for (float value : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs == 0 ? 0 : maxAbs / 127f;
+        target.putFloat(offset, scale);
+        for (int i = 0; i < dimension; i++) {
+            int code = scale == 0 ? 0 : Math.round(vector[i] / scale);
+            target.put(offset + Float.BYTES + i, (byte) Math.max(-127, Math.min(127, code)));
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] query) {
+        // Puffer pro Anfrage, damit die Codes in einem Block gelesen werden
+        byte[] code = new byte[dimension];
+        return (codes, offset) -> {
+            float scale = codes.getFloat(offset);
+            codes.get(offset + Float.BYTES, code);
+            return SimilarityKernels.dot(query, code) * scale;
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.hhn.studyChat.util.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kodiert normierte Vektoren in kompakte Codes fester Länge und bewertet
+ * Anfragen direkt auf den Codes (asymmetrisch: Anfrage bleibt float32)
+ */
+interface VectorQuantizer {
+
+    /**
+     * Länge eines Codes in Byte
+     */
+    int codeSize();
+
+    /**
+     * Schreibt den Code eines Vektors an die angegebene Position
+     */
+    void encode(float[] vector, ByteBuffer target, int offset);
+
+    /**
+     * Bereitet eine Anfrage für die Bewertung vieler Codes vor
+     */
+    Scorer scorer(float[] query);
+
+    interface Scorer {
+        /**
+         * Angenäherte Ähnlichkeit (Skalarprodukt) zwischen Anfrage und Code
+         */
+        double score(ByteBuffer codes, int offset);
+    }
+}
@@ -0,0 +1,15 @@
+package com.hhn.studyChat.util.vector;
+
+/**
+ * Implementierung der Ähnlichkeits-Kernel, siehe {@link SimilarityKernels}
+ */
+interface Kernels {
+
+    float dot(float[] a, float[] b);
+
+    float cosine(float[] a, float[] b);
+
+    float dot(float[] a, byte[] codes);
+
+    String description();
+}
@@ -0,0 +1,58 @@
+package com.hhn.studyChat.util.vector;
+
+/**
+ * Skalare Kernel mit vier unabhängigen Akkumulatoren, damit die CPU mehrere
+ * Multiplikationen parallel ausführen kann
+ */
+class ScalarKernels implements Kernels {
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int length = a.length;
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += a[i] * b[i];
+            sum1 += a[i + 1] * b[i + 1];
+            sum2 += a[i + 2] * b[i + 2];
+            sum3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[i] * b[i];
+        }
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        float dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : (float) (dot / Math.sqrt((double) normA * normB));
+    }
+
+    @Override
+    public float dot(float[] a, byte[] codes) {
+        int length = a.length;
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += a[i] * codes[i];
+            sum1 += a[i + 1] * codes[i + 1];
+            sum2 += a[i + 2] * codes[i + 2];
+            sum3 += a[i + 3] * codes[i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[i] * codes[i];
+        }
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    @Override
+    public String description() {
+        return "skalar";
+    }
+}
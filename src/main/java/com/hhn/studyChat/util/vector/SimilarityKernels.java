@@ -0,0 +1,75 @@
+package com.hhn.studyChat.util.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ähnlichkeits-Kernel für Embeddings (Skalarprodukt, Kosinus, int8-Skalarprodukt).
+ * Verwendet die Vector API (jdk.incubator.vector), sofern das Modul zur Laufzeit verfügbar ist
+ * (JVM-Option --add-modules jdk.incubator.vector, auch bei java -jar), ansonsten eine skalare
+ * Implementierung. {@code VectorApiKernels} wird getrennt übersetzt (siehe pom.xml) und deshalb
+ * per Reflection geladen.
+ */
+public final class SimilarityKernels {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityKernels.class);
+
+    private static final Kernels KERNELS = selectKernels();
+
+    private SimilarityKernels() {
+    }
+
+    private static Kernels selectKernels() {
+        if (!Boolean.getBoolean("studychat.simd.disabled")) {
+            try {
+                Kernels vectorKernels = (Kernels) Class.forName(SimilarityKernels.class.getPackageName()
+                        + ".VectorApiKernels").getDeclaredConstructor().newInstance();
+                // Selbsttest: schlägt fehl, wenn das Modul fehlt oder die API nicht passt
+                if (vectorKernels.dot(new float[]{1, 2, 3}, new float[]{4, 5, 6}) == 32f) {
+                    logger.info("Ähnlichkeits-Kernel: Vector API ({})", vectorKernels.description());
+                    return vectorKernels;
+                }
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                logger.warn("Vector API nicht verfügbar ({}), verwende skalare Ähnlichkeits-Kernel; "
+                        + "JVM-Option --add-modules jdk.incubator.vector fehlt?", e.toString());
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    /**
+     * true, wenn die Vector API verwendet wird
+     */
+    public static boolean isVectorized() {
+        return !(KERNELS instanceof ScalarKernels);
+    }
+
+    /**
+     * Skalarprodukt zweier Vektoren gleicher Länge
+     */
+    public static float dot(float[] a, float[] b) {
+        return KERNELS.dot(a, b);
+    }
+
+    /**
+     * Kosinus-Ähnlichkeit, 0 bei Nullvektoren
+     */
+    public static float cosine(float[] a, float[] b) {
+        return KERNELS.cosine(a, b);
+    }
+
+    /**
+     * Skalarprodukt eines float-Vektors mit int8-Codes gleicher Länge (ohne Skalierung)
+     */
+    public static float dot(float[] a, byte[] codes) {
+        return KERNELS.dot(a, codes);
+    }
+
+    static Kernels scalar() {
+        return new ScalarKernels();
+    }
+
+    static Kernels active() {
+        return KERNELS;
+    }
+}
@@ -0,0 +1,89 @@
+package com.hhn.studyChat.util.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel auf Basis der Vector API mit der bevorzugten Vektorbreite der CPU.
+ * Diese Klasse wird nur geladen, wenn das Modul jdk.incubator.vector verfügbar ist.
+ */
+class VectorApiKernels implements Kernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    // Gleiche Lane-Anzahl wie FLOATS, damit int8-Codes direkt in float-Lanes konvertiert werden können;
+    // null, wenn es dafür keine Vektorform gibt (kleinste Form: 64 Bit)
+    private static final VectorSpecies<Byte> BYTES = FLOATS.length() * Byte.SIZE >= 64
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOATS.length() * Byte.SIZE))
+            : null;
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int length = a.length;
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        int upperBound = FLOATS.loopBound(length);
+        for (; i < upperBound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        int length = a.length;
+        FloatVector dot = FloatVector.zero(FLOATS);
+        FloatVector normA = FloatVector.zero(FLOATS);
+        FloatVector normB = FloatVector.zero(FLOATS);
+        int i = 0;
+        int upperBound = FLOATS.loopBound(length);
+        for (; i < upperBound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, i);
+            dot = va.fma(vb, dot);
+            normA = va.fma(va, normA);
+            normB = vb.fma(vb, normB);
+        }
+        float dotSum = dot.reduceLanes(VectorOperators.ADD);
+        float normASum = normA.reduceLanes(VectorOperators.ADD);
+        float normBSum = normB.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            dotSum += a[i] * b[i];
+            normASum += a[i] * a[i];
+            normBSum += b[i] * b[i];
+        }
+        return normASum == 0 || normBSum == 0 ? 0 : (float) (dotSum / Math.sqrt((double) normASum * normBSum));
+    }
+
+    @Override
+    public float dot(float[] a, byte[] codes) {
+        int length = a.length;
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        int upperBound = BYTES == null ? 0 : FLOATS.loopBound(length);
+        for (; i < upperBound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vc = (FloatVector) ByteVector.fromArray(BYTES, codes, i)
+                    .convertShape(VectorOperators.B2F, FLOATS, 0);
+            sum = va.fma(vc, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[i] * codes[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String description() {
+        return FLOATS.length() + " float-Lanes (" + FLOATS.vectorBitSize() + " Bit)";
+    }
+}
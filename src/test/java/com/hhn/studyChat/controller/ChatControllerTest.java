@@ -0,0 +1,148 @@
+package com.hhn.studyChat.controller;
+
+import com.hhn.studyChat.model.CrawlJob;
+import com.hhn.studyChat.model.RAGDocument;
+import com.hhn.studyChat.service.ChatService;
+import com.hhn.studyChat.service.CrawlerService;
+import com.hhn.studyChat.service.RAGService;
+import com.hhn.studyChat.util.rag.ContextPacker;
+import com.hhn.studyChat.util.rag.MetadataFilter;
+import com.hhn.studyChat.util.rag.Retrieval;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ChatControllerTest {
+
+	private final FakeCrawlerService crawlerService = new FakeCrawlerService();
+	private final FakeRagService ragService = new FakeRagService(crawlerService);
+	private final ChatService chatService = new ChatService(ragService, 1, 1, 1);
+	private final ChatController controller = new ChatController(chatService, crawlerService, ragService);
+
+	@AfterEach
+	void shutdown() {
+		ragService.llmGate.countDown();
+		chatService.shutdown();
+	}
+
+	@Test
+	void answerIsWrittenAsynchronouslyOnceTheLlmResponds() throws Exception {
+		CompletableFuture<ResponseEntity<Map<String, Object>>> pending = controller.chat(request());
+
+		// Der Servlet-Thread ist frei, bevor das LLM antwortet
+		assertFalse(pending.isDone());
+
+		ragService.llmGate.countDown();
+		ResponseEntity<Map<String, Object>> response = pending.get(5, TimeUnit.SECONDS);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("Antwort", response.getBody().get("response"));
+		assertEquals(false, response.getBody().get("extractive"));
+	}
+
+	@Test
+	void fullChatQueueIsRejectedWith503AndRetryAfter() throws Exception {
+		CompletableFuture<ResponseEntity<Map<String, Object>>> running = controller.chat(request());
+		awaitLlmCalls(1);
+		CompletableFuture<ResponseEntity<Map<String, Object>>> queued = controller.chat(request());
+
+		ResponseEntity<Map<String, Object>> rejected = controller.chat(request()).get(5, TimeUnit.SECONDS);
+
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+		assertEquals("5", rejected.getHeaders().getFirst("Retry-After"));
+		assertEquals(5, rejected.getBody().get("retryAfter"));
+
+		ragService.llmGate.countDown();
+		assertEquals(HttpStatus.OK, running.get(5, TimeUnit.SECONDS).getStatusCode());
+		assertEquals(HttpStatus.OK, queued.get(5, TimeUnit.SECONDS).getStatusCode());
+	}
+
+	@Test
+	void jobThatIsStillIndexingIsRejectedWith503() throws Exception {
+		crawlerService.job.setIndexStatus("LOADING");
+
+		ResponseEntity<Map<String, Object>> response = controller.chat(request()).get(5, TimeUnit.SECONDS);
+
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+		assertEquals("5", response.getHeaders().getFirst("Retry-After"));
+		assertEquals("warming", response.getBody().get("status"));
+		assertEquals(0, ragService.llmCalls.get());
+	}
+
+	private void awaitLlmCalls(int calls) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (ragService.llmCalls.get() < calls && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(calls, ragService.llmCalls.get());
+	}
+
+	private static Map<String, String> request() {
+		return Map.of("jobId", "job", "message", "Wie bewerbe ich mich? " + UUID.randomUUID());
+	}
+
+	private static final class FakeCrawlerService extends CrawlerService {
+
+		private final CrawlJob job = CrawlJob.builder().id("job").status("COMPLETED").indexStatus("READY").build();
+
+		@Override
+		public CrawlJob getJob(String jobId) {
+			return job.getId().equals(jobId) ? job : null;
+		}
+	}
+
+	/**
+	 * RAG-Service ohne Index: ein Treffer, das LLM antwortet erst, wenn llmGate öffnet
+	 */
+	private static final class FakeRagService extends RAGService {
+
+		private static final RAGDocument DOCUMENT = RAGDocument.create("job", "https://example.org/bewerbung",
+				"Bewerbung", "", "allgemein", null);
+
+		private final CountDownLatch llmGate = new CountDownLatch(1);
+		private final AtomicInteger llmCalls = new AtomicInteger();
+
+		private FakeRagService(CrawlerService crawlerService) {
+			super(crawlerService);
+		}
+
+		@Override
+		public String findCachedAnswer(String jobId, String query, MetadataFilter filter) {
+			return null;
+		}
+
+		@Override
+		public Retrieval retrieve(String jobId, String query, int maxResults, MetadataFilter filter) {
+			return Retrieval.of(List.of(DOCUMENT));
+		}
+
+		@Override
+		public ContextPacker.Result packContext(String query, Retrieval retrieval) {
+			return new ContextPacker.Result(List.of(new ContextPacker.Passage(DOCUMENT,
+					"Die Bewerbung erfolgt online über das Portal der Hochschule.")), 15, 1);
+		}
+
+		@Override
+		public String generateResponse(String jobId, String query, String context, MetadataFilter filter,
+									   long cacheGeneration) {
+			llmCalls.incrementAndGet();
+			try {
+				llmGate.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "Antwort";
+		}
+	}
+}
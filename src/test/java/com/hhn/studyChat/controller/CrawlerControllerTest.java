@@ -0,0 +1,50 @@
+package com.hhn.studyChat.controller;
+
+import com.hhn.studyChat.model.CrawlJob;
+import com.hhn.studyChat.service.CrawlerService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlerControllerTest {
+
+	private final FakeCrawlerService crawlerService = new FakeCrawlerService();
+	private final CrawlerController controller = new CrawlerController(crawlerService);
+
+	@Test
+	void unknownQuantizationIsRejectedWithoutCreatingAJob() {
+		ResponseEntity<?> response = controller.createJob(List.of("https://example.org"), 1,
+				"./collected-content", false, "int4");
+
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		assertTrue(crawlerService.created.isEmpty());
+	}
+
+	@Test
+	void quantizationIsStoredInCanonicalForm() {
+		ResponseEntity<?> response = controller.createJob(List.of("https://example.org"), 1,
+				"./collected-content", false, " int8 ");
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("INT8", assertInstanceOf(CrawlJob.class, response.getBody()).getQuantization());
+	}
+
+	private static final class FakeCrawlerService extends CrawlerService {
+
+		private final List<CrawlJob> created = new ArrayList<>();
+
+		@Override
+		public CrawlJob createJob(List<String> urls, int depth, String outputDir, boolean sitemapCrawl) {
+			CrawlJob job = CrawlJob.builder().id("job").seedUrls(urls).status("CREATED").build();
+			created.add(job);
+			return job;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.hhn.studyChat.service;
+
+import com.hhn.studyChat.model.ChatMessage;
+import com.hhn.studyChat.model.RAGDocument;
+import com.hhn.studyChat.util.llm.LlmGateway;
+import com.hhn.studyChat.util.llm.LlmUnavailableException;
+import com.hhn.studyChat.util.rag.ContextPacker;
+import com.hhn.studyChat.util.rag.ExtractiveAnswer;
+import com.hhn.studyChat.util.rag.MetadataFilter;
+import com.hhn.studyChat.util.rag.Retrieval;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatServiceAsyncTest {
+
+	private static final RAGDocument DOCUMENT = RAGDocument.create("job", "https://example.org/bewerbung",
+			"Bewerbung", "", "allgemein", null);
+
+	@Test
+	void asyncChatReturnsBeforeTheLlmAnswersAndRunsOnAChatWorker() throws Exception {
+		FakeRagService rag = new FakeRagService(0);
+		rag.llmGate = new CountDownLatch(1);
+		ChatService service = new ChatService(rag, 4, 4, 4);
+
+		// Der aufrufende Servlet-Thread kehrt zurück, obwohl das LLM noch rechnet
+		CompletableFuture<ChatMessage> answer = service.processMessageAsync(message(), MetadataFilter.none());
+		assertFalse(answer.isDone());
+
+		rag.llmGate.countDown();
+		assertEquals("Antwort", answer.get(5, TimeUnit.SECONDS).getAiResponse());
+		assertEquals(1, rag.llmThreads.size());
+		assertTrue(rag.llmThreads.get(0).startsWith("chat-worker-"), rag.llmThreads.get(0));
+		service.shutdown();
+	}
+
+	@Test
+	void chatWorkersBoundConcurrentLlmCallsAndQueueTheRest() throws Exception {
+		FakeRagService rag = new FakeRagService(0);
+		rag.llmGate = new CountDownLatch(1);
+		ChatService service = new ChatService(rag, 2, 8, 4);
+
+		List<CompletableFuture<ChatMessage>> answers = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			answers.add(service.processMessageAsync(message(), MetadataFilter.none()));
+		}
+		// Beide Worker warten am LLM, die übrigen Anfragen in der Warteschlange
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (rag.running.get() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(8, service.getExecutorStats().get("queued"));
+		rag.llmGate.countDown();
+		CompletableFuture.allOf(answers.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+		assertEquals(2, rag.maxConcurrent.get());
+		assertEquals(10, rag.llmThreads.size());
+		service.shutdown();
+	}
+
+	@Test
+	void fullQueueFailsFastWithOverloaded() throws Exception {
+		FakeRagService rag = new FakeRagService(500);
+		ChatService service = new ChatService(rag, 1, 1, 4);
+		service.processMessageAsync(message(), MetadataFilter.none());
+		service.processMessageAsync(message(), MetadataFilter.none());
+
+		CompletableFuture<ChatMessage> rejected = service.processMessageAsync(message(), MetadataFilter.none());
+
+		CompletionException error = assertThrows(CompletionException.class, rejected::join);
+		assertInstanceOf(LlmGateway.OverloadedException.class, error.getCause());
+		service.shutdown();
+	}
+
+	@Test
+	void saturatedLlmIsAnsweredExtractivelyWithoutCallingIt() {
+		FakeRagService rag = new FakeRagService(30_000);
+		rag.degraded = true;
+		ChatService service = new ChatService(rag, 4, 4, 4);
+
+		ChatMessage answer = service.processMessage(message(), MetadataFilter.none());
+
+		assertTrue(answer.isExtractive());
+		assertTrue(answer.getAiResponse().startsWith(ExtractiveAnswer.NOTICE));
+		assertTrue(answer.getAiResponse().contains("Quelle: https://example.org/bewerbung"));
+		assertEquals(0, rag.maxConcurrent.get());
+		service.shutdown();
+	}
+
+	@Test
+	void gatewayRejectionFallsBackToExtractiveAnswer() {
+		FakeRagService rag = new FakeRagService(0);
+		rag.rejectLlm = true;
+		ChatService service = new ChatService(rag, 4, 4, 4);
+
+		ChatMessage answer = service.processMessage(message(), MetadataFilter.none());
+
+		assertTrue(answer.isExtractive());
+		assertTrue(answer.getAiResponse().contains("Bewerbung"));
+		service.shutdown();
+	}
+
+	@Test
+	void failingLlmFallsBackToExtractiveAnswer() {
+		FakeRagService rag = new FakeRagService(0);
+		rag.failLlm = true;
+		ChatService service = new ChatService(rag, 4, 4, 4);
+
+		ChatMessage answer = service.processMessage(message(), MetadataFilter.none());
+
+		assertTrue(answer.isExtractive());
+		assertTrue(answer.getAiResponse().startsWith(ExtractiveAnswer.NOTICE));
+		service.shutdown();
+	}
+
+	@Test
+	void failedStreamFallsBackOnlyBeforeTheFirstToken() throws Exception {
+		FakeRagService rag = new FakeRagService(0);
+		rag.failLlm = true;
+		ChatService service = new ChatService(rag, 4, 4, 4);
+
+		List<String> tokens = new ArrayList<>();
+		ChatMessage beforeFirstToken = service.processMessageStreaming(message(), MetadataFilter.none(), tokens::add)
+				.get(5, TimeUnit.SECONDS);
+		assertTrue(beforeFirstToken.isExtractive());
+		assertEquals(List.of(beforeFirstToken.getAiResponse()), tokens);
+
+		rag.streamedTokens = List.of("Die ", "Bewerbung");
+		tokens.clear();
+		ChatMessage afterTokens = service.processMessageStreaming(message(), MetadataFilter.none(), tokens::add)
+				.get(5, TimeUnit.SECONDS);
+		assertFalse(afterTokens.isExtractive());
+		assertEquals(RAGService.LLM_ERROR_RESPONSE, afterTokens.getAiResponse());
+		assertEquals(List.of("Die ", "Bewerbung"), tokens);
+		service.shutdown();
+	}
+
+	private static ChatMessage message() {
+		return ChatMessage.builder()
+				.id(UUID.randomUUID().toString())
+				.jobId("job")
+				.userMessage("Frage " + UUID.randomUUID())
+				.timestamp(LocalDateTime.now())
+				.processed(false)
+				.build();
+	}
+
+	/**
+	 * RAG-Service ohne Index und LLM: ein Treffer, die Antwort dauert llmMillis (bzw. bis llmGate öffnet)
+	 */
+	private static final class FakeRagService extends RAGService {
+
+		private final long llmMillis;
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+		private volatile boolean degraded;
+		private volatile boolean rejectLlm;
+		private volatile boolean failLlm;
+		private volatile List<String> streamedTokens = List.of();
+		private volatile CountDownLatch llmGate;
+		private final List<String> llmThreads = new CopyOnWriteArrayList<>();
+
+		private FakeRagService(long llmMillis) {
+			super(null);
+			this.llmMillis = llmMillis;
+		}
+
+		@Override
+		public String findCachedAnswer(String jobId, String query, MetadataFilter filter) {
+			return null;
+		}
+
+		@Override
+		public Retrieval retrieve(String jobId, String query, int maxResults, MetadataFilter filter) {
+			return Retrieval.of(List.of(DOCUMENT));
+		}
+
+		@Override
+		public ContextPacker.Result packContext(String query, Retrieval retrieval) {
+			return new ContextPacker.Result(List.of(new ContextPacker.Passage(DOCUMENT,
+					"Die Bewerbung erfolgt online über das Portal der Hochschule.")), 15, 1);
+		}
+
+		@Override
+		public boolean shouldAnswerExtractively() {
+			return degraded;
+		}
+
+		@Override
+		public boolean isDegradationEnabled() {
+			return true;
+		}
+
+		@Override
+		public String answerExtractively(ContextPacker.Result packed) {
+			return ExtractiveAnswer.format(packed, 3);
+		}
+
+		@Override
+		public String generateResponse(String jobId, String query, String context, MetadataFilter filter,
+									   long cacheGeneration) {
+			if (rejectLlm) {
+				throw new LlmGateway.OverloadedException("LLM ausgelastet", 5);
+			}
+			if (failLlm) {
+				throw new LlmUnavailableException("LLM-Antwort nicht innerhalb von 30 s");
+			}
+			llmThreads.add(Thread.currentThread().getName());
+			maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				CountDownLatch gate = llmGate;
+				if (gate != null) {
+					gate.await(5, TimeUnit.SECONDS);
+				}
+				Thread.sleep(llmMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			return "Antwort";
+		}
+
+		@Override
+		public CompletableFuture<String> generateResponseStreaming(String jobId, String query, String context,
+																   MetadataFilter filter, long cacheGeneration,
+																   Consumer<String> onToken) {
+			streamedTokens.forEach(onToken);
+			return failLlm
+					? CompletableFuture.failedFuture(new LlmUnavailableException("Verbindung abgebrochen"))
+					: CompletableFuture.completedFuture(String.join("", streamedTokens));
+		}
+	}
+}
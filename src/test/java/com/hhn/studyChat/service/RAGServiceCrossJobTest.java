@@ -0,0 +1,102 @@
+package com.hhn.studyChat.service;
+
+import com.hhn.studyChat.model.CrawlJob;
+import com.hhn.studyChat.util.rag.MetadataFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RAGServiceCrossJobTest {
+
+	@Test
+	void crossJobSearchIndexesMissingJobsInTheBackground() throws Exception {
+		FakeCrawlerService crawler = new FakeCrawlerService("a", "b");
+		BackgroundRagService rag = new BackgroundRagService(crawler);
+
+		assertTrue(rag.findRelevantDocuments((Collection<String>) null, "Bewerbung", 5, MetadataFilter.none()).isEmpty());
+		assertTrue(rag.findRelevantDocuments(List.of("a", "b"), "Bewerbung", 5, MetadataFilter.none()).isEmpty());
+
+		assertEquals("LOADING", crawler.getJob("a").getIndexStatus());
+		assertEquals("LOADING", crawler.getJob("b").getIndexStatus());
+		assertTrue(rag.isWarming(null));
+
+		rag.release.countDown();
+		assertTrue(rag.initialized.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("a", "b"), rag.initializedJobs);
+		assertFalse(rag.initializingThreads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	void unknownJobsAreNotWarming() {
+		RAGService rag = new RAGService(new FakeCrawlerService());
+
+		assertFalse(rag.isWarming(List.of("unbekannt")));
+		assertTrue(rag.findRelevantDocuments(List.of("unbekannt"), "Bewerbung", 5, MetadataFilter.none()).isEmpty());
+	}
+
+	@Test
+	void deletingSourceCollectionsIsRefusedOutsideSharedMode() {
+		RAGService rag = new RAGService(new FakeCrawlerService("a"));
+
+		assertThrows(IllegalArgumentException.class, () -> rag.migrateToSharedCollection(true));
+	}
+
+	private static final class FakeCrawlerService extends CrawlerService {
+
+		private final Map<String, CrawlJob> jobs = new LinkedHashMap<>();
+
+		private FakeCrawlerService(String... jobIds) {
+			for (String jobId : jobIds) {
+				jobs.put(jobId, CrawlJob.builder().id(jobId).status("COMPLETED").build());
+			}
+		}
+
+		@Override
+		public CrawlJob getJob(String jobId) {
+			return jobs.get(jobId);
+		}
+
+		@Override
+		public List<CrawlJob> getCompletedJobs() {
+			return List.copyOf(jobs.values());
+		}
+	}
+
+	/**
+	 * Zeichnet auf, wann und auf welchem Thread Jobs indexiert werden; hält die Indexierung bis release an
+	 */
+	private static final class BackgroundRagService extends RAGService {
+
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final CountDownLatch initialized = new CountDownLatch(2);
+		private final List<String> initializedJobs = new CopyOnWriteArrayList<>();
+		private final List<String> initializingThreads = new CopyOnWriteArrayList<>();
+
+		private BackgroundRagService(CrawlerService crawlerService) {
+			super(crawlerService);
+		}
+
+		@Override
+		public void initializeEmbeddingStoreForJob(String jobId) {
+			initializingThreads.add(Thread.currentThread().getName());
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			initializedJobs.add(jobId);
+			initialized.countDown();
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.hhn.studyChat.service;
+
+import com.hhn.studyChat.model.RAGDocument;
+import com.hhn.studyChat.util.rag.MetadataFilter;
+import dev.langchain4j.data.document.Metadata;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RAGServiceFilterTest {
+
+	/**
+	 * Qdrant vergleicht Keywords case-sensitiv: indexierte Metadaten und Filterwerte müssen gleich geschrieben sein
+	 */
+	@Test
+	void segmentMetadataIsIndexedInTheCaseTheFilterSearchesFor() {
+		RAGDocument doc = RAGDocument.create("job", "https://www.hs-heilbronn.de/studium", "Studium",
+				"Inhalt", "Studium", null);
+		doc.setDomain("WWW.HS-Heilbronn.de");
+		doc.setPageType("Studiengang");
+		MetadataFilter filter = MetadataFilter.of("STUDIUM", "www.hs-heilbronn.de", "studiengang");
+
+		Metadata metadata = RAGService.segmentMetadata(doc);
+
+		assertEquals(filter.getCategory(), metadata.get(MetadataFilter.CATEGORY_KEY));
+		assertEquals(filter.getDomain(), metadata.get(MetadataFilter.DOMAIN_KEY));
+		assertEquals(filter.getPageType(), metadata.get(MetadataFilter.PAGE_TYPE_KEY));
+		assertEquals("https://www.hs-heilbronn.de/studium", metadata.get("url"));
+	}
+}
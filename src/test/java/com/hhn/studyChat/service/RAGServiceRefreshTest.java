@@ -0,0 +1,227 @@
+package com.hhn.studyChat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hhn.studyChat.model.CrawlJob;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class RAGServiceRefreshTest {
+
+	private static final String JOB_ID = "job";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void refreshEmbedsOnlyChangedAndNewPagesAndDeletesRemovedOnes() throws Exception {
+		CountingModel model = new CountingModel();
+		RAGService rag = ragService(model, "mmap");
+		Crawl crawl = new Crawl(directory);
+		crawl.page("https://hs-heilbronn.de/a", "Seite A zum Studium", "2024-01-01T00:00:00Z");
+		crawl.page("https://hs-heilbronn.de/b", "Seite B zur Bewerbung", "2024-01-01T00:00:00Z");
+		crawl.page("https://hs-heilbronn.de/c", "Seite C zur Mensa", "2024-01-01T00:00:00Z");
+		crawl.page("https://hs-heilbronn.de/e", "Seite E zur Bibliothek", "2024-01-01T00:00:00Z");
+		crawl.page("https://hs-heilbronn.de/f", "Seite F zum Auslandssemester", "2024-01-01T00:00:00Z");
+		crawl.write();
+
+		rag.initializeEmbeddingStoreForJob(JOB_ID);
+		assertEquals(5, model.embedded.size());
+
+		// B geändert, C entfernt, D neu; A, E und F bleiben unverändert
+		crawl.page("https://hs-heilbronn.de/b", "Seite B zur Bewerbung, neue Fristen", "2024-02-01T00:00:00Z");
+		crawl.remove("https://hs-heilbronn.de/c");
+		crawl.page("https://hs-heilbronn.de/d", "Seite D zum Semesterticket", "2024-02-01T00:00:00Z");
+		crawl.write();
+		model.embedded.clear();
+
+		rag.refreshJobIndex(JOB_ID);
+
+		assertEquals(Set.of("Seite B zur Bewerbung, neue Fristen", "Seite D zum Semesterticket"),
+				Set.copyOf(model.embedded));
+		// Die alte Fassung von B ist gelöscht, C ist entfernt
+		assertEquals(Map.of("https://hs-heilbronn.de/a", 1, "https://hs-heilbronn.de/b", 1,
+				"https://hs-heilbronn.de/d", 1, "https://hs-heilbronn.de/e", 1, "https://hs-heilbronn.de/f", 1),
+				segmentsPerUrl(rag.embeddingStoreFor(JOB_ID)));
+
+		// Ohne Änderungen wird nichts eingebettet
+		model.embedded.clear();
+		rag.refreshJobIndex(JOB_ID);
+		assertEquals(List.of(), model.embedded);
+		rag.cleanup();
+	}
+
+	@Test
+	void pagesThatFailedToEmbedAreEmbeddedAgainOnTheNextRefresh() throws Exception {
+		CountingModel model = new CountingModel();
+		RAGService rag = ragService(model, "mmap");
+		Crawl crawl = new Crawl(directory);
+		crawl.page("https://hs-heilbronn.de/a", "Seite A zum Studium", "2024-01-01T00:00:00Z");
+		crawl.write();
+		rag.initializeEmbeddingStoreForJob(JOB_ID);
+
+		crawl.page("https://hs-heilbronn.de/b", "Seite B zur Bewerbung", "2024-02-01T00:00:00Z");
+		crawl.write();
+		model.failing = "Seite B zur Bewerbung";
+		rag.refreshJobIndex(JOB_ID);
+		assertEquals(Map.of("https://hs-heilbronn.de/a", 1), segmentsPerUrl(rag.embeddingStoreFor(JOB_ID)));
+
+		// B ist unverändert, gilt aber als nicht indexiert und wird erneut eingebettet
+		model.failing = null;
+		model.embedded.clear();
+		rag.refreshJobIndex(JOB_ID);
+		assertEquals(List.of("Seite B zur Bewerbung"), model.embedded);
+		assertEquals(Map.of("https://hs-heilbronn.de/a", 1, "https://hs-heilbronn.de/b", 1),
+				segmentsPerUrl(rag.embeddingStoreFor(JOB_ID)));
+
+		model.embedded.clear();
+		rag.refreshJobIndex(JOB_ID);
+		assertEquals(List.of(), model.embedded);
+		rag.cleanup();
+	}
+
+	@Test
+	void inMemoryStoreIsRebuiltWithTheCurrentPages() throws Exception {
+		CountingModel model = new CountingModel();
+		RAGService rag = ragService(model, "memory");
+		Crawl crawl = new Crawl(directory);
+		crawl.page("https://hs-heilbronn.de/a", "Seite A zum Studium", "2024-01-01T00:00:00Z");
+		crawl.page("https://hs-heilbronn.de/b", "Seite B zur Bewerbung", "2024-01-01T00:00:00Z");
+		crawl.write();
+		rag.initializeEmbeddingStoreForJob(JOB_ID);
+		EmbeddingStore<TextSegment> initialStore = rag.embeddingStoreFor(JOB_ID);
+
+		crawl.remove("https://hs-heilbronn.de/b");
+		crawl.page("https://hs-heilbronn.de/c", "Seite C zur Mensa", "2024-02-01T00:00:00Z");
+		crawl.write();
+		rag.refreshJobIndex(JOB_ID);
+
+		EmbeddingStore<TextSegment> rebuiltStore = rag.embeddingStoreFor(JOB_ID);
+		assertNotSame(initialStore, rebuiltStore);
+		assertEquals(Map.of("https://hs-heilbronn.de/a", 1, "https://hs-heilbronn.de/c", 1),
+				segmentsPerUrl(rebuiltStore));
+		assertEquals("https://hs-heilbronn.de/c",
+				rag.findRelevantDocuments(JOB_ID, "Seite C zur Mensa", 1).get(0).getUrl());
+		rag.cleanup();
+	}
+
+	private RAGService ragService(EmbeddingModel model, String storeType) {
+		CrawlJob job = CrawlJob.builder().id(JOB_ID).status("COMPLETED")
+				.outputDirectory(directory.toString()).build();
+		RAGService rag = new RAGService(new FakeCrawlerService(job));
+		rag.initLocalIndexing(model, storeType, directory.resolve("vector-store"));
+		return rag;
+	}
+
+	/**
+	 * Anzahl Segmente je URL im Store; jede Testseite besteht aus genau einem Segment
+	 */
+	private static Map<String, Integer> segmentsPerUrl(EmbeddingStore<TextSegment> store) {
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		for (EmbeddingMatch<TextSegment> match : store.findRelevant(CountingModel.vector("Anfrage"), 100)) {
+			counts.merge(match.embedded().metadata().get("url"), 1, Integer::sum);
+		}
+		return counts;
+	}
+
+	/**
+	 * Schreibt crawl_index.json und die Seitendateien eines Crawls, wie der Crawler sie ablegt
+	 */
+	private static final class Crawl {
+
+		private final Path directory;
+		private final Map<String, Map<String, Object>> pages = new LinkedHashMap<>();
+
+		private Crawl(Path directory) {
+			this.directory = directory;
+		}
+
+		void page(String url, String text, String crawlTimestamp) throws IOException {
+			Path file = directory.resolve("page-" + pages.size() + "-" + Math.abs(text.hashCode()) + ".json");
+			new ObjectMapper().writeValue(file.toFile(), Map.of("url", url,
+					"content", Map.of("title", url, "full_text", text)));
+			pages.put(url, Map.of("url", url, "file_path", file.toString(), "crawl_timestamp", crawlTimestamp));
+		}
+
+		void remove(String url) {
+			pages.remove(url);
+		}
+
+		void write() throws IOException {
+			Files.createDirectories(directory);
+			new ObjectMapper().writeValue(directory.resolve("crawl_index.json").toFile(),
+					Map.of("crawled_urls", new ArrayList<>(pages.values())));
+		}
+	}
+
+	/**
+	 * Zeichnet alle eingebetteten Texte auf; Texte gleich failing schlagen fehl
+	 */
+	private static final class CountingModel implements EmbeddingModel {
+
+		private final List<String> embedded = new CopyOnWriteArrayList<>();
+		private volatile String failing;
+
+		@Override
+		public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+			List<Embedding> embeddings = new ArrayList<>();
+			for (TextSegment segment : segments) {
+				if (segment.text().equals(failing)) {
+					throw new IllegalStateException("Modell nicht verfügbar");
+				}
+				embedded.add(segment.text());
+				embeddings.add(vector(segment.text()));
+			}
+			return Response.from(embeddings);
+		}
+
+		/**
+		 * Gemeinsamer Anteil plus eine Richtung je Text; Anfragen werden normalisiert eingebettet,
+		 * daher zählt die Kleinschreibung
+		 */
+		static Embedding vector(String text) {
+			float[] vector = new float[384];
+			vector[0] = 1;
+			vector[1 + Math.floorMod(text.toLowerCase(Locale.GERMAN).hashCode(), vector.length - 1)] += 2;
+			return Embedding.from(vector);
+		}
+	}
+
+	private static final class FakeCrawlerService extends CrawlerService {
+
+		private final CrawlJob job;
+
+		private FakeCrawlerService(CrawlJob job) {
+			this.job = job;
+		}
+
+		@Override
+		public CrawlJob getJob(String jobId) {
+			return JOB_ID.equals(jobId) ? job : null;
+		}
+
+		@Override
+		public List<CrawlJob> getCompletedJobs() {
+			return List.of(job);
+		}
+	}
+}
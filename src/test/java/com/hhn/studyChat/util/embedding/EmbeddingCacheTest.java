@@ -0,0 +1,81 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmbeddingCacheTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void entriesSurviveReopening() throws IOException {
+		Path file = directory.resolve("cache.bin");
+		try (EmbeddingCache cache = EmbeddingCache.open(file, 3)) {
+			cache.put("Bewerbungsfrist", Embedding.from(new float[]{1, 2, 3}));
+			cache.put("Mensa", Embedding.from(new float[]{4, 5, 6}));
+		}
+
+		try (EmbeddingCache cache = EmbeddingCache.open(file, 3)) {
+			assertEquals(2, cache.size());
+			assertArrayEquals(new float[]{1, 2, 3}, cache.get("Bewerbungsfrist").vector());
+			assertArrayEquals(new float[]{4, 5, 6}, cache.get("Mensa").vector());
+			assertNull(cache.get("Bibliothek"));
+			assertEquals(2, cache.getHits());
+			assertEquals(1, cache.getMisses());
+		}
+	}
+
+	@Test
+	void vectorsOfAnotherDimensionAreRejected() throws IOException {
+		Path file = directory.resolve("cache.bin");
+		try (EmbeddingCache cache = EmbeddingCache.open(file, 3)) {
+			assertThrows(IllegalArgumentException.class,
+					() -> cache.put("Mensa", Embedding.from(new float[]{1, 2})));
+			assertEquals(0, cache.size());
+		}
+
+		// Eine Datei für ein anderes Modell wird nicht geöffnet
+		assertThrows(IOException.class, () -> EmbeddingCache.open(file, 4));
+	}
+
+	@Test
+	void secondPutOfTheSameTextKeepsTheFirstVector() throws IOException {
+		try (EmbeddingCache cache = EmbeddingCache.open(directory.resolve("cache.bin"), 2)) {
+			cache.put("Mensa", Embedding.from(new float[]{1, 0}));
+			cache.put("Mensa", Embedding.from(new float[]{0, 1}));
+
+			assertEquals(1, cache.size());
+			assertArrayEquals(new float[]{1, 0}, cache.get("Mensa").vector());
+		}
+	}
+
+	@Test
+	void cacheGrowsAcrossRegionBoundaries() throws IOException {
+		// Eine Region fasst 8192 Datensätze
+		int entries = 8192 * 2 + 5;
+		Path file = directory.resolve("cache.bin");
+		try (EmbeddingCache cache = EmbeddingCache.open(file, 2)) {
+			for (int i = 0; i < entries; i++) {
+				cache.put("Segment " + i, Embedding.from(new float[]{i, -i}));
+			}
+			assertEquals(entries, cache.size());
+		}
+
+		try (EmbeddingCache cache = EmbeddingCache.open(file, 2)) {
+			assertEquals(entries, cache.size());
+			for (int i : new int[]{0, 8191, 8192, 16383, 16384, entries - 1}) {
+				assertArrayEquals(new float[]{i, -i}, cache.get("Segment " + i).vector());
+			}
+		}
+	}
+}
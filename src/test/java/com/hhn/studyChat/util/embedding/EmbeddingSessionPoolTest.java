@@ -0,0 +1,160 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingSessionPoolTest {
+
+	@Test
+	void reservesQuerySessionsAndGivesTheRestToIndexing() {
+		List<Session> created = new ArrayList<>();
+		EmbeddingSessionPool pool = new EmbeddingSessionPool(4, 1, () -> add(created, new Session(created.size())));
+
+		assertEquals(4, created.size());
+		assertEquals(4, pool.sessionCount());
+		assertEquals(1, pool.querySessionCount());
+		assertEquals(3, pool.indexingSessionCount());
+		assertEquals(0, embedOn(pool.queryModel()));
+	}
+
+	@Test
+	void indexingAlwaysKeepsAtLeastOneSession() {
+		EmbeddingSessionPool pool = new EmbeddingSessionPool(2, 5, new Counter());
+
+		assertEquals(1, pool.querySessionCount());
+		assertEquals(1, pool.indexingSessionCount());
+	}
+
+	@Test
+	void singleSessionIsSharedByBothLanes() {
+		AtomicInteger created = new AtomicInteger();
+		EmbeddingSessionPool pool = new EmbeddingSessionPool(1, 1, () -> new Session(created.getAndIncrement()));
+
+		assertEquals(1, created.get());
+		assertEquals(1, pool.sessionCount());
+		assertEquals(0, embedOn(pool.queryModel()));
+		assertEquals(0, embedOn(pool.indexingModel()));
+	}
+
+	@Test
+	void queryBorrowsAnIdleIndexingSessionWhileItsOwnIsBusy() throws Exception {
+		List<Session> created = new ArrayList<>();
+		EmbeddingSessionPool pool = new EmbeddingSessionPool(2, 1, () -> add(created, new Session(created.size())));
+		Session reserved = created.get(0);
+		reserved.hold();
+
+		CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> embedOn(pool.queryModel()));
+		assertTrue(reserved.entered.await(5, TimeUnit.SECONDS));
+
+		assertEquals(1, embedOn(pool.queryModel()));
+		reserved.release();
+		assertEquals(0, (int) first.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void indexingWaitsWhileAllIndexingSessionsAreBusy() throws Exception {
+		List<Session> created = new ArrayList<>();
+		EmbeddingSessionPool pool = new EmbeddingSessionPool(2, 1, () -> add(created, new Session(created.size())));
+		Session indexing = created.get(1);
+		indexing.hold();
+
+		CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> embedOn(pool.indexingModel()));
+		assertTrue(indexing.entered.await(5, TimeUnit.SECONDS));
+		CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> embedOn(pool.indexingModel()));
+
+		// Die freie Query-Session darf die Indexierung nicht übernehmen
+		assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+		assertEquals(0, embedOn(pool.queryModel()));
+
+		indexing.release();
+		assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+		assertEquals(1, (int) second.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void sessionIsReturnedWhenTheModelFails() {
+		Session failing = new Session(0);
+		failing.fail = true;
+		EmbeddingSessionPool pool = new EmbeddingSessionPool(1, 1, () -> failing);
+
+		assertThrows(IllegalStateException.class, () -> pool.queryModel().embed("frage"));
+		failing.fail = false;
+		assertEquals(0, embedOn(pool.indexingModel()));
+	}
+
+	private static int embedOn(EmbeddingModel model) {
+		return (int) model.embed("frage").content().vector()[0];
+	}
+
+	private static Session add(List<Session> created, Session session) {
+		created.add(session);
+		return session;
+	}
+
+	private static final class Counter implements Supplier<EmbeddingModel> {
+
+		private int next;
+
+		@Override
+		public EmbeddingModel get() {
+			return new Session(next++);
+		}
+	}
+
+	/**
+	 * Session, deren Embeddings ihre Nummer tragen; kann bis release angehalten werden
+	 */
+	private static final class Session implements EmbeddingModel {
+
+		private final int number;
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private volatile CountDownLatch gate = new CountDownLatch(0);
+		private volatile boolean fail;
+
+		private Session(int number) {
+			this.number = number;
+		}
+
+		private void hold() {
+			gate = new CountDownLatch(1);
+		}
+
+		private void release() {
+			gate.countDown();
+		}
+
+		@Override
+		public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+			entered.countDown();
+			if (fail) {
+				throw new IllegalStateException("ONNX-Fehler");
+			}
+			try {
+				gate.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			List<Embedding> embeddings = new ArrayList<>();
+			for (int i = 0; i < segments.size(); i++) {
+				embeddings.add(Embedding.from(new float[]{number, 1}));
+			}
+			return Response.from(embeddings);
+		}
+	}
+}
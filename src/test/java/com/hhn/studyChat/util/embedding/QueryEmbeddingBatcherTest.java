@@ -0,0 +1,160 @@
+package com.hhn.studyChat.util.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryEmbeddingBatcherTest {
+
+	private static final int CALLERS = 32;
+	private static final int QUERIES_PER_CALLER = 50;
+
+	@Test
+	void everyCallerReceivesTheEmbeddingOfItsOwnText() throws Exception {
+		SyntheticModel model = new SyntheticModel();
+		try (QueryEmbeddingBatcher batcher = new QueryEmbeddingBatcher(model, 3, 16, 1)) {
+			ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < CALLERS * 4; i++) {
+				String text = "frage " + (i % 40);
+				results.add(callers.submit(() -> batcher.embed(text).content().vector()[0] == text.hashCode()));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+			callers.shutdown();
+
+			assertTrue(batcher.getBatchCount() < CALLERS * 4);
+			assertTrue(batcher.getEmbeddedTextCount() <= model.embeddedTexts.get());
+		}
+	}
+
+	@Test
+	void singleRequestIsNotDelayedByTheWindow() throws Exception {
+		// Ein Fenster von einer Minute würde die Anfrage sonst über das get-Timeout hinaus aufhalten
+		try (QueryEmbeddingBatcher batcher = new QueryEmbeddingBatcher(new SyntheticModel(), 60_000, 16, 1)) {
+			batcher.submit("einzelne frage").get(5, TimeUnit.SECONDS);
+			assertEquals(1, batcher.getBatchCount());
+		}
+	}
+
+	@Test
+	void concurrentCallersShareModelCalls() throws Exception {
+		SyntheticModel model = new SyntheticModel();
+		try (QueryEmbeddingBatcher batcher = new QueryEmbeddingBatcher(model, 3, 16, 1)) {
+			ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+			CountDownLatch startSignal = new CountDownLatch(1);
+			List<Future<?>> results = new ArrayList<>();
+			for (int c = 0; c < CALLERS; c++) {
+				int caller = c;
+				results.add(callers.submit(() -> {
+					startSignal.await();
+					for (int q = 0; q < QUERIES_PER_CALLER; q++) {
+						batcher.embed("frage " + caller + " " + q);
+					}
+					return null;
+				}));
+			}
+			startSignal.countDown();
+			for (Future<?> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+			callers.shutdown();
+
+			assertTrue(model.calls.get() < CALLERS * QUERIES_PER_CALLER);
+			assertTrue(batcher.averageBatchSize() > 1);
+		}
+	}
+
+	@Test
+	void submitAfterCloseFailsImmediately() {
+		QueryEmbeddingBatcher batcher = new QueryEmbeddingBatcher(new SyntheticModel(), 3, 16, 1);
+		batcher.close();
+
+		CompletableFuture<Embedding> result = batcher.submit("zu spät");
+
+		assertTrue(result.isCompletedExceptionally());
+		assertThrows(IllegalStateException.class, () -> batcher.embed("zu spät"));
+	}
+
+	@Test
+	void closeCompletesRequestsThatAreStillQueued() throws Exception {
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		EmbeddingModel blocking = segments -> {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new SyntheticModel().embedAll(segments);
+		};
+		// Langes Fenster: Solange der erste Batch läuft, sammelt der Dispatcher die übrigen Anfragen und
+		// verteilt sie vor dem Schließen nicht, egal wie weit er beim Schließen gekommen ist
+		QueryEmbeddingBatcher batcher = new QueryEmbeddingBatcher(blocking, 10_000, 16, 1);
+		CompletableFuture<Embedding> running = batcher.submit("läuft");
+		// Erst schließen, wenn der erste Batch verteilt ist; sonst würde auch er abgelehnt
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+		List<CompletableFuture<Embedding>> queued = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			queued.add(batcher.submit("wartet " + i));
+		}
+
+		batcher.close();
+		release.countDown();
+
+		assertEquals((float) "läuft".hashCode(), running.get(5, TimeUnit.SECONDS).vector()[0]);
+		// Der verteilte Batch läuft zu Ende, alle übrigen werden abgelehnt; keine Anfrage bleibt hängen
+		for (CompletableFuture<Embedding> result : queued) {
+			assertTrue(result.handle((embedding, error) -> error instanceof IllegalStateException)
+					.get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Modell mit fester Kosten pro Aufruf (ONNX-Session, Tokenizer) und geringen Kosten pro Text;
+	 * eine Session verarbeitet einen Aufruf zur Zeit
+	 */
+	private static final class SyntheticModel implements EmbeddingModel {
+
+		private final AtomicInteger calls = new AtomicInteger();
+		private final AtomicInteger embeddedTexts = new AtomicInteger();
+
+		@Override
+		public synchronized Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+			calls.incrementAndGet();
+			embeddedTexts.addAndGet(segments.size());
+			sleepNanos(2_000_000 + 200_000L * segments.size());
+			List<Embedding> embeddings = new ArrayList<>();
+			for (TextSegment segment : segments) {
+				embeddings.add(Embedding.from(new float[]{segment.text().hashCode()}));
+			}
+			return Response.from(embeddings);
+		}
+
+		private static void sleepNanos(long nanos) {
+			try {
+				Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
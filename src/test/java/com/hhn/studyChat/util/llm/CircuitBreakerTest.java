@@ -0,0 +1,59 @@
+package com.hhn.studyChat.util.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+	@Test
+	void opensAfterConsecutiveFailuresAndClosesOnSuccess() {
+		CircuitBreaker circuit = new CircuitBreaker(3, 60_000);
+
+		circuit.recordFailure();
+		circuit.recordFailure();
+		circuit.recordSuccess();
+		circuit.recordFailure();
+		circuit.recordFailure();
+		assertFalse(circuit.isOpen());
+
+		circuit.recordFailure();
+		assertTrue(circuit.isOpen());
+
+		circuit.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+	}
+
+	@Test
+	void halfOpenAfterTheOpenPeriodAndReopensOnTheNextFailure() throws Exception {
+		CircuitBreaker circuit = new CircuitBreaker(2, 20);
+		circuit.trip();
+		assertTrue(circuit.isOpen());
+
+		Thread.sleep(40);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.getState());
+
+		circuit.recordFailure();
+		assertTrue(circuit.isOpen());
+		assertEquals(2L, circuit.getStats().get("opened"));
+	}
+
+	@Test
+	void halfOpenLetsOnlyASingleProbeThrough() throws Exception {
+		CircuitBreaker circuit = new CircuitBreaker(1, 20);
+		circuit.trip();
+		assertFalse(circuit.tryAcquire());
+
+		Thread.sleep(40);
+		assertFalse(circuit.isOpen());
+		assertTrue(circuit.tryAcquire());
+		assertTrue(circuit.isOpen());
+		assertFalse(circuit.tryAcquire());
+
+		circuit.recordSuccess();
+		assertTrue(circuit.tryAcquire());
+		assertTrue(circuit.tryAcquire());
+	}
+}
@@ -0,0 +1,130 @@
+package com.hhn.studyChat.util.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmGatewayTest {
+
+	@Test
+	void interactiveRequestsOvertakeQueuedBackgroundWork() throws Exception {
+		try (LlmGateway gateway = new LlmGateway(1, 10, 5_000)) {
+			CountDownLatch release = new CountDownLatch(1);
+			List<String> order = new CopyOnWriteArrayList<>();
+			ExecutorService callers = Executors.newFixedThreadPool(3);
+
+			Future<String> first = callers.submit(() -> gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> {
+				release.await();
+				return "erste";
+			}));
+			waitUntil(() -> running(gateway) == 1);
+			Future<?> background = callers.submit(() -> gateway.execute(LlmGateway.Priority.BACKGROUND,
+					() -> order.add("hintergrund")));
+			waitUntil(() -> waiting(gateway) == 1);
+			Future<?> interactive = callers.submit(() -> gateway.execute(LlmGateway.Priority.INTERACTIVE,
+					() -> order.add("chat")));
+			waitUntil(() -> waiting(gateway) == 2);
+
+			release.countDown();
+			assertEquals("erste", first.get(5, TimeUnit.SECONDS));
+			background.get(5, TimeUnit.SECONDS);
+			interactive.get(5, TimeUnit.SECONDS);
+			assertEquals(List.of("chat", "hintergrund"), order);
+			callers.shutdown();
+		}
+	}
+
+	@Test
+	void fullQueueFailsFastWithRetryAfter() throws Exception {
+		try (LlmGateway gateway = new LlmGateway(1, 1, 5_000)) {
+			CountDownLatch release = new CountDownLatch(1);
+			ExecutorService callers = Executors.newFixedThreadPool(2);
+			callers.submit(() -> gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> release.await(5, TimeUnit.SECONDS)));
+			waitUntil(() -> running(gateway) == 1);
+			callers.submit(() -> gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> "wartet"));
+			waitUntil(() -> waiting(gateway) == 1);
+
+			long start = System.nanoTime();
+			LlmGateway.OverloadedException rejected = assertThrows(LlmGateway.OverloadedException.class,
+					() -> gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> "abgelehnt"));
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+			assertTrue(rejected.getRetryAfterSeconds() >= 1);
+
+			release.countDown();
+			callers.shutdown();
+		}
+	}
+
+	@Test
+	void deadlineCoversQueueingAndExecution() throws Exception {
+		try (LlmGateway gateway = new LlmGateway(1, 5, 200)) {
+			assertThrows(TimeoutException.class, () -> gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> {
+				Thread.sleep(2_000);
+				return "zu spät";
+			}));
+
+			// Der abgebrochene Aufruf gibt seinen Platz frei, danach laufen Anfragen wieder normal
+			waitUntil(() -> running(gateway) == 0);
+			assertEquals("ok", gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> "ok"));
+		}
+	}
+
+	@Test
+	void slotsOfCallsCancelledBeforeTheyStartAreReleased() throws Exception {
+		// Deadline knapp über der Aufrufdauer: Wartende bekommen ihren Platz oft erst kurz vor Ablauf,
+		// ihr Aufruf wird dann abgebrochen, bevor er überhaupt startet
+		try (LlmGateway gateway = new LlmGateway(4, 100, 20)) {
+			ExecutorService callers = Executors.newFixedThreadPool(32);
+			List<Future<?>> calls = new ArrayList<>();
+			for (int i = 0; i < 2_000; i++) {
+				calls.add(callers.submit(() -> {
+					try {
+						return gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> {
+							Thread.sleep(4);
+							return "ok";
+						});
+					} catch (TimeoutException | LlmGateway.OverloadedException e) {
+						return "abgelehnt";
+					}
+				}));
+			}
+			for (Future<?> call : calls) {
+				call.get(30, TimeUnit.SECONDS);
+			}
+			callers.shutdown();
+
+			waitUntil(() -> running(gateway) == 0);
+			assertEquals(0, waiting(gateway));
+			assertEquals("ok", gateway.execute(LlmGateway.Priority.INTERACTIVE, () -> "ok"));
+		}
+	}
+
+	private static int running(LlmGateway gateway) {
+		return (int) gateway.getStats().get("running");
+	}
+
+	private static int waiting(LlmGateway gateway) {
+		return (int) gateway.getStats().get("waiting");
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Bedingung nicht erreicht");
+			Thread.sleep(1);
+		}
+	}
+}
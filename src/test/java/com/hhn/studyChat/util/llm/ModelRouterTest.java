@@ -0,0 +1,110 @@
+package com.hhn.studyChat.util.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModelRouterTest {
+
+	private static final String MAIN = "mistral:latest";
+	private static final String SMALL = "phi3.5:latest";
+
+	@Test
+	void prefersTheMainModelWhileItMeetsTheSlo() {
+		ModelRouter router = router(0, 60_000);
+		record(router, MAIN, 2_000, 3, true);
+		record(router, SMALL, 500, 3, true);
+
+		ModelRouter.Decision decision = router.route(300, 0);
+
+		assertEquals(MAIN, decision.model());
+		assertEquals(2_000, decision.predictedMillis());
+	}
+
+	@Test
+	void fallsBackToTheSmallerModelWhenTheMainModelMissesTheSlo() {
+		ModelRouter router = router(0, 60_000);
+		record(router, MAIN, 12_000, 3, true);
+		record(router, SMALL, 1_500, 3, true);
+
+		assertEquals(SMALL, router.route(300, 0).model());
+	}
+
+	@Test
+	void underLoadTheFastestModelIsChosenEvenIfNoneMeetsTheSlo() {
+		ModelRouter router = router(0, 60_000);
+		record(router, MAIN, 4_000, 3, true);
+		record(router, SMALL, 1_000, 3, true);
+
+		ModelRouter.Decision decision = router.route(300, 9_000);
+
+		assertEquals(SMALL, decision.model());
+		assertEquals(10_000, decision.predictedMillis());
+	}
+
+	@Test
+	void skipsModelsWhoseContextIsTooSmallOrThatKeepFailing() {
+		ModelRouter router = router(1_000, 60_000);
+		record(router, MAIN, 9_000, 3, false);
+		record(router, SMALL, 1_000, 3, true);
+
+		assertEquals(SMALL, router.route(300, 0).model());
+		assertEquals(MAIN, router.route(2_000, 0).model());
+	}
+
+	@Test
+	void unavailableModelsAreSkippedEvenWithoutSamples() {
+		ModelRouter router = router(0, 60_000);
+		record(router, MAIN, 2_000, 3, true);
+
+		assertEquals(MAIN, router.route(300, 0, model -> !SMALL.equals(model)).model());
+		assertEquals(SMALL, router.route(300, 0, model -> !MAIN.equals(model)).model());
+		assertEquals(SMALL, router.route(40_000, 0, model -> !MAIN.equals(model)).model());
+	}
+
+	@Test
+	void largerPromptsScaleThePrediction() {
+		ModelRouter router = router(0, 60_000);
+		record(router, MAIN, 3_000, 3, true);
+		record(router, SMALL, 1_000, 3, true);
+
+		assertEquals(MAIN, router.route(300, 0).model());
+		assertEquals(SMALL, router.route(900, 0).model());
+	}
+
+	@Test
+	void oldSamplesExpireSoASlowModelIsTriedAgain() throws Exception {
+		ModelRouter router = router(0, 50);
+		record(router, MAIN, 12_000, 3, true);
+		record(router, SMALL, 1_000, 3, true);
+		assertEquals(SMALL, router.route(300, 0).model());
+
+		Thread.sleep(80);
+
+		ModelRouter.Decision decision = router.route(300, 0);
+		assertEquals(MAIN, decision.model());
+		assertEquals(-1, decision.predictedMillis());
+		assertEquals(0, ((Map<?, ?>) ((Map<?, ?>) router.getStats().get("models")).get(MAIN)).get("samples"));
+		assertEquals(6, ((List<?>) router.getStats().get("recentRequests")).size());
+	}
+
+	/**
+	 * Hauptmodell mit großem Kontext, kleines Modell mit smallContextTokens (0 = unbegrenzt), SLO 8 s
+	 */
+	private static ModelRouter router(int smallContextTokens, long windowMillis) {
+		Map<String, Integer> models = new LinkedHashMap<>();
+		models.put(MAIN, 32_768);
+		models.put(SMALL, smallContextTokens);
+		return new ModelRouter(models, 8_000, windowMillis, 0.5, 3);
+	}
+
+	private static void record(ModelRouter router, String model, long millis, int count, boolean success) {
+		for (int i = 0; i < count; i++) {
+			router.record(new ModelRouter.Decision(model, "test", -1), 300, millis, success);
+		}
+	}
+}
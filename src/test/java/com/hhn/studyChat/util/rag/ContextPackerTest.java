@@ -0,0 +1,94 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPackerTest {
+
+	@Test
+	void mergesAdjacentSegmentsWithoutRepeatingTheOverlap() {
+		RAGDocument doc = document("https://example.org/bewerbung");
+		List<ContextPacker.ScoredSegment> segments = List.of(
+				new ContextPacker.ScoredSegment(0, "Die Bewerbung erfolgt online über das Portal der Hochschule.", 0.9),
+				new ContextPacker.ScoredSegment(1, "über das Portal der Hochschule. Die Frist endet am 15. Juli.", 0.8),
+				new ContextPacker.ScoredSegment(2, "Die Mensa ist montags bis freitags geöffnet.", 0.1));
+
+		ContextPacker.Result result = new ContextPacker(1_000, 2, 100).pack(List.of(doc), List.of(segments));
+
+		assertEquals(1, result.passages().size());
+		assertEquals(2, result.segmentCount());
+		assertEquals("Die Bewerbung erfolgt online über das Portal der Hochschule. Die Frist endet am 15. Juli.",
+				result.passages().get(0).text());
+	}
+
+	@Test
+	void separatesNonAdjacentSegmentsAndSkipsDuplicates() {
+		RAGDocument first = document("https://example.org/a");
+		RAGDocument second = document("https://example.org/b");
+		String footer = "Hochschule Heilbronn, Max-Planck-Straße 39, 74081 Heilbronn";
+		List<ContextPacker.ScoredSegment> firstSegments = List.of(
+				new ContextPacker.ScoredSegment(0, "Das Semester beginnt im Oktober.", 0.9),
+				new ContextPacker.ScoredSegment(1, footer, 0.8),
+				new ContextPacker.ScoredSegment(2, "Vorlesungsfreie Zeit ab Februar.", 0.7),
+				new ContextPacker.ScoredSegment(3, "Anmeldung zu Prüfungen im Juni.", 0.2));
+		List<ContextPacker.ScoredSegment> secondSegments = List.of(
+				new ContextPacker.ScoredSegment(0, footer, 0.95));
+
+		ContextPacker.Result result = new ContextPacker(1_000, 3, 100)
+				.pack(List.of(first, second), List.of(firstSegments, secondSegments));
+
+		assertEquals("Das Semester beginnt im Oktober." + ContextPacker.GAP + "Vorlesungsfreie Zeit ab Februar.",
+				result.passages().get(0).text());
+		assertEquals(footer, result.passages().get(1).text());
+		assertEquals(3, result.segmentCount());
+	}
+
+	@Test
+	void packsOnlyTheMatchedSegmentsOfADocument() {
+		RAGDocument doc = document("https://example.org/pruefungen");
+		// Treffer der Vektorsuche: Positionen 4, 5 und 9 des Dokuments
+		List<ContextPacker.ScoredSegment> matched = List.of(
+				new ContextPacker.ScoredSegment(4, "Prüfungen finden im Juli statt, die Anmeldung", 0.8),
+				new ContextPacker.ScoredSegment(5, "die Anmeldung läuft über das Campus-Portal.", 0.9),
+				new ContextPacker.ScoredSegment(9, "Rücktritt bis eine Woche vor der Prüfung.", 0.7));
+
+		ContextPacker.Result result = new ContextPacker(1_000, 3, 100).pack(List.of(doc), List.of(matched));
+
+		assertEquals("Prüfungen finden im Juli statt, die Anmeldung läuft über das Campus-Portal."
+				+ ContextPacker.GAP + "Rücktritt bis eine Woche vor der Prüfung.", result.passages().get(0).text());
+		assertEquals(3, result.segmentCount());
+	}
+
+	@Test
+	void staysWithinTheTokenBudgetAndPrefersHigherRankedDocuments() {
+		List<RAGDocument> documents = new ArrayList<>();
+		List<List<ContextPacker.ScoredSegment>> segments = new ArrayList<>();
+		for (int d = 0; d < 5; d++) {
+			documents.add(document("https://example.org/" + d));
+			List<ContextPacker.ScoredSegment> documentSegments = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				documentSegments.add(new ContextPacker.ScoredSegment(i, "Dokument " + d + " Segment " + i + " " + "x".repeat(480), i));
+			}
+			segments.add(documentSegments);
+		}
+
+		ContextPacker.Result result = new ContextPacker(400, 3, 100).pack(documents, segments);
+
+		assertTrue(result.tokens() <= 400);
+		assertEquals(3, result.passages().size());
+		assertEquals(documents.get(0), result.passages().get(0).document());
+		assertTrue(result.passages().get(0).text().startsWith("Dokument 0 Segment 9"));
+		assertFalse(result.passages().stream().anyMatch(p -> p.document() == documents.get(4)));
+	}
+
+	private static RAGDocument document(String url) {
+		return RAGDocument.create("job", url, url, "", "allgemein", null);
+	}
+}
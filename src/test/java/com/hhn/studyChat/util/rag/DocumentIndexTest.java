@@ -0,0 +1,72 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DocumentIndexTest {
+
+	@Test
+	void resolvesSegmentsByDocumentIdAndUrl() {
+		List<RAGDocument> documents = createDocuments(3);
+		DocumentIndex index = new DocumentIndex(documents);
+
+		RAGDocument second = documents.get(1);
+		TextSegment byId = TextSegment.from("text", new Metadata()
+				.add("url", "https://example.org/other")
+				.add(DocumentIndex.DOCUMENT_ID_KEY, second.getId()));
+		TextSegment byUrl = TextSegment.from("text", new Metadata().add("url", second.getUrl()));
+		TextSegment unknown = TextSegment.from("text", new Metadata().add("url", "https://example.org/unknown"));
+
+		assertSame(second, index.resolve(byId));
+		assertSame(second, index.resolve(byUrl));
+		assertNull(index.resolve(unknown));
+	}
+
+	@Test
+	void staleDocumentIdFallsBackToTheUrl() {
+		List<RAGDocument> documents = createDocuments(2);
+		DocumentIndex index = new DocumentIndex(documents);
+
+		// Dokument-ID aus einem früheren Crawl, die Seite existiert unter derselben URL weiter
+		TextSegment stale = TextSegment.from("text", new Metadata()
+				.add("url", documents.get(0).getUrl())
+				.add(DocumentIndex.DOCUMENT_ID_KEY, "veraltet"));
+		TextSegment withoutMetadata = TextSegment.from("text");
+
+		assertSame(documents.get(0), index.resolve(stale));
+		assertNull(index.resolve(withoutMetadata));
+	}
+
+	@Test
+	void everyDocumentOfALargeJobResolvesToItself() {
+		List<RAGDocument> documents = createDocuments(10_000);
+		DocumentIndex index = new DocumentIndex(documents);
+
+		assertEquals(documents.size(), index.size());
+		for (RAGDocument doc : documents) {
+			TextSegment segment = TextSegment.from("text", new Metadata()
+					.add("url", doc.getUrl())
+					.add(DocumentIndex.DOCUMENT_ID_KEY, doc.getId()));
+			assertSame(doc, index.resolve(segment));
+			assertSame(doc, index.getByUrl(doc.getUrl()));
+		}
+	}
+
+	private List<RAGDocument> createDocuments(int count) {
+		List<RAGDocument> documents = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			documents.add(RAGDocument.create("job", "https://www.hs-heilbronn.de/seite/" + i,
+					"Seite " + i, "Inhalt " + i, "studium", "seite_" + i + ".json"));
+		}
+		return documents;
+	}
+}
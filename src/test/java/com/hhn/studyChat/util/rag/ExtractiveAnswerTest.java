@@ -0,0 +1,43 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExtractiveAnswerTest {
+
+	@Test
+	void listsTheTopPassagesWithTitleAndUrl() {
+		List<ContextPacker.Passage> passages = new ArrayList<>();
+		for (int i = 1; i <= 4; i++) {
+			RAGDocument doc = RAGDocument.create("job", "https://example.org/" + i, "Seite " + i, "", "allgemein", null);
+			passages.add(new ContextPacker.Passage(doc, "Auszug " + i));
+		}
+
+		String answer = ExtractiveAnswer.format(new ContextPacker.Result(passages, 20, 4), 3);
+
+		assertTrue(answer.startsWith(ExtractiveAnswer.NOTICE));
+		assertTrue(answer.contains("1. Seite 1\n„Auszug 1“\nQuelle: https://example.org/1"));
+		assertTrue(answer.contains("Quelle: https://example.org/3"));
+		assertFalse(answer.contains("https://example.org/4"));
+	}
+
+	@Test
+	void withoutPassagesSaysSoInsteadOfListingNothing() {
+		assertEquals(ExtractiveAnswer.NO_RESULTS, ExtractiveAnswer.format(new ContextPacker.Result(List.of(), 0, 0), 3));
+	}
+
+	@Test
+	void longExcerptsAreCutAtAWordBoundary() {
+		String excerpt = ExtractiveAnswer.excerpt("wort ".repeat(200));
+
+		assertTrue(excerpt.length() <= 402);
+		assertTrue(excerpt.endsWith("wort …"));
+	}
+}
@@ -0,0 +1,92 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LexicalIndexTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void ranksExactTermMatchesFirst() {
+		List<RAGDocument> documents = List.of(
+				document("https://example.org/bwl", "Betriebswirtschaft", "Der Studiengang Betriebswirtschaft im Überblick."),
+				document("https://example.org/wi", "Wirtschaftsinformatik", "Wirtschaftsinformatik verbindet Informatik und Wirtschaft."),
+				document("https://example.org/raum", "Lageplan", "Die Vorlesung findet in Raum A2.14 statt."));
+		LexicalIndex index = LexicalIndex.build(documents);
+
+		LexicalIndex.Result result = index.search("Was ist Wirtschaftsinformatik?", 3);
+		assertEquals(1, result.hits().get(0).document());
+		assertTrue(result.isDecisive(2.0));
+
+		LexicalIndex.Result room = index.search("Wo ist Raum A2.14", 3);
+		assertEquals(2, room.hits().get(0).document());
+
+		assertFalse(index.search("Studiengang Informatik", 3).isDecisive(2.0));
+		assertTrue(index.search("Mensa", 3).hits().isEmpty());
+	}
+
+	@Test
+	void persistedIndexIsReusedOnlyForTheSameDocuments() throws Exception {
+		List<RAGDocument> documents = createDocuments(500, new Random(42));
+		LexicalIndex index = LexicalIndex.build(documents);
+		Path file = tempDir.resolve(LexicalIndex.INDEX_FILE);
+		index.write(file);
+
+		LexicalIndex loaded = LexicalIndex.load(file, documents);
+		assertNotNull(loaded);
+		assertEquals(index.termCount(), loaded.termCount());
+		assertEquals(index.search("thema17 modul3", 5).hits(), loaded.search("thema17 modul3", 5).hits());
+
+		List<RAGDocument> changed = new ArrayList<>(documents);
+		changed.set(0, document(documents.get(0).getUrl(), "Neu", "Geänderter Inhalt"));
+		assertNull(LexicalIndex.load(file, changed));
+	}
+
+	@Test
+	void searchReturnsAtMostMaxResultsInDescendingScoreOrderAndHonoursTheFilter() {
+		List<RAGDocument> documents = createDocuments(2_000, new Random(7));
+		LexicalIndex index = LexicalIndex.build(documents);
+
+		List<LexicalIndex.Hit> hits = index.search("thema17 modul3", 10).hits();
+		assertEquals(10, hits.size());
+		for (int i = 1; i < hits.size(); i++) {
+			assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+		}
+
+		List<LexicalIndex.Hit> evenOnly = index.search("thema17 modul3", 10, doc -> doc % 2 == 0).hits();
+		assertFalse(evenOnly.isEmpty());
+		assertTrue(evenOnly.stream().allMatch(hit -> hit.document() % 2 == 0));
+	}
+
+	private static List<RAGDocument> createDocuments(int count, Random random) {
+		List<RAGDocument> documents = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int w = 0; w < 200; w++) {
+				text.append(random.nextBoolean() ? "thema" + random.nextInt(200) : "modul" + random.nextInt(50)).append(' ');
+			}
+			documents.add(document("https://example.org/seite/" + i, "Seite " + i, text.toString()));
+		}
+		return documents;
+	}
+
+	private static RAGDocument document(String url, String title, String content) {
+		RAGDocument doc = RAGDocument.create("job", url, title, content, "allgemein", null);
+		doc.setContentHash(Integer.toHexString(content.hashCode()));
+		return doc;
+	}
+}
@@ -0,0 +1,45 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetadataFilterTest {
+
+	@Test
+	void blankValuesDoNotFilter() {
+		assertSame(MetadataFilter.none(), MetadataFilter.of(null, " ", ""));
+		assertTrue(MetadataFilter.none().matches(document("Studium", null, null)));
+	}
+
+	@Test
+	void valuesAreTrimmedAndLowercased() {
+		MetadataFilter filter = MetadataFilter.of(" Studium ", "WWW.HS-Heilbronn.de", null);
+
+		assertEquals("studium", filter.getCategory());
+		assertEquals("www.hs-heilbronn.de", filter.getDomain());
+		assertNull(filter.getPageType());
+		assertEquals("category=studium,domain=www.hs-heilbronn.de", filter.toString());
+	}
+
+	@Test
+	void matchesDocumentsRegardlessOfCase() {
+		MetadataFilter filter = MetadataFilter.of("studium", null, "Modul");
+
+		assertTrue(filter.matches(document("Studium", "www.hs-heilbronn.de", "modul")));
+		assertFalse(filter.matches(document("Studium", "www.hs-heilbronn.de", null)));
+		assertFalse(filter.matches(document("Forschung", "www.hs-heilbronn.de", "modul")));
+	}
+
+	private static RAGDocument document(String category, String domain, String pageType) {
+		RAGDocument doc = RAGDocument.create("job", "https://example.org/seite", "Seite", "Inhalt", category, null);
+		doc.setDomain(domain);
+		doc.setPageType(pageType);
+		return doc;
+	}
+}
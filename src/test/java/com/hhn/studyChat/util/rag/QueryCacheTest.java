@@ -0,0 +1,87 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryCacheTest {
+
+	private static final Retrieval FIRST = Retrieval.of(List.of(
+			RAGDocument.create("job", "https://example.org/a", "A", "", "allgemein", null)));
+	private static final Retrieval SECOND = Retrieval.of(List.of(
+			RAGDocument.create("job", "https://example.org/b", "B", "", "allgemein", null)));
+
+	@Test
+	void queriesAreNormalizedBeforeLookup() {
+		assertEquals("wann ist die bewerbungsfrist", QueryCache.normalize("  Wann ist  die\tBewerbungsfrist?! "));
+		assertEquals(QueryCache.normalize("Mensa Öffnungszeiten."), QueryCache.normalize("mensa öffnungszeiten"));
+	}
+
+	@Test
+	void resultsAreCachedPerJobQueryAndResultCount() {
+		QueryCache cache = new QueryCache(10, 0);
+		cache.putResult("job", "mensa", 5, FIRST, cache.generation("job"));
+
+		assertSame(FIRST, cache.getResult("job", "mensa", 5));
+		assertNull(cache.getResult("job", "mensa", 10));
+		assertNull(cache.getResult("anderer-job", "mensa", 5));
+	}
+
+	@Test
+	void leastRecentlyUsedEntryIsEvicted() {
+		QueryCache cache = new QueryCache(2, 0);
+		cache.putResult("job", "erste", 5, FIRST, cache.generation("job"));
+		cache.putResult("job", "zweite", 5, SECOND, cache.generation("job"));
+		// Zugriff macht "erste" zum zuletzt genutzten Eintrag
+		cache.getResult("job", "erste", 5);
+		cache.putResult("job", "dritte", 5, SECOND, cache.generation("job"));
+
+		assertSame(FIRST, cache.getResult("job", "erste", 5));
+		assertNull(cache.getResult("job", "zweite", 5));
+		assertEquals(2, cache.getStats().get("resultEntries"));
+	}
+
+	@Test
+	void entriesExpireAfterTheTtl() throws InterruptedException {
+		QueryCache cache = new QueryCache(10, 200);
+		Embedding embedding = Embedding.from(new float[]{1, 0});
+		cache.putEmbedding("mensa", embedding);
+		cache.putResult("job", "mensa", 5, FIRST, cache.generation("job"));
+		assertSame(embedding, cache.getEmbedding("mensa"));
+
+		Thread.sleep(300);
+
+		assertNull(cache.getEmbedding("mensa"));
+		assertNull(cache.getResult("job", "mensa", 5));
+		assertEquals(0, cache.getStats().get("resultEntries"));
+	}
+
+	@Test
+	void invalidationDropsTheJobsResultsAndResultsComputedBeforeIt() {
+		QueryCache cache = new QueryCache(10, 0);
+		cache.putResult("job", "mensa", 5, FIRST, cache.generation("job"));
+		cache.putResult("anderer-job", "mensa", 5, SECOND, cache.generation("anderer-job"));
+		Embedding embedding = Embedding.from(new float[]{1, 0});
+		cache.putEmbedding("mensa", embedding);
+		long generation = cache.generation("job");
+
+		// Re-Crawl, während eine Suche noch läuft
+		cache.invalidateJob("job");
+		cache.putResult("job", "bibliothek", 5, FIRST, generation);
+
+		assertNull(cache.getResult("job", "mensa", 5));
+		assertNull(cache.getResult("job", "bibliothek", 5));
+		assertSame(SECOND, cache.getResult("anderer-job", "mensa", 5));
+		// Query-Embeddings hängen nicht vom Index ab und bleiben erhalten
+		assertSame(embedding, cache.getEmbedding("mensa"));
+
+		cache.putResult("job", "mensa", 5, SECOND, cache.generation("job"));
+		assertSame(SECOND, cache.getResult("job", "mensa", 5));
+	}
+}
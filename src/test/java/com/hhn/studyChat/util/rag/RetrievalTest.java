@@ -0,0 +1,66 @@
+package com.hhn.studyChat.util.rag;
+
+import com.hhn.studyChat.model.RAGDocument;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrievalTest {
+
+	private static final RAGDocument FIRST = RAGDocument.create("job", "https://example.org/a", "A", "", "allgemein", null);
+	private static final RAGDocument SECOND = RAGDocument.create("job", "https://example.org/b", "B", "", "allgemein", null);
+
+	@Test
+	void documentsAreRankedByTheirFirstMatchAndKeepTheirSegmentsInTextOrder() {
+		Retrieval.Builder builder = new Retrieval.Builder();
+		assertTrue(builder.addDocument(SECOND));
+		builder.addMatch(SECOND, segment("b3", 3), 0.9);
+		assertTrue(builder.addDocument(FIRST));
+		builder.addMatch(FIRST, segment("a0", 0), 0.8);
+		assertFalse(builder.addDocument(SECOND));
+		builder.addMatch(SECOND, segment("b1", 1), 0.7);
+
+		Retrieval retrieval = builder.build();
+
+		assertEquals(List.of(SECOND, FIRST), retrieval.documents());
+		assertEquals(List.of(new ContextPacker.ScoredSegment(1, "b1", 0.7), new ContextPacker.ScoredSegment(3, "b3", 0.9)),
+				retrieval.segmentsOf(SECOND));
+	}
+
+	@Test
+	void repeatedSegmentKeepsItsBestScoreAndSegmentsWithoutPositionAreIgnored() {
+		Retrieval.Builder builder = new Retrieval.Builder();
+		builder.addDocument(FIRST);
+		builder.addMatch(FIRST, segment("a2", 2), 0.4);
+		builder.addMatch(FIRST, segment("a2", 2), 0.6);
+		builder.addMatch(FIRST, TextSegment.from("ohne Position", new Metadata().add("url", FIRST.getUrl())), 0.9);
+
+		assertEquals(List.of(new ContextPacker.ScoredSegment(2, "a2", 0.6)), builder.build().segmentsOf(FIRST));
+	}
+
+	@Test
+	void limitKeepsTheSegmentsOfTheRemainingDocuments() {
+		Retrieval.Builder builder = new Retrieval.Builder();
+		builder.addDocument(FIRST);
+		builder.addMatch(FIRST, segment("a0", 0), 0.8);
+		builder.addDocument(SECOND);
+		builder.addMatch(SECOND, segment("b0", 0), 0.7);
+
+		Retrieval limited = builder.build().limit(1);
+
+		assertEquals(List.of(FIRST), limited.documents());
+		assertEquals(1, limited.segmentsOf(FIRST).size());
+		assertTrue(limited.segmentsOf(SECOND).isEmpty());
+		assertTrue(Retrieval.of(List.of(SECOND)).segmentsOf(SECOND).isEmpty());
+	}
+
+	private static TextSegment segment(String text, int index) {
+		return TextSegment.from(text, new Metadata().add(DocumentIndex.SEGMENT_INDEX_KEY, String.valueOf(index)));
+	}
+}
@@ -0,0 +1,49 @@
+package com.hhn.studyChat.util.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SemanticAnswerCacheTest {
+
+	private static final Embedding QUESTION = Embedding.from(new float[]{1, 0, 0});
+	private static final Embedding SIMILAR = Embedding.from(new float[]{0.99f, 0.05f, 0});
+	private static final Embedding OTHER = Embedding.from(new float[]{0, 1, 0});
+
+	@Test
+	void similarQuestionsReceiveTheCachedAnswer() {
+		SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 10, 0);
+		cache.put("job", QUESTION, "Antwort", cache.generation("job"));
+
+		assertEquals("Antwort", cache.findAnswer("job", SIMILAR));
+		assertNull(cache.findAnswer("job", OTHER));
+		assertNull(cache.findAnswer("anderer-job", QUESTION));
+	}
+
+	@Test
+	void answerGeneratedBeforeAnInvalidationIsDropped() {
+		SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 10, 0);
+		long generation = cache.generation("job");
+
+		// Re-Crawl, während die Antwort noch generiert wird
+		cache.invalidateJob("job");
+		cache.put("job", QUESTION, "veraltete Antwort", generation);
+
+		assertNull(cache.findAnswer("job", QUESTION));
+
+		cache.put("job", QUESTION, "neue Antwort", cache.generation("job"));
+		assertEquals("neue Antwort", cache.findAnswer("job", QUESTION));
+	}
+
+	@Test
+	void leastRecentlyUsedAnswerIsEvicted() {
+		SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 1, 0);
+		cache.put("job", QUESTION, "erste", cache.generation("job"));
+		cache.put("job", OTHER, "zweite", cache.generation("job"));
+
+		assertNull(cache.findAnswer("job", QUESTION));
+		assertEquals("zweite", cache.findAnswer("job", OTHER));
+	}
+}
@@ -0,0 +1,90 @@
+package com.hhn.studyChat.util.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+	@Test
+	void concurrentCallsWithTheSameKeyShareOneExecution() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		AtomicInteger executions = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(callers.submit(() -> singleFlight.execute("frage", () -> {
+				executions.incrementAndGet();
+				await(release);
+				return "antwort";
+			})));
+		}
+		waitUntil(() -> singleFlight.getCoalesced() == 7);
+		release.countDown();
+
+		for (Future<String> result : results) {
+			assertEquals("antwort", result.get(5, TimeUnit.SECONDS));
+		}
+		callers.shutdown();
+		assertEquals(1, executions.get());
+		assertEquals(1, singleFlight.getExecuted());
+
+		// Nach Abschluss wird wieder selbst gerechnet
+		singleFlight.execute("frage", () -> "antwort " + executions.incrementAndGet());
+		assertEquals(2, executions.get());
+	}
+
+	@Test
+	void failuresReachEveryWaitingCaller() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+
+		Future<String> leader = callers.submit(() -> singleFlight.execute("frage", () -> {
+			await(release);
+			throw new IllegalStateException("LLM nicht erreichbar");
+		}));
+		waitUntil(() -> singleFlight.getExecuted() == 1);
+		Future<String> follower = callers.submit(() -> singleFlight.execute("frage", () -> "nie ausgeführt"));
+		waitUntil(() -> singleFlight.getCoalesced() == 1);
+		release.countDown();
+
+		ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+		ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+		assertInstanceOf(IllegalStateException.class, followerError.getCause());
+		callers.shutdown();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Bedingung nicht erreicht");
+			Thread.sleep(1);
+		}
+	}
+}
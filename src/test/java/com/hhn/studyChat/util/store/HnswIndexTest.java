@@ -0,0 +1,171 @@
+package com.hhn.studyChat.util.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+	private static final int DIMENSION = 384;
+
+	@Test
+	void findsExactNeighbourInSmallGraph() {
+		float[][] data = clusteredVectors(500, 20, new Random(1));
+		HnswIndex index = build(data, new HnswIndex.Settings(16, 100, 50));
+
+		for (int node = 0; node < data.length; node += 50) {
+			List<HnswIndex.Neighbor> result = index.search(data[node], 1, null);
+			assertEquals(node, result.get(0).node());
+		}
+	}
+
+	@Test
+	void skipsFilteredNodes() {
+		float[][] data = clusteredVectors(500, 20, new Random(2));
+		HnswIndex index = build(data, new HnswIndex.Settings(16, 100, 50));
+
+		List<HnswIndex.Neighbor> result = index.search(data[7], 5, node -> node != 7);
+		assertEquals(5, result.size());
+		for (HnswIndex.Neighbor neighbor : result) {
+			assertTrue(neighbor.node() != 7);
+		}
+	}
+
+	@Test
+	void recallAgainstBruteForceIsHighAndGrowsWithEfSearch() {
+		int k = 10;
+		Random random = new Random(42);
+		float[][] data = clusteredVectors(3_000, 60, random);
+		float[][] queries = clusteredVectors(100, 60, random);
+		HnswIndex index = build(data, new HnswIndex.Settings(16, 100, 64));
+
+		List<Set<Integer>> exact = new ArrayList<>();
+		for (float[] query : queries) {
+			exact.add(bruteForce(data, query, k));
+		}
+
+		double narrow = recall(withEfSearch(index, data, 16), queries, exact, k);
+		double standard = recall(withEfSearch(index, data, 64), queries, exact, k);
+		double wide = recall(withEfSearch(index, data, 256), queries, exact, k);
+
+		assertTrue(standard > 0.9, "Recall@10 bei efSearch=64: " + standard);
+		assertTrue(narrow <= standard && standard <= wide,
+				"Recall@10 bei efSearch 16/64/256: " + narrow + "/" + standard + "/" + wide);
+	}
+
+	@Test
+	void reloadedGraphReturnsTheSameNeighbours() {
+		float[][] data = clusteredVectors(1_000, 20, new Random(3));
+		HnswIndex index = build(data, new HnswIndex.Settings(16, 100, 50));
+		HnswIndex reloaded = withEfSearch(index, data, 50);
+
+		for (int node = 0; node < data.length; node += 100) {
+			assertEquals(index.search(data[node], 5, null), reloaded.search(data[node], 5, null));
+		}
+	}
+
+	private static double recall(HnswIndex index, float[][] queries, List<Set<Integer>> exact, int k) {
+		int found = 0;
+		for (int q = 0; q < queries.length; q++) {
+			for (HnswIndex.Neighbor neighbor : index.search(queries[q], k, null)) {
+				if (exact.get(q).contains(neighbor.node())) {
+					found++;
+				}
+			}
+		}
+		return (double) found / (queries.length * k);
+	}
+
+	private static HnswIndex withEfSearch(HnswIndex index, float[][] data, int efSearch) {
+		// Graph teilen, nur die Suchparameter ändern
+		HnswIndex.Settings settings = index.getSettings();
+		try {
+			Path file = Files.createTempFile("hnsw", ".graph");
+			index.write(file);
+			HnswIndex tuned = HnswIndex.read(file, new HnswIndex.Settings(settings.m(), settings.efConstruction(), efSearch), vectors(data));
+			Files.delete(file);
+			return tuned;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static HnswIndex build(float[][] data, HnswIndex.Settings settings) {
+		HnswIndex index = new HnswIndex(settings, vectors(data));
+		for (int node = 0; node < data.length; node++) {
+			index.insert(node);
+		}
+		return index;
+	}
+
+	private static HnswIndex.Vectors vectors(float[][] data) {
+		return new HnswIndex.Vectors() {
+			@Override
+			public float[] vector(int node) {
+				return data[node];
+			}
+
+			@Override
+			public double similarity(float[] query, int node) {
+				return dot(query, data[node]);
+			}
+		};
+	}
+
+	private static Set<Integer> bruteForce(float[][] data, float[] query, int k) {
+		double[] scores = new double[data.length];
+		List<Integer> nodes = new ArrayList<>();
+		for (int node = 0; node < data.length; node++) {
+			scores[node] = dot(query, data[node]);
+			nodes.add(node);
+		}
+		nodes.sort((a, b) -> Double.compare(scores[b], scores[a]));
+		return new HashSet<>(nodes.subList(0, k));
+	}
+
+	/**
+	 * Normierte Vektoren um zufällige Zentren, ähnlich der Verteilung echter Text-Embeddings
+	 */
+	private static float[][] clusteredVectors(int count, int clusters, Random random) {
+		Random centerRandom = new Random(clusters);
+		float[][] centers = new float[clusters][DIMENSION];
+		for (float[] center : centers) {
+			for (int i = 0; i < DIMENSION; i++) {
+				center[i] = (float) centerRandom.nextGaussian();
+			}
+		}
+
+		float[][] vectors = new float[count][DIMENSION];
+		for (float[] vector : vectors) {
+			float[] center = centers[random.nextInt(clusters)];
+			double norm = 0;
+			for (int i = 0; i < DIMENSION; i++) {
+				vector[i] = center[i] + (float) random.nextGaussian() * 1.5f;
+				norm += vector[i] * vector[i];
+			}
+			float scale = (float) (1 / Math.sqrt(norm));
+			for (int i = 0; i < DIMENSION; i++) {
+				vector[i] *= scale;
+			}
+		}
+		return vectors;
+	}
+
+	private static double dot(float[] a, float[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+}
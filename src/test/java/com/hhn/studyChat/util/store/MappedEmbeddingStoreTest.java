@@ -0,0 +1,148 @@
+package com.hhn.studyChat.util.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedEmbeddingStoreTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void findsNearestSegmentsAfterReopen() throws Exception {
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 3)) {
+			store.addAll(
+					List.of(Embedding.from(new float[]{1, 0, 0}), Embedding.from(new float[]{0, 1, 0}), Embedding.from(new float[]{0, 0, 1})),
+					List.of(segment("x", "https://example.org/x"), segment("y", "https://example.org/y"), segment("z", "https://example.org/z")));
+		}
+
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 3)) {
+			assertEquals(3, store.size());
+
+			List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{0.1f, 0.9f, 0}), 2, 0.0);
+			assertEquals(2, matches.size());
+			assertEquals("y", matches.get(0).embedded().text());
+			assertEquals("https://example.org/y", matches.get(0).embedded().metadata().get("url"));
+			assertEquals("x", matches.get(1).embedded().text());
+			assertTrue(matches.get(0).score() > matches.get(1).score());
+		}
+	}
+
+	@Test
+	void removedUrlsAreSkippedAndStayRemoved() throws Exception {
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 2)) {
+			store.add(Embedding.from(new float[]{1, 0}), segment("alt", "https://example.org/a"));
+			store.add(Embedding.from(new float[]{0, 1}), segment("b", "https://example.org/b"));
+			assertTrue(store.containsDocument("https://example.org/a", "hash-https://example.org/a"));
+
+			assertEquals(1, store.removeByUrl(List.of("https://example.org/a")));
+			assertFalse(store.containsDocument("https://example.org/a", "hash-https://example.org/a"));
+		}
+
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 2)) {
+			assertEquals(1, store.size());
+			assertEquals(1, store.getDeletedCount());
+
+			List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{1, 0}), 5, 0.0);
+			assertEquals(1, matches.size());
+			assertEquals("b", matches.get(0).embedded().text());
+		}
+	}
+
+	@Test
+	void hnswGraphIsPersistedWithTheStore() throws Exception {
+		HnswIndex.Settings settings = new HnswIndex.Settings(4, 20, 10);
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 2, settings)) {
+			for (int i = 0; i < 50; i++) {
+				double angle = Math.PI / 2 * i / 49;
+				store.add(Embedding.from(new float[]{(float) Math.cos(angle), (float) Math.sin(angle)}),
+						segment("s" + i, "https://example.org/" + i));
+			}
+		}
+
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 2, settings)) {
+			List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{0, 1}), 2, 0.0);
+			assertEquals("s49", matches.get(0).embedded().text());
+			assertEquals("s48", matches.get(1).embedded().text());
+
+			store.removeByUrl(List.of("https://example.org/49"));
+			assertEquals("s48", store.findRelevant(Embedding.from(new float[]{0, 1}), 1, 0.0).get(0).embedded().text());
+		}
+	}
+
+	@Test
+	void searchIsRestrictedToTheGivenUrls() throws Exception {
+		HnswIndex.Settings settings = new HnswIndex.Settings(4, 20, 10);
+		try (MappedEmbeddingStore store = MappedEmbeddingStore.open(directory, 2, settings)) {
+			for (int i = 0; i < 50; i++) {
+				double angle = Math.PI / 2 * i / 49;
+				store.add(Embedding.from(new float[]{(float) Math.cos(angle), (float) Math.sin(angle)}),
+						segment("s" + i, "https://example.org/" + i));
+			}
+
+			// Wenige zulässige Seiten: Scan nur über deren Vektoren
+			List<EmbeddingMatch<TextSegment>> matches = store.findRelevant(Embedding.from(new float[]{0, 1}), 5, 0.0,
+					List.of("https://example.org/3", "https://example.org/10"));
+			assertEquals(2, matches.size());
+			assertEquals("s10", matches.get(0).embedded().text());
+			assertEquals("s3", matches.get(1).embedded().text());
+
+			// Überwiegend zulässige Seiten: Suche im HNSW-Graphen mit Filter
+			List<String> allButTop = new ArrayList<>();
+			for (int i = 0; i < 45; i++) {
+				allButTop.add("https://example.org/" + i);
+			}
+			assertEquals("s44", store.findRelevant(Embedding.from(new float[]{0, 1}), 1, 0.0, allButTop)
+					.get(0).embedded().text());
+		}
+	}
+
+	@Test
+	void quantizedSearchIsRescoredWithExactVectors() throws Exception {
+		Random random = new Random(3);
+		float[][] vectors = new float[2000][16];
+		for (float[] vector : vectors) {
+			for (int i = 0; i < vector.length; i++) {
+				vector[i] = (float) random.nextGaussian();
+			}
+		}
+
+		for (Quantization quantization : new Quantization[]{Quantization.INT8, Quantization.PQ}) {
+			Path storeDirectory = directory.resolve(quantization.name());
+			try (MappedEmbeddingStore store = MappedEmbeddingStore.open(storeDirectory, 16, null, quantization)) {
+				for (int i = 0; i < vectors.length; i++) {
+					store.add(Embedding.from(vectors[i]), segment("s" + i, "https://example.org/" + i));
+				}
+			}
+
+			assertEquals(quantization, MappedEmbeddingStore.persistedQuantization(storeDirectory));
+			try (MappedEmbeddingStore store = MappedEmbeddingStore.open(storeDirectory, 16, null, quantization)) {
+				for (int i = 0; i < vectors.length; i += 200) {
+					EmbeddingMatch<TextSegment> best = store.findRelevant(Embedding.from(vectors[i]), 1, 0.0).get(0);
+					assertEquals("s" + i, best.embedded().text());
+					// Exakte Neubewertung: identischer Vektor ergibt Kosinus 1
+					assertEquals(1.0, best.score(), 1e-5);
+				}
+			}
+		}
+	}
+
+	private static TextSegment segment(String text, String url) {
+		return TextSegment.from(text, new Metadata()
+				.add(MappedEmbeddingStore.URL_KEY, url)
+				.add(MappedEmbeddingStore.CONTENT_HASH_KEY, "hash-" + url));
+	}
+}
@@ -0,0 +1,137 @@
+package com.hhn.studyChat.util.store;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QdrantBulkWriterTest {
+
+	@Test
+	void groupsPointsIntoBatchesAndSendsTheRestOnClose() {
+		List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+		QdrantBulkWriter writer = new QdrantBulkWriter(points -> {
+			batchSizes.add(points.size());
+			return completed();
+		}, "test", 3, 2, 0, 1);
+
+		writer.addAll(embeddings(4), segments("https://example.org/a", 4));
+		writer.addAll(embeddings(3), segments("https://example.org/b", 3));
+		assertDoesNotThrow(writer::close);
+
+		assertEquals(List.of(3, 3, 1), batchSizes);
+		assertEquals(7, writer.getWrittenPoints());
+		assertEquals(0, writer.getFailedPoints());
+	}
+
+	@Test
+	void retriesAFailedBatchUntilItIsWritten() {
+		AtomicInteger attempts = new AtomicInteger();
+		QdrantBulkWriter writer = new QdrantBulkWriter(points -> attempts.incrementAndGet() <= 2
+				? failed() : completed(), "test", 10, 1, 3, 1);
+
+		writer.addAll(embeddings(2), segments("https://example.org/a", 2));
+		assertDoesNotThrow(writer::close);
+
+		assertEquals(3, attempts.get());
+		assertEquals(2, writer.getWrittenPoints());
+	}
+
+	@Test
+	void closeReportsThePagesOfBatchesThatFailedAfterAllRetries() {
+		AtomicInteger calls = new AtomicInteger();
+		QdrantBulkWriter writer = new QdrantBulkWriter(points -> calls.incrementAndGet() == 1
+				? completed() : failed(), "test", 2, 1, 2, 1);
+
+		writer.addAll(embeddings(2), segments("https://example.org/ok", 2));
+		writer.addAll(embeddings(2), segments("https://example.org/verloren", 2));
+
+		QdrantBulkWriter.IncompleteWriteException error =
+				assertThrows(QdrantBulkWriter.IncompleteWriteException.class, writer::close);
+		assertEquals(Set.of("https://example.org/verloren"), error.getFailedUrls());
+		assertEquals(2, writer.getWrittenPoints());
+		assertEquals(2, writer.getFailedPoints());
+	}
+
+	@Test
+	void addAllBlocksWhileTheInFlightWindowIsFull() throws Exception {
+		List<SettableFuture<Points.UpdateResult>> pending = new CopyOnWriteArrayList<>();
+		QdrantBulkWriter writer = new QdrantBulkWriter(points -> {
+			SettableFuture<Points.UpdateResult> future = SettableFuture.create();
+			pending.add(future);
+			return future;
+		}, "test", 1, 1, 0, 1);
+
+		writer.addAll(embeddings(1), segments("https://example.org/a", 1));
+		CountDownLatch secondSent = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			writer.addAll(embeddings(1), segments("https://example.org/b", 1));
+			secondSent.countDown();
+		});
+		producer.start();
+
+		assertFalse(secondSent.await(100, TimeUnit.MILLISECONDS));
+		pending.get(0).set(null);
+		assertTrue(secondSent.await(5, TimeUnit.SECONDS));
+		pending.get(1).set(null);
+		assertDoesNotThrow(writer::close);
+		assertEquals(2, writer.getWrittenPoints());
+	}
+
+	@Test
+	void interruptedSendCountsTheBatchAsFailed() {
+		QdrantBulkWriter writer = new QdrantBulkWriter(points -> SettableFuture.create(), "test", 1, 1, 0, 1);
+		writer.addAll(embeddings(1), segments("https://example.org/a", 1));
+
+		Thread.currentThread().interrupt();
+		writer.addAll(embeddings(1), segments("https://example.org/b", 1));
+		assertTrue(Thread.interrupted());
+
+		assertEquals(1, writer.getFailedPoints());
+	}
+
+	private static ListenableFuture<Points.UpdateResult> completed() {
+		SettableFuture<Points.UpdateResult> future = SettableFuture.create();
+		future.set(null);
+		return future;
+	}
+
+	private static ListenableFuture<Points.UpdateResult> failed() {
+		SettableFuture<Points.UpdateResult> future = SettableFuture.create();
+		future.setException(new IllegalStateException("Qdrant nicht erreichbar"));
+		return future;
+	}
+
+	private static List<Embedding> embeddings(int count) {
+		List<Embedding> embeddings = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			embeddings.add(Embedding.from(new float[]{i, 1}));
+		}
+		return embeddings;
+	}
+
+	private static List<TextSegment> segments(String url, int count) {
+		List<TextSegment> segments = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			segments.add(TextSegment.from("Segment " + i, new Metadata().add("url", url)));
+		}
+		return segments;
+	}
+}
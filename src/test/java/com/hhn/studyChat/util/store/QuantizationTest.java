@@ -0,0 +1,30 @@
+package com.hhn.studyChat.util.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantizationTest {
+
+	@Test
+	void parsesModesIgnoringCaseAndWhitespace() {
+		assertEquals(Quantization.INT8, Quantization.from(" int8 "));
+		assertEquals(Quantization.PQ, Quantization.from("PQ"));
+		assertEquals(Quantization.NONE, Quantization.from("none"));
+	}
+
+	@Test
+	void missingModeMeansNone() {
+		assertEquals(Quantization.NONE, Quantization.from(null));
+		assertEquals(Quantization.NONE, Quantization.from(" "));
+	}
+
+	@Test
+	void unknownModeIsRejected() {
+		IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> Quantization.from("int4"));
+		assertTrue(error.getMessage().contains("int4"));
+		assertTrue(error.getMessage().contains("[none, int8, pq]"));
+	}
+}
@@ -0,0 +1,44 @@
+package com.hhn.studyChat.util.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimilarityKernelsTest {
+
+	@Test
+	void activeKernelsMatchScalarKernels() {
+		Kernels scalar = SimilarityKernels.scalar();
+		Kernels active = SimilarityKernels.active();
+		Random random = new Random(7);
+
+		// Längen mit und ohne Rest hinter der Vektorbreite
+		for (int length : new int[]{1, 3, 8, 17, 64, 384, 385}) {
+			float[] a = randomVector(random, length);
+			float[] b = randomVector(random, length);
+			byte[] codes = randomCodes(random, length);
+
+			assertEquals(scalar.dot(a, b), active.dot(a, b), 1e-3f);
+			assertEquals(scalar.cosine(a, b), active.cosine(a, b), 1e-5f);
+			assertEquals(scalar.dot(a, codes), active.dot(a, codes), 1e-2f);
+		}
+	}
+
+	private static float[] randomVector(Random random, int length) {
+		float[] vector = new float[length];
+		for (int i = 0; i < length; i++) {
+			vector[i] = (float) random.nextGaussian();
+		}
+		return vector;
+	}
+
+	private static byte[] randomCodes(Random random, int length) {
+		byte[] codes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			codes[i] = (byte) (random.nextInt(255) - 127);
+		}
+		return codes;
+	}
+}